@@ -0,0 +1,259 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JTable;
+import javax.swing.text.JTextComponent;
+import org.uispec4j.ComboBox;
+import org.uispec4j.ListBox;
+import org.uispec4j.Table;
+import org.uispec4j.Window;
+
+/**
+ * Locates the control matching a label on a window using a single traversal of the window's
+ * component tree. The type of the control found is reported so the caller can dispatch to the
+ * appropriate handler without probing each UISpec4J finder in turn and catching the resulting
+ * {@linkplain org.uispec4j.ItemNotFoundException}.
+ * <p>A component matches the label if its name or the text of the {@linkplain JLabel} that
+ * labels it equals the label (ignoring case). If no component matches exactly, components whose
+ * name or label contains the label are considered instead. The text of a check box is treated
+ * as its label.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class ControlResolver {
+
+    /** The types of control the resolver can locate. */
+    public enum ControlType {
+
+        COMBO_BOX(JComboBox.class),
+        LIST_BOX(JList.class),
+        TABLE(JTable.class),
+        TEXT_BOX(JTextComponent.class),
+        CHECK_BOX(JCheckBox.class);
+        private final Class<? extends Component> swingClass;
+
+        private ControlType(Class<? extends Component> swingClass) {
+            this.swingClass = swingClass;
+        }
+
+        /**
+         * @return The Swing class that implements this type of control.
+         */
+        public Class<? extends Component> getSwingClass() {
+            return swingClass;
+        }
+    }
+
+    /** Outcome of a resolve request. */
+    public enum Status {
+
+        FOUND, NOT_FOUND, AMBIGUOUS
+    }
+    private static final int NO_MATCH = 0;
+    private static final int PARTIAL_MATCH = 1;
+    private static final int EXACT_MATCH = 2;
+
+    /**
+     * The result of resolving a label to a control. Misses are reported using the
+     * {@linkplain #getStatus() status} rather than an exception.
+     */
+    public static class Resolution {
+
+        private final Status status;
+        private final ControlType type;
+        private final Component component;
+        private final String message;
+
+        private Resolution(Status status, ControlType type, Component component, String message) {
+            this.status = status;
+            this.type = type;
+            this.component = component;
+            this.message = message;
+        }
+
+        public Status getStatus() {
+            return status;
+        }
+
+        public boolean isFound() {
+            return status == Status.FOUND;
+        }
+
+        /**
+         * @return The type of the control found or null if no single control was found.
+         */
+        public ControlType getType() {
+            return type;
+        }
+
+        /**
+         * @return The Swing component found or null if no single control was found.
+         */
+        public Component getComponent() {
+            return component;
+        }
+
+        /**
+         * @return A description of the outcome suitable for logging.
+         */
+        public String getMessage() {
+            return message;
+        }
+
+        public ComboBox getComboBox() {
+            return new ComboBox((JComboBox) component);
+        }
+
+        public ListBox getListBox() {
+            return new ListBox((JList) component);
+        }
+
+        public Table getTable() {
+            return new Table((JTable) component);
+        }
+    }
+
+    /**
+     * Finds the control on the window matching the label. Only controls of the specified types
+     * are considered.
+     * @param window The window to search.
+     * @param label The name or label text of the control to find.
+     * @param types The types of control to consider.
+     * @return The resolution. Never null.
+     */
+    public static Resolution resolve(Window window, String label, ControlType... types) {
+        Matcher matcher = new Matcher(label, types);
+        matcher.scan(window.getAwtContainer());
+        return matcher.getResolution();
+    }
+
+    /**
+     * Tracks the best matching candidates while the component tree is traversed.
+     */
+    private static class Matcher {
+
+        private final String label;
+        private final ControlType[] types;
+        private int bestRank = NO_MATCH;
+        private Component best = null;
+        private ControlType bestType = null;
+        private final Set<Component> candidates =
+                Collections.newSetFromMap(new IdentityHashMap<Component, Boolean>());
+
+        Matcher(String label, ControlType[] types) {
+            this.label = label == null ? "" : label.trim().toLowerCase();
+            this.types = types;
+        }
+
+        void scan(Component comp) {
+            if (comp instanceof JLabel) {
+                // A label identifies the component it has been associated with
+                JLabel jLabel = (JLabel) comp;
+                if (jLabel.getLabelFor() != null) {
+                    consider(jLabel.getLabelFor(), rank(jLabel.getText()));
+                }
+            }
+            if (comp instanceof JCheckBox) {
+                consider(comp, rank(((JCheckBox) comp).getText()));
+            }
+            consider(comp, rank(comp.getName()));
+            if (comp instanceof Container) {
+                for (Component child : ((Container) comp).getComponents()) {
+                    scan(child);
+                }
+            }
+        }
+
+        private int rank(String text) {
+            int result = NO_MATCH;
+            if (text != null && label.length() > 0) {
+                String compare = text.trim().toLowerCase();
+                if (compare.equals(label)) {
+                    result = EXACT_MATCH;
+                } else if (compare.contains(label)) {
+                    result = PARTIAL_MATCH;
+                }
+            }
+            return result;
+        }
+
+        private void consider(Component comp, int rank) {
+            if (rank == NO_MATCH || rank < bestRank) {
+                return;
+            }
+            ControlType type = typeOf(comp);
+            if (type == null) {
+                return;
+            }
+            if (rank > bestRank) {
+                bestRank = rank;
+                candidates.clear();
+            }
+            best = comp;
+            bestType = type;
+            candidates.add(comp);
+        }
+
+        private ControlType typeOf(Component comp) {
+            ControlType result = null;
+            for (ControlType type : types) {
+                if (type.getSwingClass().isInstance(comp)) {
+                    result = type;
+                    break;
+                }
+            }
+            return result;
+        }
+
+        Resolution getResolution() {
+            Resolution result;
+            if (candidates.isEmpty()) {
+                result = new Resolution(Status.NOT_FOUND, null, null,
+                        "No control found matching " + label);
+            } else if (candidates.size() > 1) {
+                result = new Resolution(Status.AMBIGUOUS, null, null, candidates.size()
+                        + " controls found matching " + label);
+            } else {
+                result = new Resolution(Status.FOUND, bestType, best, "Found "
+                        + bestType + " for " + label);
+            }
+            return result;
+        }
+    }
+}
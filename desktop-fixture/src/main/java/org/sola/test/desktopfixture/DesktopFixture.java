@@ -27,13 +27,27 @@
  */
 package org.sola.test.desktopfixture;
 
+import java.awt.Component;
+import java.awt.Container;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import javax.swing.AbstractButton;
+import javax.swing.JComboBox;
+import javax.swing.JTable;
+import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
+import javax.swing.text.JTextComponent;
 import org.sola.clients.desktop.DesktopApplication;
 import org.sola.common.DateUtility;
 import org.sola.common.messaging.LocalizedMessage;
@@ -60,6 +74,15 @@ import org.uispec4j.interception.WindowInterceptor;
  */
 public class DesktopFixture {
 
+    /**
+     * System property that puts the fixture in resident mode. Set by {@linkplain FixturePoolMember}.
+     */
+    public static final String RESIDENT_PROPERTY = "sola.fixture.resident";
+    /**
+     * System property that sets the default Locale for the SOLA Desktop e.g. fr or ru_RU. The
+     * default is English. Used by {@linkplain JvmMatrixRunner} to compare Locales.
+     */
+    public static final String LOCALE_PROPERTY = "sola.fixture.locale";
     private final Window mainWin[] = new Window[1];
 
     /** 
@@ -77,6 +100,7 @@ public class DesktopFixture {
     static {
         System.setProperty("uispec4j.test.library", "junit");
         UISpec4J.init();
+        JvmMatrixRunner.installStatsHook();
     }
 public void log(String message) {
         try {
@@ -92,6 +116,16 @@ public void log(String message) {
         }
     }
 
+    /**
+     * Indicates if the steps that enter data drive the Swing components directly rather than
+     * through UISpec4J. Set the {@code Driver: Backend} test data item to {@code swing} to use
+     * the direct backend for a suite. See {@linkplain SwingDriver}.
+     */
+    boolean isSwingBackend() {
+        return SwingDriver.isSelected(getDataOrDefault(SwingDriver.BACKEND_SETTING,
+                SwingDriver.UISPEC4J));
+    }
+
     private TestManager getTestMan() {
         return TestManager.getInstance();
     }
@@ -111,6 +145,10 @@ public void log(String message) {
 
     private void setAbortTest(Boolean abortTest) {
         getTestMan().loadTestObject("SOLA.AbortTest", abortTest);
+        if (abortTest) {
+            TraceLog.getInstance().instant(TraceLog.ABORT, "Abort test",
+                    getTestMan().getTestObject("SOLA.CurrentPage", String.class));
+        }
     }
 
     private void setCurrentWindow(Window cw) {
@@ -119,10 +157,187 @@ public void log(String message) {
 
     }
 
-    private Window getCurrentWindow() {
+    Window getCurrentWindow() {
         return getTestMan().getTestObject("SOLA.CurrentWindow", Window.class);
     }
 
+    /**
+     * @return The step currently being executed or null if no step is in progress.
+     */
+    FixtureStep getCurrentStep() {
+        return getTestMan().getTestObject("SOLA.CurrentStep", FixtureStep.class);
+    }
+
+    /**
+     * Marks the start of a step. The step signature uses the title of the current window.
+     * @param method The name of the fixture method.
+     * @param dataNameOrLabel The label of the control used by the step or the name of a test
+     * data item to obtain the label from.
+     * @return The step.
+     */
+    FixtureStep beginStep(String method, String dataNameOrLabel) {
+        Window cw = getCurrentWindow();
+        return beginStep(method, cw == null ? null : cw.getTitle(), dataNameOrLabel);
+    }
+
+    /**
+     * Marks the start of a step.
+     * @param method The name of the fixture method.
+     * @param windowTitle The title of the window the step applies to.
+     * @param dataNameOrLabel The label of the control used by the step or the name of a test
+     * data item to obtain the label from.
+     * @return The step.
+     */
+    private FixtureStep beginStep(String method, String windowTitle, String dataNameOrLabel) {
+        FixtureStep step = new FixtureStep(method, windowTitle,
+                dataNameOrLabel == null ? null : getDataOrDefault(dataNameOrLabel));
+        getTestMan().loadTestObject("SOLA.CurrentStep", step);
+        TraceLog.getInstance().begin(TraceLog.STEP, method, step.getSignature());
+        addToFootprint(PageFootprints.WINDOW, step.getWindowTitle());
+        addToFootprint(PageFootprints.CONTROL, step.getControl());
+        return step;
+    }
+
+    /**
+     * Adds an entry to the footprint of the current page if a page has been started.
+     * @see #startPage(String)
+     */
+    @SuppressWarnings("unchecked")
+    private void addToFootprint(String type, String value) {
+        Set<?> footprint = getTestMan().getTestObject("SOLA.PageFootprint", Set.class);
+        String entry = PageFootprints.entry(type, value);
+        if (footprint != null && entry != null) {
+            ((Set<String>) footprint).add(entry);
+        }
+    }
+
+    /**
+     * Adds the window title and the SOLA form classes displayed on the window to the footprint
+     * of the current page.
+     */
+    private void addToFootprint(Window win) {
+        if (getTestMan().getTestObject("SOLA.PageFootprint", Set.class) != null) {
+            addToFootprint(PageFootprints.WINDOW, win.getTitle());
+            addClassesToFootprint(win.getAwtComponent());
+        }
+    }
+
+    private void addClassesToFootprint(Component comp) {
+        if (comp.getClass().getName().startsWith("org.sola.")) {
+            addToFootprint(PageFootprints.CLASS, comp.getClass().getSimpleName());
+        }
+        if (comp instanceof Container) {
+            for (Component child : ((Container) comp).getComponents()) {
+                addClassesToFootprint(child);
+            }
+        }
+    }
+
+    /**
+     * Marks the end of a step. The latency of successful steps is added to the
+     * {@linkplain StepLatencyHistory}. The cost of the step (see {@linkplain StepCost}) is
+     * written to the trace. If the {@linkplain ServiceMeter} is installed, the
+     * web service calls made during the step are also written to the trace, the console and the
+     * service call log. If the step has a budget (see
+     * {@linkplain #getBudget(FixtureStep)}), the result is added to the
+     * {@linkplain PerformanceSummary} and a successful step that exceeded its budget fails.
+     * @param step The step.
+     * @param success True if the step completed successfully.
+     * @throws Exception If the step completed successfully but exceeded its budget.
+     */
+    void endStep(FixtureStep step, boolean success) throws Exception {
+        step.end(success && !isAbortTest());
+        if (!step.isSuccess()) {
+            // FitNesse marks a step that returns false as wrong, so the page has failed
+            setPageFailed();
+        }
+        boolean metered = ServiceMeter.getInstance().isInstalled();
+        TraceLog.getInstance().end(TraceLog.STEP, step.getMethod(),
+                (step.isSuccess() ? "success " : "failed ") + step.getElapsedMillis() + "ms "
+                + step.getCost() + (metered ? " services " + step.getServiceUsage() : ""));
+        if (metered) {
+            System.out.println("Step " + step.getSignature() + " service calls "
+                    + step.getServiceUsage() + " " + step.getServiceUsage().getOperationReport());
+            ServiceMeter.log(getTestMan().getTestObject("SOLA.CurrentPage", String.class),
+                    step.getSignature(), step.getServiceUsage());
+        }
+        if (step.isSuccess()) {
+            StepLatencyHistory.getInstance().record(step.getSignature(), step.getElapsedMillis());
+        }
+        getTestMan().loadTestObject("SOLA.CurrentStep", null);
+        getTestMan().loadTestObject("SOLA.LastStep", step);
+
+        Long budget = getBudget(step);
+        if (budget != null) {
+            boolean withinBudget = PerformanceSummary.getInstance().record(
+                    getTestMan().getTestObject("SOLA.CurrentPage", String.class),
+                    PerformanceSummary.STEP, step.getSignature(), step.getElapsedMillis(), budget);
+            System.out.println("Step " + step.getSignature() + " took " + step.getElapsedMillis()
+                    + "ms against a budget of " + budget + "ms");
+            if (!withinBudget && step.isSuccess()) {
+                setPageFailed();
+                throw new Exception("Step " + step.getMethod() + " exceeded its budget of "
+                        + budget + "ms. Took " + step.getElapsedMillis() + "ms.");
+            }
+        }
+    }
+
+    /**
+     * Marks the current page as failed without aborting the test, e.g. when a check fails.
+     */
+    void setPageFailed() {
+        getTestMan().loadTestObject("SOLA.PageFailed", Boolean.TRUE);
+    }
+
+    /**
+     * Returns the budget for a step. Budgets can be declared with setup data or
+     * {@linkplain #setBudget(String, String)} for the step signature, the window title or the
+     * fixture method. The most specific budget applies. As | separates the cells of a FitNesse
+     * table, the parts of the step signature are separated with &gt; in the budget name
+     * (method &gt; window title &gt; control, see {@linkplain FixtureStep#getBudgetSignature()}).
+     * A budget for a window title only applies to the steps that open the window (e.g.
+     * {@linkplain #openWindowClick(String, String)}), not to every step on the window. e.g.
+     * <pre>
+     * |script|Setup Test Data                                           |
+     * |Field |Budget: New Application                       |Value|4000|
+     * |Field |Budget: click                                 |Value|1000|
+     * |Field |Budget: click &gt; Application &gt; Lodge      |Value|3000|
+     * </pre>
+     * A budget that is not a number is logged and ignored.
+     * @return The budget in milliseconds or null if the step does not have a budget.
+     */
+    private Long getBudget(FixtureStep step) {
+        Long result = null;
+        String windowTitle = step.getMethod().startsWith("openWindow")
+                ? step.getWindowTitle() : "";
+        for (String target : new String[]{step.getBudgetSignature(), step.getSignature(),
+                    windowTitle, step.getMethod()}) {
+            result = target.length() == 0 ? null : parseBudget(target);
+            if (result != null) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The budget declared for the target in milliseconds or null if there is no budget
+     * or the budget is not a number.
+     */
+    private Long parseBudget(String target) {
+        Long result = null;
+        String budget = getData("Budget: " + target);
+        if (budget != null && budget.trim().length() > 0) {
+            try {
+                result = Long.parseLong(budget.trim());
+            } catch (NumberFormatException ex) {
+                System.out.println("Ignoring budget for " + target + ". " + budget
+                        + " is not a number of milliseconds.");
+            }
+        }
+        return result;
+    }
+
     /**
      * Maintains a handle to the Dashboard window throughout the test so that menu items can be 
      * accessed. 
@@ -142,8 +357,10 @@ public void log(String message) {
      * @param ex The exception that was raised.
      * @return Always false.
      */
-    private boolean ProcessException(Exception ex) {
+    boolean ProcessException(Exception ex) {
         System.out.println(ex);
+        TraceLog.getInstance().instant(TraceLog.EXCEPTION, ex.getClass().getSimpleName(),
+                ex.getMessage());
         setAbortTest(true);
         return false;
     }
@@ -155,7 +372,7 @@ public void log(String message) {
      * @return The display value for the item or an empty string. 
      * @throws Exception 
      */
-    private String getDisplayValue(Object item) throws Exception {
+    String getDisplayValue(Object item) throws Exception {
         String result = "";
 
 
@@ -198,16 +415,27 @@ public void log(String message) {
      * @return the textOrDataName value or the value from the test data item. 
      * @throws Exception 
      */
-    private String getDataOrDefault(String dataNameOrDefault) {
+    String getDataOrDefault(String dataNameOrDefault) {
         String result = getData(dataNameOrDefault);
         result = result == null ? dataNameOrDefault : result;
         return result;
     }
 
+    /**
+     * @return The value of the test data item or the defaultValue if there is no test data
+     * item matching the dataName.
+     */
+    private String getDataOrDefault(String dataName, String defaultValue) {
+        String result = getData(dataName);
+        return result == null ? defaultValue : result;
+    }
+
     /**
      * Gets the data value for the specified dataName. Returns null if no test data item matching
      * the data name exists. Also processes common actions on the test data item. For example
      * the current datetime will be returned if the Action it TODAY.
+     * Items with the SEQ, RANDOM, UUID, PARTITION and SAME actions return generated values (see
+     * {@linkplain TestDataGenerators}).
      * @param dataName Name of test data item to find. 
      * @return The test data item if found or null. 
      */
@@ -233,6 +461,14 @@ public void log(String message) {
                 }
                 Date date = DateUtility.addDays(offset, false);
                 result = DateUtility.simpleFormat(date, "dd/mm/yyyy");
+            } else if (TestDataGenerators.isGenerator(action)) {
+                // Generate a unique value for the item (see TestDataGenerators)
+                result = TestDataGenerators.getInstance().generate(
+                        dataName.replace(" ", "").toLowerCase(), action, data.getValue(),
+                        data.getActionExtension(), TestDataGenerators.getDefaultWorker());
+            } else if (action.equals(TestDataGenerators.SAME)) {
+                result = TestDataGenerators.getInstance().getLast(data.getValue(),
+                        TestDataGenerators.getDefaultWorker());
             }
         }
         return result;
@@ -243,7 +479,7 @@ public void log(String message) {
      * test data item or the Action for the test data item is null.
      * @see #getAction(TestDataItem) 
      */
-    private String getAction(String dataNameOrText) {
+    String getAction(String dataNameOrText) {
         return getAction(getDataItem(dataNameOrText));
     }
 
@@ -283,7 +519,13 @@ public void log(String message) {
                 ? data.getActionExtension() : actionExt;
         if (actionExt != null) {
             try {
-                result = dataType.cast(actionExt);
+                if (String.class.equals(dataType)) {
+                    result = dataType.cast(actionExt);
+                } else {
+                    // Convert the text to the requested type e.g. Integer or Long
+                    result = dataType.cast(dataType.getMethod("valueOf", String.class)
+                            .invoke(null, actionExt.trim()));
+                }
             } catch (Exception ex) {
                 throw new RuntimeException("Failed to cast action extension for " + data.getName(), ex);
             }
@@ -292,7 +534,134 @@ public void log(String message) {
     }
 
     /**
-     * Starts the SOLA Desktop Application with the default Locale set to English. The default 
+     * Returns the time to wait for the window(s) opened by a step. The timeout can be configured
+     * for the step using the TIMEOUT action on the test data item for the window title with the
+     * number of milliseconds to wait as the action extension. e.g.
+     * <pre>
+     * |script|Setup Test Data                                                          |
+     * |Field |New App: Title|Value|New Application|Action|TIMEOUT|Extension|2000|
+     * </pre>
+     * <p>If no timeout is configured, the timeout is calculated from the latencies previously
+     * observed for the current step (see {@linkplain #getStepTimeout(long)}).</p>
+     * @param dataNameOrTitle The window title or the name of the test data item for the title.
+     * @return The timeout in milliseconds.
+     */
+    private long getWindowTimeout(String dataNameOrTitle) {
+        long result;
+        Long timeout = null;
+        if (getAction(dataNameOrTitle).equals("TIMEOUT")) {
+            timeout = getActionExtension(dataNameOrTitle, Long.class);
+        }
+        if (timeout != null) {
+            result = timeout;
+        } else {
+            result = getStepTimeout(UISpec4J.getWindowInterceptionTimeLimit());
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the timeout for the current step from the latencies recorded for the same step
+     * in previous runs. The timeout is the percentile latency multiplied by the safety factor.
+     * The percentile (default 95), safety factor (default 3) and minimum timeout in milliseconds
+     * (default 1000) can be configured using setup data. e.g.
+     * <pre>
+     * |script|Setup Test Data                 |
+     * |Field |Timeout: Percentile   |Value|90 |
+     * |Field |Timeout: Safety Factor|Value|2.5|
+     * |Field |Timeout: Minimum      |Value|500|
+     * </pre>
+     * @param defaultTimeout The timeout to use if the step does not have enough latency
+     * history. The calculated timeout will not exceed this value.
+     * @return The timeout in milliseconds.
+     * @see StepLatencyHistory
+     */
+    private long getStepTimeout(long defaultTimeout) {
+        long result = defaultTimeout;
+        FixtureStep step = getCurrentStep();
+        if (step != null) {
+            result = StepLatencyHistory.getInstance().getTimeout(step.getSignature(),
+                    Double.parseDouble(getDataOrDefault("Timeout: Percentile", "95")),
+                    Double.parseDouble(getDataOrDefault("Timeout: Safety Factor", "3")),
+                    Long.parseLong(getDataOrDefault("Timeout: Minimum", "1000")), defaultTimeout);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the trigger and waits for it to show a window.
+     * @param trigger The trigger that will show the window.
+     * @param dataNameOrTitle The title of the window or the name of the test data item for the
+     * title. Used to determine the timeout for the step.
+     * @return The window or null if no window was shown before the timeout expired.
+     * @throws Exception If the trigger fails.
+     * @see #getWindowTimeout(String)
+     */
+    private Window interceptWindow(Trigger trigger, String dataNameOrTitle) throws Exception {
+        WindowWatcher watcher = WindowWatcher.watch(trigger);
+        Window result;
+        try {
+            result = watcher.awaitWindow(getWindowTimeout(dataNameOrTitle));
+        } finally {
+            watcher.close();
+        }
+        if (result != null) {
+            measureTimeToInteractive(result, watcher);
+        }
+        return result;
+    }
+
+    /**
+     * Waits for a window that has been shown to become interactive and records the time it
+     * took (see {@linkplain TimeToInteractive}). The measurement is off unless a maximum time
+     * to wait is configured using setup data. The time the window must remain idle defaults to
+     * 100ms. The time spent waiting is excluded from the latency of the step, so it does not
+     * affect step timeouts or budgets. e.g.
+     * <pre>
+     * |script|Setup Test Data                              |
+     * |Field |Time To Interactive: Quiet Period|Value|200  |
+     * |Field |Time To Interactive: Timeout     |Value|30000|
+     * </pre>
+     * @param win The window that has been shown.
+     * @param watcher The watcher that captured the window.
+     * @see #getTimeToInteractive(String)
+     */
+    private void measureTimeToInteractive(Window win, WindowWatcher watcher) throws Exception {
+        long timeout = Long.parseLong(getDataOrDefault("Time To Interactive: Timeout", "0"));
+        if (timeout <= 0) {
+            return;
+        }
+        long shownNanos = watcher.getShownNanos(win);
+        long measureStart = System.nanoTime();
+        TimeToInteractive.Timing timing = TimeToInteractive.measure(win, watcher.getStartNanos(),
+                shownNanos == 0 ? System.nanoTime() : shownNanos,
+                Long.parseLong(getDataOrDefault("Time To Interactive: Quiet Period", "100")),
+                timeout);
+        FixtureStep step = getCurrentStep();
+        if (step != null) {
+            step.exclude(System.nanoTime() - measureStart);
+        }
+        TimeToInteractive.getInstance().record(timing);
+        TraceLog.getInstance().instant(TraceLog.WINDOW, "Window interactive",
+                timing.getTitle() + " " + timing);
+        System.out.println("Window " + timing.getTitle() + " timings " + timing);
+    }
+
+    /**
+     * Keeps a handle to a window opened during the test so that it can be made the current
+     * window again using {@linkplain #switchToWindow(String)}.
+     */
+    private void addOpenWindow(Window win) {
+        TraceLog.getInstance().instant(TraceLog.WINDOW, "Window opened", win.getTitle());
+        addToFootprint(win);
+        if (win.getTitle() != null) {
+            getTestMan().loadWeakTestObject("SOLA.Window:" + win.getTitle().toLowerCase(), win);
+        }
+    }
+
+    /**
+     * Starts the SOLA Desktop Application with the default Locale set to English or the Locale
+     * in the {@code sola.fixture.locale} system property if it is set. The default 
      * user name and password used to login to the application are test, test. To provide alternative
      * user credentials, configure setup data for {@code Login: User Name} and {@code Login: Password}. 
      * e.g. 
@@ -301,14 +670,30 @@ public void log(String message) {
      * |Field |Login: User Name |Value|myusername       |
      * |Field |Login: Password  |Value|mysecretpassword |
      * </pre>
+     * <p>In resident mode (see {@linkplain FixturePool}) or when SOLA was started to resume a
+     * run (see {@linkplain #startPage(String)}), SOLA is only started once. Later calls make the
+     * existing Dashboard the current window and return true.</p>
      * @return True if the login succeeds. 
      * @throws Exception If an error occurs. 
      */
     public boolean startSola() throws Exception {
         boolean result = false;
+        if ((isResident() || getTestMan().getTestObject("SOLA.ResumedSession", Boolean.class)
+                != null) && getDashboard() != null) {
+            System.out.println("Using the SOLA Dashboard that is already running.");
+            setCurrentWindow(getDashboard());
+            return true;
+        }
+        FixtureStep step = beginStep("startSola", null, null);
+        long interceptionTimeLimit = UISpec4J.getWindowInterceptionTimeLimit();
         try {
-            // Force the default locale for the application to be English
-            Locale.setDefault(Locale.ENGLISH);
+            // Force the default locale for the application to be English unless another
+            // locale has been requested for the JVM
+            String locale = System.getProperty(LOCALE_PROPERTY);
+            Locale.setDefault(locale == null || locale.trim().length() == 0 ? Locale.ENGLISH
+                    : Locale.forLanguageTag(locale.trim().replace('_', '-')));
+            // Use the startup latency history to limit the wait for each startup window
+            UISpec4J.setWindowInterceptionTimeLimit(getStepTimeout(interceptionTimeLimit));
             WindowInterceptor.init(new Trigger() {
 
                 public void run() { // Start the DesktopApplication by triggering the "main"
@@ -342,24 +727,253 @@ public void log(String message) {
                 result = true;
                 this.setCurrentWindow(mainWin[0]);
                 this.setDashboard(mainWin[0]);
+                addToFootprint(mainWin[0]);
+                TraceLog.getInstance().instant(TraceLog.WINDOW, "Window opened",
+                        mainWin[0].getTitle());
             }
 
         } catch (Exception ex) {
             ProcessException(ex);
             throw ex;
+        } finally {
+            UISpec4J.setWindowInterceptionTimeLimit(interceptionTimeLimit);
+            endStep(step, result);
         }
         return result;
     }
 
+    /**
+     * Marks the start of a FitNesse page. Typically called from the SetUp page using the
+     * FitNesse page path variables. While the page runs, the fixture records the windows,
+     * form classes, controls and menus it exercises so the pages affected by a change to the
+     * SOLA desktop client can be selected using {@linkplain PageFootprints}. e.g.
+     * <pre>
+     * |script    |Desktop Fixture           |
+     * |start Page|${PAGE_PATH}.${PAGE_NAME}|
+     * </pre>
+     * <p>Test data loaded after the page starts is held in a page scope and is discarded when
+     * the page ends (see {@linkplain TestDataScope}). Test data loaded by the SetUp page before
+     * the page starts is kept for the following pages.</p>
+     * <p>In resume mode, pages already completed in the {@linkplain FixtureCheckpoint} are
+     * skipped, and the test data and message journal saved by the last completed page are
+     * restored before the first page that runs. As the pages that start SOLA are normally
+     * skipped, SOLA is started with the restored {@code Login} data before the first page that
+     * runs. Later calls to {@linkplain #startSola()} use that session. Resume mode is enabled with the
+     * {@code sola.fixture.resume} system property or with setup data. e.g.
+     * <pre>
+     * |script|Setup Test Data                |
+     * |field |Checkpoint: Resume|Value|true  |
+     * </pre></p>
+     * @param pagePath The full path of the page.
+     * @return Always true.
+     * @throws FixtureCheckpoint.CompletedPageStopTestException In resume mode, if the page was
+     * completed in an earlier run. This stops FitNesse running the rest of the page.
+     * @see #endPage()
+     */
+    public boolean startPage(String pagePath) throws Exception {
+        if (FixtureCheckpoint.isResumeRequested()
+                || "true".equalsIgnoreCase(getData("Checkpoint: Resume"))) {
+            FixtureCheckpoint checkpoint = FixtureCheckpoint.getInstance();
+            if (checkpoint.isCompleted(pagePath)) {
+                System.out.println("Resume mode. Skipping completed page " + pagePath);
+                TraceLog.getInstance().instant(TraceLog.PAGE, "Page skipped", pagePath);
+                throw new FixtureCheckpoint.CompletedPageStopTestException(pagePath);
+            }
+            FixtureCheckpoint.Record last = checkpoint.restore(getTestMan());
+            if (last != null) {
+                System.out.println("Resume mode. Restored test data from page " + last.getPage()
+                        + ". Last window was " + last.getWindowTitle());
+            }
+            if (checkpoint.getLast() != null && getDashboard() == null) {
+                // The pages that start SOLA were skipped, so start a session using the
+                // restored Login data before the first page that runs
+                System.out.println("Resume mode. Starting SOLA for page " + pagePath);
+                getTestMan().loadTestObject("SOLA.ResumedSession", Boolean.TRUE);
+                if (!startSola()) {
+                    throw new Exception("Resume mode. Failed to start SOLA for page "
+                            + pagePath);
+                }
+            }
+        }
+        // Discard the scope of a previous page that did not end, then enter the page scope
+        getTestMan().exitScope(TestDataScope.PAGE);
+        getTestMan().enterScope(TestDataScope.PAGE);
+        getTestMan().loadTestObject("SOLA.CurrentPage", pagePath);
+        TraceLog.getInstance().begin(TraceLog.PAGE, pagePath, null);
+        getTestMan().loadTestObject("SOLA.PageStart", System.currentTimeMillis());
+        getTestMan().loadTestObject("SOLA.PageFailed", null);
+        getTestMan().loadTestObject("SOLA.PageFootprint", new LinkedHashSet<String>());
+        return true;
+    }
+
+    /**
+     * Marks the end of the current FitNesse page and saves the footprint recorded for the page.
+     * The duration of the page and its outcome are added to the {@linkplain PageHistory} so the
+     * order of future suite runs can be planned. The test data loaded during the page is
+     * discarded (see {@linkplain TestDataScope}) and a record of the page is appended to the
+     * {@linkplain FixtureCheckpoint} so an interrupted run can be resumed. The page is
+     * considered to have failed if the test was aborted or a step failed or exceeded its budget.
+     * Failed checks of values returned by the fixture are not seen by the fixture, so runners
+     * should also use the FitNesse exit code. Must be called from the TearDown page before
+     * {@linkplain #exitSola()}.
+     * @return True if a page was started, otherwise false.
+     * @see #startPage(String)
+     */
+    @SuppressWarnings("unchecked")
+    public boolean endPage() {
+        boolean result = false;
+        String page = getTestMan().getTestObject("SOLA.CurrentPage", String.class);
+        Set<?> footprint = getTestMan().getTestObject("SOLA.PageFootprint", Set.class);
+        if (page != null && footprint != null) {
+            PageFootprints.getInstance().update(page, (Set<String>) footprint);
+            boolean passed = !isAbortTest()
+                    && getTestMan().getTestObject("SOLA.PageFailed", Boolean.class) == null;
+            Long start = getTestMan().getTestObject("SOLA.PageStart", Long.class);
+            if (start != null) {
+                PageHistory.getInstance().record(page, System.currentTimeMillis() - start,
+                        passed);
+            }
+            getTestMan().exitScope(TestDataScope.PAGE);
+            Window cw = getCurrentWindow();
+            FixtureCheckpoint.getInstance().record(page, passed,
+                    cw == null ? null : cw.getTitle(), getTestMan().getTestData(),
+                    getTestMan().getTestObject("Messages", String.class));
+            TraceLog.getInstance().end(TraceLog.PAGE, page, isAbortTest() ? "aborted" : "completed");
+            result = true;
+        }
+        getTestMan().loadTestObject("SOLA.CurrentPage", null);
+        getTestMan().loadTestObject("SOLA.PageStart", null);
+        getTestMan().loadTestObject("SOLA.PageFailed", null);
+        getTestMan().loadTestObject("SOLA.PageFootprint", null);
+        return result;
+    }
+
+    /**
+     * Starts a local {@linkplain ServiceStandIn} for the SOLA web services. The SOLA Desktop must
+     * be configured to use the stand-in address for its web services, so this should be called
+     * before {@linkplain #startSola()}. The stand-in is configured from the following test data
+     * items.
+     * <ul><li>Stand In: Port - the port to listen on (default 8080)</li>
+     * <li>Stand In: Target - the SOLA server to record responses from when there is no response
+     * for an operation</li>
+     * <li>Stand In: Bandwidth - the bandwidth limit in kilobits per second</li>
+     * <li>Stand In: Profiles - a properties file of operation profiles</li>
+     * <li>Stand In Profile: &lt;operation&gt; - the latency,jitter,padding profile for the
+     * operation. Use * for the operation to set the default profile.</li></ul>
+     * @param dataNameOrDir The directory holding the responses or the name of a test data item
+     * to obtain the directory from.
+     * @return True if the stand-in started.
+     * @throws Exception
+     */
+    public boolean startServiceStandIn(String dataNameOrDir) throws Exception {
+        boolean result = false;
+        if (isAbortTest()) {
+            return result;
+        }
+        try {
+            stopServiceStandIn();
+            ServiceStandIn standIn = new ServiceStandIn(
+                    Integer.parseInt(getDataOrDefault("Stand In: Port", "8080")),
+                    new File(getDataOrDefault(dataNameOrDir)));
+            standIn.setTarget(getData("Stand In: Target"));
+            standIn.setBandwidth(Integer.parseInt(getDataOrDefault("Stand In: Bandwidth", "0")));
+            String profiles = getData("Stand In: Profiles");
+            if (profiles != null && profiles.trim().length() > 0) {
+                standIn.loadProfiles(new File(profiles.trim()));
+            }
+            String prefix = "standinprofile:";
+            for (String name : getTestMan().getTestData().keySet()) {
+                if (name.startsWith(prefix) && getData(name) != null) {
+                    standIn.setProfile(name.substring(prefix.length()),
+                            ServiceStandIn.OperationProfile.valueOf(getData(name)));
+                }
+            }
+            standIn.start();
+            getTestMan().loadTestObject("SOLA.ServiceStandIn", standIn);
+            result = true;
+        } catch (Exception ex) {
+            ProcessException(ex);
+            throw ex;
+        }
+        return result;
+    }
+
+    /**
+     * Stops the {@linkplain ServiceStandIn} if it is running.
+     * @return True if the stand-in was running.
+     */
+    public boolean stopServiceStandIn() {
+        ServiceStandIn standIn = getTestMan().getTestObject("SOLA.ServiceStandIn",
+                ServiceStandIn.class);
+        if (standIn != null) {
+            standIn.stop();
+            getTestMan().loadTestObject("SOLA.ServiceStandIn", null);
+        }
+        return standIn != null;
+    }
+
+    /**
+     * @return The number of requests served by the {@linkplain ServiceStandIn} for each
+     * operation. This list is pipe (i.e. |) delimited e.g. {@code |getApplication=3|}. If the
+     * stand-in is not running or has not served any requests, ! is returned.
+     */
+    public String getServiceCalls() {
+        String result = "|";
+        ServiceStandIn standIn = getTestMan().getTestObject("SOLA.ServiceStandIn",
+                ServiceStandIn.class);
+        if (standIn != null) {
+            for (Map.Entry<String, Integer> entry : standIn.getCallCounts().entrySet()) {
+                result = result + entry.getKey() + "=" + entry.getValue() + "|";
+            }
+        }
+        return result.equals("|") ? "!" : result;
+    }
+
+    /**
+     * Installs the {@linkplain ServiceMeter} so the web service calls made by the SOLA client
+     * are counted and attributed to the step in progress. For each step, the number of calls,
+     * the bytes sent and received and the time spent waiting for responses are written to the
+     * console, the trace and the {@code service-calls.log}. The meter only applies to the
+     * service clients created after it is installed, so this should be called before
+     * {@linkplain #startSola()}. Once installed, the meter remains in place until the JVM exits.
+     * @return True if the meter is installed.
+     */
+    public boolean meterServiceCalls() {
+        if (isAbortTest()) {
+            return false;
+        }
+        return ServiceMeter.getInstance().install();
+    }
+
+    /**
+     * @return The web service calls made by the SOLA client during the last step in the form
+     * {@code |calls=14|sent=184320|received=2411724|wait=1860|} where sent and received are in
+     * bytes and wait is in milliseconds. If the {@linkplain ServiceMeter} is not installed or
+     * no step has completed, ! is returned.
+     * @see #meterServiceCalls()
+     */
+    public String getLastStepServiceCalls() {
+        FixtureStep step = getTestMan().getTestObject("SOLA.LastStep", FixtureStep.class);
+        return step == null || !ServiceMeter.getInstance().isInstalled() ? "!"
+                : step.getServiceUsage().toString();
+    }
+
     /** 
      * Exits the SOLA application using the {@code System.exit(0)} command. To avoid an exception
      * being raised by FitNesse due to the unexpected termination of the JVM before all of the 
      * test results can be collected, a kill thread is spawned to issue the exit command after a
      * delay of 500ms. Also clears all test objects and test data items from the 
      * {@linkplain TestManager}.
+     * <p>In resident mode (see {@linkplain FixturePool}), SOLA is not exited. Instead all windows
+     * other than the Dashboard are closed and the test data and test objects are cleared so the
+     * JVM can run the next suite.</p>
      * @throws Exception 
      */
     public void exitSola() throws Exception {
+        if (isResident()) {
+            resetResident();
+            return;
+        }
         try {
             getTestMan().clear();
             Thread killThread = new Thread(new Runnable() {
@@ -379,6 +993,41 @@ public void log(String message) {
         }
     }
 
+    /**
+     * @return True if the fixture is running in resident mode.
+     */
+    static boolean isResident() {
+        return Boolean.getBoolean(RESIDENT_PROPERTY);
+    }
+
+    /**
+     * Returns a resident fixture to the state it was in after SOLA started. Disposes all windows
+     * other than the Dashboard and clears the {@linkplain TestManager}, keeping the Dashboard as
+     * the current window.
+     * @throws Exception If the windows cannot be disposed.
+     */
+    void resetResident() throws Exception {
+        final Window dashboard = getDashboard();
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                for (java.awt.Window win : java.awt.Window.getWindows()) {
+                    if (win.isDisplayable()
+                            && (dashboard == null || win != dashboard.getAwtComponent())) {
+                        win.dispose();
+                    }
+                }
+            }
+        });
+        getTestMan().clear();
+        if (dashboard != null) {
+            setDashboard(dashboard);
+            setCurrentWindow(dashboard);
+        }
+        System.out.println("Resident mode. Fixture reset for the next suite.");
+    }
+
     /** 
      * Sets the text on the specified text control on the current window. 
      * @param dataNameOrText The text to set or the name of a test data item to obtain the text from. 
@@ -389,18 +1038,32 @@ public void log(String message) {
      */
     public boolean typeInto(String dataNameOrText, String dataNameOrLabel) throws Exception {
         boolean result = false;
+        FixtureStep step = beginStep("typeInto", dataNameOrLabel);
         try {
             String label = getDataOrDefault(dataNameOrLabel);
             String text = getDataOrDefault(dataNameOrText);
-            TextBox tb = getCurrentWindow().getTextBox(label);
-            if (tb != null) {
-                System.out.println("Setting " + label + " to " + text);
-                tb.setText(text);
-                result = tb.textEquals(text).isTrue();
+            if (isSwingBackend()) {
+                ControlResolver.Resolution control = ControlResolver.resolve(getCurrentWindow(),
+                        label, ControlResolver.ControlType.TEXT_BOX);
+                if (control.isFound()) {
+                    System.out.println("Setting " + label + " to " + text);
+                    result = SwingDriver.setText((JTextComponent) control.getComponent(), text);
+                } else {
+                    System.out.println(control.getMessage());
+                }
+            } else {
+                TextBox tb = getCurrentWindow().getTextBox(label);
+                if (tb != null) {
+                    System.out.println("Setting " + label + " to " + text);
+                    tb.setText(text);
+                    result = tb.textEquals(text).isTrue();
+                }
             }
         } catch (Exception ex) {
             ProcessException(ex);
             throw ex;
+        } finally {
+            endStep(step, result);
         }
         return result;
 
@@ -418,6 +1081,7 @@ public void log(String message) {
         if (isAbortTest()) {
             return result;
         }
+        FixtureStep step = beginStep("click", dataNameOrLabel);
         try {
             String buttonLabel = getDataOrDefault(dataNameOrLabel);
             Button button = getCurrentWindow().getButton(buttonLabel);
@@ -429,13 +1093,17 @@ public void log(String message) {
         } catch (Exception ex) {
             ProcessException(ex);
             throw ex;
+        } finally {
+            endStep(step, result);
         }
         return result;
     }
 
     /**
      * Opens a window using a button click and resets the current window to the newly opened window.
-     * Checks the new window title with the window title specified in dataNameOrTitle. 
+     * Checks the new window title with the window title specified in dataNameOrTitle. The step
+     * completes as soon as the window is shown. The time to wait for the window can be set using
+     * the TIMEOUT action on the test data item for the title (see {@linkplain #getWindowTimeout(String)}).
      * @param dataNameOrTitle The title of the window to open or the name of a test data item to 
      * obtain the window title from. 
      * @param dataNameOrLabel The label of the button to click or the name of a test data item to 
@@ -448,15 +1116,17 @@ public void log(String message) {
         if (isAbortTest()) {
             return result;
         }
+        FixtureStep step = beginStep("openWindowClick", getDataOrDefault(dataNameOrTitle), dataNameOrLabel);
         try {
             String windowTitle = getDataOrDefault(dataNameOrTitle);
             String errorMsg = "Failed to open window " + windowTitle;
             Button button = getCurrentWindow().getButton(getDataOrDefault(dataNameOrLabel));
             if (button != null) {
                 System.out.println("Opening window " + windowTitle);
-                Window newWin = WindowInterceptor.run(button.triggerClick());
+                Window newWin = interceptWindow(button.triggerClick(), dataNameOrTitle);
                 if (newWin != null) {
                     this.setCurrentWindow(newWin);
+                    addOpenWindow(newWin);
                     if (this.getCurrentWindow().getTitle().equalsIgnoreCase(windowTitle)) {
                         result = true;
                     } else {
@@ -471,6 +1141,148 @@ public void log(String message) {
         } catch (Exception ex) {
             ProcessException(ex);
             throw ex;
+        } finally {
+            endStep(step, result);
+        }
+        return result;
+    }
+
+    /**
+     * Opens one or more windows or dialogs using a single button click. Each window shown by the
+     * click is captured as it appears, so modeless windows and dialogs shown in sequence do not
+     * need to wait out the window interception time limit. The current window is set to the last
+     * window opened. Use {@linkplain #switchToWindow(String)} to make one of the other windows
+     * the current window.
+     * @param dataNameOrTitles Comma separated list of the titles of the windows to open or the
+     * name of a test data item to obtain the titles from. The timeout for the step applies to all
+     * of the windows. See {@linkplain #openWindowClick(String, String)}
+     * @param dataNameOrLabel The label of the button to click or the name of a test data item to
+     * obtain the label from.
+     * @return True if all of the windows are successfully opened.
+     * @throws Exception If any of the windows was not opened.
+     */
+    public boolean openWindowsClick(String dataNameOrTitles, String dataNameOrLabel) throws Exception {
+        boolean result = false;
+        if (isAbortTest()) {
+            return result;
+        }
+        FixtureStep step = beginStep("openWindowsClick", getDataOrDefault(dataNameOrTitles), dataNameOrLabel);
+        try {
+            String titles = getDataOrDefault(dataNameOrTitles);
+            List<String> expected = new ArrayList<String>();
+            for (String title : titles.split(",")) {
+                expected.add(getDataOrDefault(title.trim()));
+            }
+            Button button = getCurrentWindow().getButton(getDataOrDefault(dataNameOrLabel));
+            System.out.println("Opening windows " + expected);
+            WindowWatcher watcher = WindowWatcher.watch(button.triggerClick());
+            List<Window> opened;
+            try {
+                opened = watcher.awaitWindows(expected, getWindowTimeout(dataNameOrTitles));
+            } finally {
+                watcher.close();
+            }
+            for (Window win : opened) {
+                measureTimeToInteractive(win, watcher);
+                addOpenWindow(win);
+                this.setCurrentWindow(win);
+            }
+            List<String> unexpectedTitles = new ArrayList<String>();
+            for (Window win : watcher.getUnexpected()) {
+                unexpectedTitles.add(win.getTitle());
+            }
+            if (!unexpectedTitles.isEmpty()) {
+                System.out.println("Windows " + unexpectedTitles + " were also opened");
+            }
+            List<String> outstanding = watcher.getOutstanding();
+            result = outstanding.isEmpty();
+            if (!result) {
+                throw new Exception("Failed to open windows " + outstanding + ". Unexpected"
+                        + " windows opened " + unexpectedTitles + ".");
+            }
+        } catch (Exception ex) {
+            ProcessException(ex);
+            throw ex;
+        } finally {
+            endStep(step, result);
+        }
+        return result;
+    }
+
+    /**
+     * Makes a window previously opened during the test the current window.
+     * @param dataNameOrTitle The title of the window or the name of a test data item to obtain
+     * the window title from.
+     * @return True if the window is found.
+     * @throws Exception If the window has not been opened.
+     */
+    public boolean switchToWindow(String dataNameOrTitle) throws Exception {
+        boolean result = false;
+        if (isAbortTest()) {
+            return result;
+        }
+        FixtureStep step = beginStep("switchToWindow", getDataOrDefault(dataNameOrTitle), null);
+        try {
+            String windowTitle = getDataOrDefault(dataNameOrTitle);
+            Window win = getTestMan().getTestObject("SOLA.Window:" + windowTitle.toLowerCase(),
+                    Window.class);
+            if (win == null && getDashboard() != null
+                    && windowTitle.equalsIgnoreCase(getDashboard().getTitle())) {
+                win = getDashboard();
+            }
+            if (win == null) {
+                throw new Exception("Window " + windowTitle + " has not been opened");
+            }
+            this.setCurrentWindow(win);
+            result = true;
+        } catch (Exception ex) {
+            ProcessException(ex);
+            throw ex;
+        } finally {
+            endStep(step, result);
+        }
+        return result;
+    }
+
+    /**
+     * @param dataNameOrTitle The title of a window opened during the test or the name of a test
+     * data item to obtain the window title from.
+     * @return The time to interactive for the most recent opening of the window in the form
+     * {@code |shown=120|layout=350|interactive=2900|}. Each timing is the number of milliseconds
+     * from the click or menu selection that opened the window. -1 indicates the window did not
+     * reach that state and ? that the interactive timing could not be measured (see
+     * {@linkplain TimeToInteractive}). If the window has not been measured (e.g. because the measurement has
+     * not been enabled with {@code Time To Interactive: Timeout}), ! is returned.
+     * @see TimeToInteractive
+     */
+    public String getTimeToInteractive(String dataNameOrTitle) {
+        TimeToInteractive.Timing timing = TimeToInteractive.getInstance().getLatest(
+                getDataOrDefault(dataNameOrTitle));
+        return timing == null ? "!" : timing.toString();
+    }
+
+    /**
+     * Checks the window became interactive within the threshold the most recent time it was
+     * opened. e.g.
+     * <pre>
+     * |check|is Interactive Within|New Application|4000|true|
+     * </pre>
+     * @param dataNameOrTitle The title of a window opened during the test or the name of a test
+     * data item to obtain the window title from.
+     * @param dataNameOrMillis The threshold in milliseconds or the name of a test data item to
+     * obtain the threshold from.
+     * @return True if the window became interactive within the threshold.
+     * @see #getTimeToInteractive(String)
+     */
+    public boolean isInteractiveWithin(String dataNameOrTitle, String dataNameOrMillis) {
+        String windowTitle = getDataOrDefault(dataNameOrTitle);
+        long threshold = Long.parseLong(getDataOrDefault(dataNameOrMillis).trim());
+        TimeToInteractive.Timing timing = TimeToInteractive.getInstance().getLatest(windowTitle);
+        boolean result = timing != null && timing.getInteractive() >= 0
+                && timing.getInteractive() <= threshold;
+        if (!result) {
+            System.out.println("Window " + windowTitle + " was not interactive within "
+                    + threshold + "ms " + (timing == null ? "as it has not been opened" : timing));
         }
         return result;
     }
@@ -513,74 +1325,59 @@ public void log(String message) {
     }
 
     /**
-     * Obtains the list of options from the specified combo box or list box on the current window. 
-     * @param dataNameOrLabel The name of the combo box or list box to get the items list 
-     * from or the name of a test data item to obtain the label from. 
-     * @return The list of items in the combo box or list box. These are returned as one string, 
-     * with each option delimited by a pipe (i.e. |). If the combo box / list box contains 
-     * no options, ! is returned. 
+     * Obtains the list of options from the specified combo box, list box or table on the current
+     * window. For a table, the options are the values in the first column of each row.
+     * @param dataNameOrLabel The name of the combo box, list box or table to get the items list
+     * from or the name of a test data item to obtain the label from.
+     * @return The list of items in the combo box or list box. These are returned as one string,
+     * with each option delimited by a pipe (i.e. |). If the combo box / list box contains
+     * no options, ! is returned.
      **/
     public String optionsOf(String dataNameOrLabel) throws Exception {
         String result = "|";
         if (isAbortTest()) {
             return result;
         }
+        FixtureStep step = beginStep("optionsOf", dataNameOrLabel);
         try {
             String controlLabel = getDataOrDefault(dataNameOrLabel);
-//            log ("Start options of " + controlLabel);
-            ComboBox comboBox = null;
-            try {
-                comboBox = getCurrentWindow().getComboBox(controlLabel);
-            } catch (ItemNotFoundException ex) {
-                // Ignore the exception as this might be a list box. 
-            }
-            if (comboBox != null) {
-                System.out.println("Found combo box for " + controlLabel + ". Listing "
-                        + comboBox.getAwtComponent().getItemCount() + "options.");
-                for (int i = 0; i < comboBox.getAwtComponent().getItemCount(); i++) {
-                    Object item = comboBox.getAwtComponent().getItemAt(i);
-                    result = result + getDisplayValue(item) + "|";
-                }
-            } else {
-                ListBox listBox = null;
-                try {
-                    listBox = getCurrentWindow().getListBox(controlLabel);
-                } catch (ItemNotFoundException ex) {
-                    // Ignore the exception as this might be a table. 
-                }
-                if (listBox != null) {
-                    System.out.println("Found list box for " + controlLabel + ". Listing "
-                            + listBox.getSize() + " options.");
-                    for (int i = 0; i < listBox.getSize(); i++) {
-                        Object item = listBox.getAwtComponent().getModel().getElementAt(i);
-                        result = result + getDisplayValue(item) + "|";
-                    }
-                } else {
-                    Table table = null;
-                    try {
-                        log ("options of " + controlLabel);
-                        table = getCurrentWindow().getTable(controlLabel);
-                    }  catch (ItemNotFoundException ex) {
-                    // Ignore the exception as this might be another control. 
-                    }
-
-                    if (table != null) {
-                        log(("Found table for " + controlLabel + ". Listing in optionsOf"
-                                + table.getColumnCount() + " options."));
+            ControlResolver.Resolution control = resolveSelectable(getCurrentWindow(), controlLabel);
+            if (control.isFound()) {
+                switch (control.getType()) {
+                    case COMBO_BOX:
+                        JComboBox<?> combo = control.getComboBox().getAwtComponent();
+                        System.out.println("Found combo box for " + controlLabel + ". Listing "
+                                + combo.getItemCount() + " options.");
+                        for (int i = 0; i < combo.getItemCount(); i++) {
+                            result = result + getDisplayValue(combo.getItemAt(i)) + "|";
+                        }
+                        break;
+                    case LIST_BOX:
+                        ListModel<?> model = control.getListBox().getAwtComponent().getModel();
+                        System.out.println("Found list box for " + controlLabel + ". Listing "
+                                + model.getSize() + " options.");
+                        for (int i = 0; i < model.getSize(); i++) {
+                            result = result + getDisplayValue(model.getElementAt(i)) + "|";
+                        }
+                        break;
+                    case TABLE:
+                        JTable table = control.getTable().getAwtComponent();
                         System.out.println("Found table for " + controlLabel + ". Listing "
                                 + table.getRowCount() + " options.");
-                            for (int i = 0; i < table.getColumnCount(); i++) {
-//                            Object item = table.getContentAt(0, i);
-//                            result = result + getDisplayValue(item) + "|";
+                        for (int i = 0; i < table.getRowCount(); i++) {
+                            result = result + getDisplayValue(table.getValueAt(i, 0)) + "|";
                         }
-                    }
-                    log("Display Value: " + result);
+                        break;
                 }
+            } else {
+                System.out.println(control.getMessage());
             }
 
         } catch (Exception ex) {
             ProcessException(ex);
             throw ex;
+        } finally {
+            endStep(step, !result.equals("|"));
         }
 
         if (result.equals("|")) {
@@ -591,125 +1388,142 @@ public void log(String message) {
     }
 
     /**
-     * Selects an option from the specified combo box or list box on the current window. 
+     * Selects an option from the specified combo box, list box or table on the current window.
+     * For a table, the row with the matching text in the first column is selected.
      * @param dataNameOrText The text of the option to select or the name of a test data item that
-     * contains the text of the option to select. 
-     * @param dataNameOrLabel The label of the combo box or list box to select from or the name of 
-     * a test data item to obtain the label from. 
-     * @return True if the option is successfully selected otherwise false. 
-     * @throws Exception 
+     * contains the text of the option to select.
+     * @param dataNameOrLabel The label of the combo box, list box or table to select from or the
+     * name of a test data item to obtain the label from.
+     * @return True if the option is successfully selected otherwise false.
+     * @throws Exception
      */
     public boolean selectFrom(String dataNameOrText, String dataNameOrLabel) throws Exception {
         boolean result = false;
         if (isAbortTest()) {
             return result;
         }
+        FixtureStep step = beginStep("selectFrom", dataNameOrLabel);
         try {
             String itemToSelect = getDataOrDefault(dataNameOrText);
             String action = getAction(dataNameOrText);
             String controlLabel = getDataOrDefault(dataNameOrLabel);
-            ComboBox comboBox = null;
-            try {
-                comboBox = getCurrentWindow().getComboBox(controlLabel);               
-            } catch (ItemNotFoundException ex) {
-                // Log the message for the user
-                System.out.println(ex.getMessage() + ". Looking ComboBox.");
-            }
-            if (comboBox != null) {
-                System.out.println("Found combo box for " + controlLabel);
-                 if (action.equals("FIRST")) {
-                    if (comboBox.getAwtComponent().getItemCount() > 0) {
-                        // Select the first value in the combo
-                        comboBox.getAwtComponent().setSelectedIndex(0);
-                       result = true;
-                    } else {
-                        System.out.println("FIRST item not selected as combo box did not contain"
-                                + " any items.");
-                    }
-                    } else if (action.equals("LAST")) {
-                    if (comboBox.getAwtComponent().getItemCount() > 0) {
-                        // Select the first value in the combo
-                        comboBox.getAwtComponent().setSelectedIndex(comboBox.getAwtComponent().getItemCount() - 1);
-                        result = true;
-                    } else {
-                        System.out.println("LAST item not selected as combo box did not contain"
-                                + " any items.");
-                    }
-                } else {
-                    // Try to select the item indicated by the data value and check if the
-                    // appropriate value was selected
-                    comboBox.select(itemToSelect);
-                     result = comboBox.selectionEquals(itemToSelect).isTrue();
-                 }
-
+            ControlResolver.Resolution control = resolveSelectable(getCurrentWindow(), controlLabel);
+            if (control.isFound() && isSwingBackend()) {
+                System.out.println(control.getMessage());
+                result = SwingDriver.select(control.getComponent(), itemToSelect, action);
+            } else if (control.isFound()) {
+                result = select(control, itemToSelect, action, controlLabel);
             } else {
-                ListBox listBox = null;
-                try {
-                    listBox = getCurrentWindow().getListBox(controlLabel);
-                } catch (ItemNotFoundException ex) {
-                    // Log the message for the user
-                 System.out.println(ex.getMessage() + ". Looking ListBox.");
-
-                }
-                if (listBox != null) {
-                    System.out.println("Found list box for " + controlLabel);
-                    if (action.equals("FIRST")) {
-                        if (listBox.getSize() > 0) {
-                            listBox.getAwtComponent().setSelectedIndex(0);
-                            result = !listBox.selectionIsEmpty().isTrue();
-                        } else {
-                            System.out.println("FIRST item not selected as list box did not contain"
-                                    + " any items.");
-                        }
-                   } else if (action.equals("LAST")) {
-                         if (listBox.getSize() > 0) {
-                             //not sure if this gets last value or last potential value
-                            listBox.getAwtComponent().setSelectedIndex(listBox.getAwtComponent().getMaxSelectionIndex());
-                            result = !listBox.selectionIsEmpty().isTrue();
-                        } else {
-                            System.out.println("LAST item not selected as list box did not contain"
-                                    + " any items.");
-                        }
-                    } else {
-                        // Try to select the item indicated by the data value and check if the
-                        // appropriate value was selected
-                        listBox.select(itemToSelect);
-                        result = listBox.selectionEquals(itemToSelect).isTrue();
-                    }
-                } else {
-                    Table table = null;
-                    try {
-//                    log("Control is " + controlLabel + " looking for " + dataNameOrText + " or " + dataNameOrLabel);
-                        table = getCurrentWindow().getTable(controlLabel);
-                    } catch (ItemNotFoundException ex) {
-                        // Log the message for the user
-                     System.out.println(ex.getMessage() + ". Looking Table.");
-//                    log("22Control is " + controlLabel + " looking for " + dataNameOrText + " or " + dataNameOrLabel);
-                    }
-//                    log("333Control is " + controlLabel + " looking for " + dataNameOrText + " or " + dataNameOrLabel);
-                    if (table != null) {
-                        System.out.println("Found table for " + controlLabel);
-               log("Found table (selectFrom) for " + controlLabel+ " " + table.getRowCount() + " rows |" + table.getColumnCount() + " columns");
-                           for (int i = 0; i < table.getRowCount(); i++) {
-                           for (int j = 0; i < table.getColumnCount(); j++) {
-                              Object item = table.getContentAt(i, j);
-                              log("i=" + i + "j=" + j + "|" + item);
-                             
-                           }
-                               
-                           }
-//                            Object item = table.getContentAt(0, i);
-//                            result = result + getDisplayValue(item) + "|";
-                            // Try to select the item indicated by the data value and check if the
-                            // appropriate value was selected
-                            table.selectRowsWithText(0, dataNameOrText);
-                            result = !table.selectionIsEmpty().isTrue();
-                         }
-                    }
+                System.out.println(control.getMessage());
             }
         } catch (Exception ex) {
             ProcessException(ex);
             throw ex;
+        } finally {
+            endStep(step, result);
+        }
+        return result;
+    }
+
+    /**
+     * Locates the combo box, list box or table matching the label on the window.
+     * @param window The window to search.
+     * @param controlLabel The label of the control to find.
+     * @return The resolution indicating the type of control found.
+     */
+    ControlResolver.Resolution resolveSelectable(Window window, String controlLabel) {
+        return ControlResolver.resolve(window, controlLabel,
+                ControlResolver.ControlType.COMBO_BOX, ControlResolver.ControlType.LIST_BOX,
+                ControlResolver.ControlType.TABLE);
+    }
+
+    /**
+     * Dispatches the selection to the handler for the type of control that was resolved.
+     * @param control The resolved control.
+     * @param itemToSelect The text of the option to select.
+     * @param action The action for the option. FIRST and LAST select the first or last option
+     * regardless of the text.
+     * @param controlLabel The label of the control used for logging.
+     * @return True if the option is successfully selected otherwise false.
+     */
+    boolean select(ControlResolver.Resolution control, String itemToSelect, String action,
+            String controlLabel) {
+        boolean result = false;
+        switch (control.getType()) {
+            case COMBO_BOX:
+                result = selectFromComboBox(control.getComboBox(), itemToSelect, action, controlLabel);
+                break;
+            case LIST_BOX:
+                result = selectFromListBox(control.getListBox(), itemToSelect, action, controlLabel);
+                break;
+            case TABLE:
+                result = selectFromTable(control.getTable(), itemToSelect, action, controlLabel);
+                break;
+        }
+        return result;
+    }
+
+    private boolean selectFromComboBox(ComboBox comboBox, String itemToSelect, String action,
+            String controlLabel) {
+        boolean result = false;
+        System.out.println("Found combo box for " + controlLabel);
+        int itemCount = comboBox.getAwtComponent().getItemCount();
+        if (action.equals("FIRST") || action.equals("LAST")) {
+            if (itemCount > 0) {
+                comboBox.getAwtComponent().setSelectedIndex(action.equals("FIRST") ? 0 : itemCount - 1);
+                result = true;
+            } else {
+                System.out.println(action + " item not selected as combo box did not contain"
+                        + " any items.");
+            }
+        } else {
+            // Try to select the item indicated by the data value and check if the
+            // appropriate value was selected
+            comboBox.select(itemToSelect);
+            result = comboBox.selectionEquals(itemToSelect).isTrue();
+        }
+        return result;
+    }
+
+    private boolean selectFromListBox(ListBox listBox, String itemToSelect, String action,
+            String controlLabel) {
+        boolean result = false;
+        System.out.println("Found list box for " + controlLabel);
+        int size = listBox.getSize();
+        if (action.equals("FIRST") || action.equals("LAST")) {
+            if (size > 0) {
+                listBox.getAwtComponent().setSelectedIndex(action.equals("FIRST") ? 0 : size - 1);
+                result = !listBox.selectionIsEmpty().isTrue();
+            } else {
+                System.out.println(action + " item not selected as list box did not contain"
+                        + " any items.");
+            }
+        } else {
+            // Try to select the item indicated by the data value and check if the
+            // appropriate value was selected
+            listBox.select(itemToSelect);
+            result = listBox.selectionEquals(itemToSelect).isTrue();
+        }
+        return result;
+    }
+
+    private boolean selectFromTable(Table table, String itemToSelect, String action,
+            String controlLabel) {
+        boolean result = false;
+        int rowCount = table.getRowCount();
+        System.out.println("Found table for " + controlLabel + " with " + rowCount + " rows");
+        if (action.equals("FIRST") || action.equals("LAST")) {
+            if (rowCount > 0) {
+                table.selectRow(action.equals("FIRST") ? 0 : rowCount - 1);
+                result = !table.selectionIsEmpty().isTrue();
+            } else {
+                System.out.println(action + " row not selected as table did not contain"
+                        + " any rows.");
+            }
+        } else {
+            // Select the row with the text in the first column
+            table.selectRowsWithText(0, itemToSelect);
+            result = !table.selectionIsEmpty().isTrue();
         }
         return result;
     }
@@ -727,6 +1541,7 @@ public void log(String message) {
         if (isAbortTest()) {
             return result;
         }
+        FixtureStep step = beginStep("selectTab", dataNameOrTabLabel);
         try {
             // Assume there is only one tab group displayed on the page...
             TabGroup tg = getCurrentWindow().getTabGroup();
@@ -739,18 +1554,254 @@ public void log(String message) {
         } catch (Exception ex) {
             ProcessException(ex);
             throw ex;
+        } finally {
+            endStep(step, result);
         }
         return result;
 
     }
 
   
+    /**
+     * Performs an interaction with the map displayed on the current window as a step and waits
+     * for the map to render (see {@linkplain MapProbe}). The time the map must remain idle
+     * (default 200ms) and the maximum time to wait for the map to render (default 60000ms) can
+     * be configured using setup data. e.g.
+     * <pre>
+     * |script|Setup Test Data                |
+     * |Field |Map: Quiet Period  |Value|500  |
+     * |Field |Map: Render Timeout|Value|90000|
+     * </pre>
+     * @return True if the map rendered before the timeout.
+     * @throws Exception If the current window does not display a map or the map did not render.
+     */
+    private boolean mapStep(String method, String dataNameOrLabel,
+            MapProbe.MapInteraction interaction) throws Exception {
+        boolean result = false;
+        if (isAbortTest()) {
+            return result;
+        }
+        FixtureStep step = beginStep(method, dataNameOrLabel);
+        try {
+            MapProbe probe = getMapProbe();
+            MapProbe.RenderTiming timing = probe.perform(step.getSignature(), interaction,
+                    Long.parseLong(getDataOrDefault("Map: Quiet Period", "200")),
+                    Long.parseLong(getDataOrDefault("Map: Render Timeout", "60000")));
+            getTestMan().loadTestObject("SOLA.MapRender", timing);
+            TraceLog.getInstance().instant(TraceLog.WINDOW, "Map rendered", timing.toString());
+            System.out.println("Map rendered " + timing);
+            result = timing.getIdleMillis() >= 0;
+            if (!result) {
+                throw new Exception("Map did not finish rendering " + timing);
+            }
+        } catch (Exception ex) {
+            ProcessException(ex);
+            throw ex;
+        } finally {
+            endStep(step, result);
+        }
+        return result;
+    }
+
+    /**
+     * @return The probe for the map on the current window. The probe is kept while the same map
+     * is displayed so its render listener is only added once.
+     * @throws Exception If the current window does not display a map.
+     */
+    private MapProbe getMapProbe() throws Exception {
+        MapProbe result = getTestMan().getTestObject("SOLA.MapProbe", MapProbe.class);
+        Component root = getCurrentWindow().getAwtComponent();
+        if (result == null || !SwingUtilities.isDescendingFrom(result.getPane(), root)
+                || !result.getPane().isShowing()) {
+            result = MapProbe.find(root);
+            if (result == null) {
+                throw new Exception("The window " + getCurrentWindow().getTitle()
+                        + " does not display a map. Select the tab with the map first.");
+            }
+            getTestMan().loadTestObject("SOLA.MapProbe", result);
+        }
+        return result;
+    }
+
+    /**
+     * Zooms the map on the current window to the full extent of its layers.
+     * @return True if the map rendered.
+     * @throws Exception If the map did not render.
+     */
+    public boolean zoomMapToExtent() throws Exception {
+        return mapStep("zoomMapToExtent", null, new MapProbe.MapInteraction() {
+
+            @Override
+            public void run(MapProbe probe) throws Exception {
+                probe.zoomToExtent();
+            }
+        });
+    }
+
+    /**
+     * Zooms the map on the current window to an extent such as a parcel. e.g.
+     * <pre>
+     * |script|Setup Test Data                                          |
+     * |Field |Map: Parcel 1/2345|Value|1782010,5920110,1782090,5920190|
+     *
+     * |script     |Desktop Fixture  |
+     * |zoom Map To|Map: Parcel 1/2345|
+     * </pre>
+     * @param dataNameOrExtent The extent as minX,minY,maxX,maxY in map units or the name of a test
+     * data item to obtain the extent from.
+     * @return True if the map rendered.
+     * @throws Exception If the map did not render.
+     */
+    public boolean zoomMapTo(String dataNameOrExtent) throws Exception {
+        final String extent = getDataOrDefault(dataNameOrExtent);
+        return mapStep("zoomMapTo", dataNameOrExtent, new MapProbe.MapInteraction() {
+
+            @Override
+            public void run(MapProbe probe) throws Exception {
+                double[] values = parseNumbers(extent, 4, "minX,minY,maxX,maxY");
+                probe.zoomTo(values[0], values[1], values[2], values[3]);
+            }
+        });
+    }
+
+    /**
+     * Zooms the map on the current window about its centre.
+     * @param dataNameOrFactor The zoom factor or the name of a test data item to obtain the
+     * factor from. e.g. 2 zooms in to show half the width, 0.5 zooms out.
+     * @return True if the map rendered.
+     * @throws Exception If the map did not render.
+     */
+    public boolean zoomMapBy(String dataNameOrFactor) throws Exception {
+        final String factor = getDataOrDefault(dataNameOrFactor);
+        return mapStep("zoomMapBy", dataNameOrFactor, new MapProbe.MapInteraction() {
+
+            @Override
+            public void run(MapProbe probe) throws Exception {
+                probe.zoomBy(parseNumbers(factor, 1, "factor")[0]);
+            }
+        });
+    }
+
+    /**
+     * Pans the map on the current window as if it had been dragged with the mouse.
+     * @param dataNameOrPixels The distance to drag the map as dx,dy in pixels or the name of a
+     * test data item to obtain the distance from. e.g. 200,0 drags the map to the right.
+     * @return True if the map rendered.
+     * @throws Exception If the map did not render.
+     */
+    public boolean panMapBy(String dataNameOrPixels) throws Exception {
+        final String pixels = getDataOrDefault(dataNameOrPixels);
+        return mapStep("panMapBy", dataNameOrPixels, new MapProbe.MapInteraction() {
+
+            @Override
+            public void run(MapProbe probe) throws Exception {
+                double[] values = parseNumbers(pixels, 2, "dx,dy");
+                probe.panBy((int) values[0], (int) values[1]);
+            }
+        });
+    }
+
+    /**
+     * Shows or hides a layer on the map on the current window.
+     * @param dataNameOrBoolean True to show the layer or false to hide it, or the name of a test
+     * data item to obtain the value from.
+     * @param dataNameOrTitle The title of the layer or the name of a test data item to obtain the
+     * title from.
+     * @return True if the map rendered.
+     * @throws Exception If the layer was not found or the map did not render.
+     */
+    public boolean showMapLayer(String dataNameOrBoolean, String dataNameOrTitle)
+            throws Exception {
+        final boolean visible = !"false".equalsIgnoreCase(getDataOrDefault(dataNameOrBoolean));
+        final String title = getDataOrDefault(dataNameOrTitle);
+        return mapStep("showMapLayer", dataNameOrTitle, new MapProbe.MapInteraction() {
+
+            @Override
+            public void run(MapProbe probe) throws Exception {
+                if (!probe.setLayerVisible(title, visible)) {
+                    throw new Exception("Map layer " + title + " not found");
+                }
+            }
+        });
+    }
+
+    /**
+     * Adds a point to the map on the current window by selecting the map tool and clicking the
+     * map. e.g.
+     * <pre>
+     * |add Map Point|centre|with|Add point|
+     * </pre>
+     * @param dataNameOrPoint The point as x,y in map units, centre for the centre of the map, or
+     * the name of a test data item to obtain the point from.
+     * @param dataNameOrTool The name, tooltip or text of the map tool button or the name of a
+     * test data item to obtain it from.
+     * @return True if the map rendered.
+     * @throws Exception If the tool was not found or the map did not render.
+     */
+    public boolean addMapPointWith(String dataNameOrPoint, String dataNameOrTool)
+            throws Exception {
+        final String point = getDataOrDefault(dataNameOrPoint).trim();
+        final String tool = getDataOrDefault(dataNameOrTool);
+        return mapStep("addMapPointWith", dataNameOrTool, new MapProbe.MapInteraction() {
+
+            @Override
+            public void run(MapProbe probe) throws Exception {
+                if (!MapProbe.selectTool(getCurrentWindow().getAwtComponent(), tool)) {
+                    throw new Exception("Map tool " + tool + " not found");
+                }
+                double[] xy = probe.getCentre();
+                if (!point.equalsIgnoreCase("centre") && !point.equalsIgnoreCase("center")) {
+                    xy = parseNumbers(point, 2, "x,y");
+                }
+                probe.clickAt(xy[0], xy[1]);
+            }
+        });
+    }
+
+    /**
+     * Parses the comma separated numbers for a map step. Called from the map interaction so
+     * that invalid values fail the step.
+     * @param text The numbers separated by commas.
+     * @param count The number of values expected.
+     * @param format The expected format used in the error message.
+     * @return The values.
+     * @throws Exception If the text does not contain the expected number of values.
+     */
+    private double[] parseNumbers(String text, int count, String format) throws Exception {
+        String[] parts = text == null ? new String[0] : text.split(",");
+        if (parts.length != count) {
+            throw new Exception("Invalid map value " + text + ". Expected " + format);
+        }
+        double[] result = new double[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                result[i] = Double.parseDouble(parts[i].trim());
+            }
+        } catch (NumberFormatException ex) {
+            throw new Exception("Invalid map value " + text + ". Expected " + format);
+        }
+        return result;
+    }
+
+    /**
+     * @return The render time, time until idle, scale and visible layers for the last map
+     * step. e.g. {@code |render=850|idle=870|scale=2.50|layers=Parcels,Roads|} or ! if no map
+     * step has run. The render time is ? if the map did not report a rendering.
+     * @see MapProbe
+     */
+    public String getMapRenderTime() {
+        MapProbe.RenderTiming timing = getTestMan().getTestObject("SOLA.MapRender",
+                MapProbe.RenderTiming.class);
+        return timing == null ? "!" : timing.toString();
+    }
+
     /**
      * Returns the text for a message captured by the {@linkplain MessageResponder}. Note that
      * only messages that have been configured with explicit response values using setup data
      * can be queried with this method. This method can be used to confirm a specific message 
      * has displayed the expected information (e.g. That a validation message has listed all 
-     * invalid fields, etc)
+     * invalid fields, etc). Only the most recently captured messages are retained, up to the
+     * capacity configured with the {@code Test Objects: Cache Capacity} setup data (default 100).
      * @param messageCode The code of the message to check the text for.
      * @return The text matching the message code or ! if the message has not been captured. 
      * @throws Exception 
@@ -788,6 +1839,134 @@ public void log(String message) {
         return result;
     }
 
+    /**
+     * @return The number of times each message response rule has been applied. This list is
+     * pipe (i.e. |) delimited e.g. {@code |cliapp*=3|messagetype:warning=12|}. If no rules are
+     * configured ! is returned.
+     * @see MessageRuleTable
+     */
+    public String getMessageRuleHits() {
+        String result = "|";
+        for (MessageRuleTable.Rule rule : MessageRuleTable.getInstance().getRuleList()) {
+            result = result + rule.getName() + "=" + rule.getHits() + "|";
+        }
+        return result.equals("|") ? "!" : result;
+    }
+
+    /**
+     * @return The cost of the last step completed by the fixture in the form
+     * {@code |wall=850|fixtureCpu=5|edtCpu=610|fixtureAlloc=10240|edtAlloc=412000000|gcCount=3|gcMillis=95|}.
+     * Times are in milliseconds and allocations in bytes. -1 indicates the value is not
+     * supported by the JVM. If no step has completed, ! is returned. e.g.
+     * <pre>
+     * |open Window Click|New Application|Lodge new application|
+     * |show             |get Step Cost                         |
+     * </pre>
+     * @see StepCost
+     */
+    public String getStepCost() {
+        FixtureStep step = getTestMan().getTestObject("SOLA.LastStep", FixtureStep.class);
+        return step == null ? "!" : step.getCost().toString();
+    }
+
+    /**
+     * Declares the performance budget for a step, window or timer. Steps that exceed their
+     * budget fail (see {@linkplain #getBudget(FixtureStep)}).
+     * @param dataNameOrTarget The step signature (method &gt; window title &gt; control),
+     * window title, fixture method or timer name.
+     * @param dataNameOrMillis The budget in milliseconds or the name of a test data item to
+     * obtain the budget from.
+     * @return Always true.
+     */
+    public boolean setBudget(String dataNameOrTarget, String dataNameOrMillis) {
+        getTestMan().loadTestDataItem("Budget: " + getDataOrDefault(dataNameOrTarget),
+                getDataOrDefault(dataNameOrMillis).trim(), false, "", "");
+        return true;
+    }
+
+    /**
+     * Starts a named timer. Timers can span several steps to measure a clerk workflow. e.g.
+     * <pre>
+     * |start Timer|Lodge                 |
+     * |click      |Lodge                 |
+     * |click      |Yes                   |
+     * |stop Timer |Lodge                 |
+     * |check      |elapsed|Lodge|&lt;3000|
+     * |ensure     |elapsed|Lodge|under|3000|
+     * </pre>
+     * @param name The name of the timer.
+     * @return Always true.
+     */
+    public boolean startTimer(String name) {
+        getTestMan().loadTestObject("SOLA.Timer:" + name.toLowerCase(), System.nanoTime());
+        getTestMan().loadTestObject("SOLA.TimerElapsed:" + name.toLowerCase(), null);
+        TraceLog.getInstance().begin(TraceLog.STEP, "Timer " + name, null);
+        return true;
+    }
+
+    /**
+     * Stops a named timer and adds its elapsed time to the {@linkplain PerformanceSummary}
+     * along with its budget if one has been set.
+     * @param name The name of the timer.
+     * @return The elapsed time in milliseconds.
+     * @throws Exception If the timer has not been started.
+     */
+    public long stopTimer(String name) throws Exception {
+        Long start = getTestMan().getTestObject("SOLA.Timer:" + name.toLowerCase(), Long.class);
+        if (start == null) {
+            throw new Exception("Timer " + name + " has not been started");
+        }
+        long result = (System.nanoTime() - start) / 1000000L;
+        getTestMan().loadTestObject("SOLA.Timer:" + name.toLowerCase(), null);
+        getTestMan().loadTestObject("SOLA.TimerElapsed:" + name.toLowerCase(), result);
+        TraceLog.getInstance().end(TraceLog.STEP, "Timer " + name, result + "ms");
+        Long budget = parseBudget(name);
+        PerformanceSummary.getInstance().record(
+                getTestMan().getTestObject("SOLA.CurrentPage", String.class),
+                PerformanceSummary.TIMER, name, result, budget);
+        System.out.println("Timer " + name + " elapsed " + result + "ms"
+                + (budget == null ? "" : " against a budget of " + budget + "ms"));
+        return result;
+    }
+
+    /**
+     * @param name The name of the timer.
+     * @return The elapsed time of the timer in milliseconds. If the timer is still running, the
+     * time elapsed so far. If the timer has not been started, -1.
+     */
+    public long elapsed(String name) {
+        Long result = getTestMan().getTestObject("SOLA.TimerElapsed:" + name.toLowerCase(),
+                Long.class);
+        if (result == null) {
+            Long start = getTestMan().getTestObject("SOLA.Timer:" + name.toLowerCase(), Long.class);
+            result = start == null ? -1 : (System.nanoTime() - start) / 1000000L;
+        }
+        return result;
+    }
+
+    /**
+     * @param name The name of the timer.
+     * @param dataNameOrMillis The limit in milliseconds or the name of a test data item to
+     * obtain the limit from.
+     * @return True if the timer has been started and its elapsed time is within the limit.
+     */
+    public boolean elapsedUnder(String name, String dataNameOrMillis) {
+        long limit = Long.parseLong(getDataOrDefault(dataNameOrMillis).trim());
+        long elapsed = elapsed(name);
+        return elapsed >= 0 && elapsed <= limit;
+    }
+
+    /**
+     * @return The statistics for the test objects held by the {@linkplain TestManager}. e.g.
+     * {@code |hits=120|misses=4|evictions=0|size=8|}
+     * @see TestObjectStore
+     */
+    public String getTestObjectStats() {
+        TestObjectStore store = getTestMan().getTestObjectStore();
+        return "|hits=" + store.getHits() + "|misses=" + store.getMisses() + "|evictions="
+                + store.getEvictions() + "|size=" + store.size() + "|";
+    }
+
     /** 
      * Clears the list of messages captured by the {@linkplain MessageResponder}. Can be used in
      * combination with {@linkplain #getMessages()} to ensure the correct sequence of messages are 
@@ -833,6 +2012,7 @@ public void log(String message) {
         if (isAbortTest()) {
             return result;
         }
+        FixtureStep step = beginStep("selectFor", dataNameOrLabel);
         try {
             boolean selectState = true;
             String controlLabel = getDataOrDefault(dataNameOrLabel);
@@ -841,11 +2021,24 @@ public void log(String message) {
                 selectState = false;
             }
             CheckBox checkBox = null;
-            try {
-                checkBox = getCurrentWindow().getCheckBox(controlLabel);
-            } catch (ItemNotFoundException ex) {
-                // Log the message for the user
-                System.out.println(ex.getMessage());
+            if (isSwingBackend()) {
+                ControlResolver.Resolution control = ControlResolver.resolve(getCurrentWindow(),
+                        controlLabel, ControlResolver.ControlType.CHECK_BOX);
+                if (control.isFound()) {
+                    System.out.println((selectState ? "Checking" : "De-selecting")
+                            + " check box " + controlLabel);
+                    result = SwingDriver.setSelected((AbstractButton) control.getComponent(),
+                            selectState);
+                } else {
+                    System.out.println(control.getMessage());
+                }
+            } else {
+                try {
+                    checkBox = getCurrentWindow().getCheckBox(controlLabel);
+                } catch (ItemNotFoundException ex) {
+                    // Log the message for the user
+                    System.out.println(ex.getMessage());
+                }
             }
             if (checkBox != null) {
                 if (selectState) {
@@ -861,6 +2054,8 @@ public void log(String message) {
         } catch (Exception ex) {
             ProcessException(ex);
             throw ex;
+        } finally {
+            endStep(step, result);
         }
 
         return result;
@@ -883,6 +2078,7 @@ public void log(String message) {
         if (isAbortTest()) {
             return result;
         }
+        FixtureStep step = beginStep("openWindowMenuSubmenu", getDataOrDefault(dataNameOrTitle), dataNameOrMenu);
         try {
             String windowTitle = getDataOrDefault(dataNameOrTitle);
             String menuName = getDataOrDefault(dataNameOrMenu);
@@ -897,9 +2093,12 @@ public void log(String message) {
             if (menu != null) {
                 System.out.println("Selecting meun item " + menuName + " > " + subMenuName
                         + " to open window " + windowTitle);
-                Window newWin = WindowInterceptor.run(menu.triggerClick());
+                addToFootprint(PageFootprints.MENU, subMenuName == null ? menuName
+                        : menuName + ">" + subMenuName);
+                Window newWin = interceptWindow(menu.triggerClick(), dataNameOrTitle);
                 if (newWin != null) {
                     this.setCurrentWindow(newWin);
+                    addOpenWindow(newWin);
                     if (this.getCurrentWindow().getTitle().equalsIgnoreCase(windowTitle)) {
                         result = true;
                     } else {
@@ -917,6 +2116,8 @@ public void log(String message) {
         } catch (Exception ex) {
             ProcessException(ex);
             throw ex;
+        } finally {
+            endStep(step, result);
         }
 
         return result;
@@ -0,0 +1,312 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.awt.Component;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.AbstractButton;
+import javax.swing.text.JTextComponent;
+import org.uispec4j.CheckBox;
+import org.uispec4j.TextBox;
+import org.uispec4j.Window;
+
+/**
+ * Slim Table Table fixture that applies a whole table of field values to the current window in
+ * one call. The window is resolved once and each row is applied in order. Validation of the
+ * values entered is deferred until the next {@code click} or {@code tab} row, or the end of the
+ * table, so the form is filled without waiting on each field. The result of each row is
+ * reported against its value cell. e.g.
+ * <pre>
+ * |table:Fill Form                     |
+ * |control       |value      |action   |
+ * |Property      |           |tab      |
+ * |txtFirstPart  |NA684      |         |
+ * |txtLastPart   |158        |type     |
+ * |cbxDocType    |Doc Type   |select   |
+ * |Paid          |           |tick     |
+ * |Add property  |           |click    |
+ * </pre>
+ * <p>The control and value can be test data item names in the same way as for the
+ * {@linkplain DesktopFixture} methods. Supported actions are {@code type} (the default),
+ * {@code select}, {@code tick}, {@code untick}, {@code click} and {@code tab}. Rows that do not
+ * require validation (click and tab) are reported as passed once they have been applied.</p>
+ * <p>Each row is run as a step with the same signature as the equivalent fixture method (e.g.
+ * {@linkplain DesktopFixture#typeInto(String, String)} for {@code type}), so the rows are
+ * included in the page footprint, budgets, step cost and latency history in the same way and
+ * use the backend selected with {@code Driver: Backend}. If a row fails with an error, the
+ * test is aborted and the remaining rows are reported as ignored.</p>
+ * @author soladev
+ */
+public class FillForm {
+
+    private static final String PASS = "pass";
+    private static final String FAIL = "fail";
+    private static final String ERROR = "error";
+    private static final String IGNORE = "ignore";
+    private final DesktopFixture fixture = new DesktopFixture();
+
+    /**
+     * Describes one row of the table once it has been applied to the window.
+     */
+    private static class Entry {
+
+        int row;
+        String action;
+        String label;
+        String value;
+        Object control;
+        String status;
+    }
+
+    /**
+     * Applies the rows of the table to the current window.
+     * @param table The rows of the table excluding the fixture name. The first row is
+     * treated as a header row if it contains the column names control, value and action.
+     * @return The results for each cell of the table.
+     */
+    public List<List<String>> doTable(List<List<String>> table) {
+        List<List<String>> results = new ArrayList<List<String>>();
+        for (List<String> row : table) {
+            List<String> resultRow = new ArrayList<String>();
+            for (int i = 0; i < row.size(); i++) {
+                resultRow.add("");
+            }
+            results.add(resultRow);
+        }
+        if (fixture.isAbortTest() || table.isEmpty()) {
+            return results;
+        }
+
+        int controlCol = 0;
+        int valueCol = 1;
+        int actionCol = 2;
+        int firstRow = 0;
+        List<String> header = new ArrayList<String>();
+        for (String col : table.get(0)) {
+            header.add(col == null ? "" : col.trim().toLowerCase());
+        }
+        if (header.contains("control") || header.contains("value") || header.contains("action")) {
+            controlCol = header.indexOf("control");
+            valueCol = header.indexOf("value");
+            actionCol = header.indexOf("action");
+            firstRow = 1;
+        }
+
+        Window window = fixture.getCurrentWindow();
+        List<Entry> pending = new ArrayList<Entry>();
+        for (int i = firstRow; i < table.size(); i++) {
+            if (fixture.isAbortTest()) {
+                for (int j = i; j < table.size(); j++) {
+                    setResult(results, j, valueCol, IGNORE + ":Not run as the test was aborted");
+                }
+                break;
+            }
+            List<String> row = table.get(i);
+            Entry entry = new Entry();
+            entry.row = i;
+            entry.label = fixture.getDataOrDefault(cell(row, controlCol));
+            entry.action = cell(row, actionCol).trim().toLowerCase();
+            entry.action = entry.action.length() == 0 ? "type" : entry.action;
+            String dataNameOrValue = cell(row, valueCol);
+            entry.value = fixture.getDataOrDefault(dataNameOrValue);
+            if (entry.action.equals("click") || entry.action.equals("tab")) {
+                // The click or tab can clear or hide the fields entered so far
+                validate(pending, results, valueCol);
+            }
+            if (applyStep(window, entry, fixture.getAction(dataNameOrValue), cell(row, controlCol),
+                    results, valueCol)) {
+                pending.add(entry);
+            }
+        }
+        validate(pending, results, valueCol);
+        return results;
+    }
+
+    /**
+     * Applies the entry as a fixture step.
+     * @return True if the entry was applied. False if it failed with an error.
+     */
+    private boolean applyStep(Window window, Entry entry, String dataAction,
+            String dataNameOrLabel, List<List<String>> results, int valueCol) {
+        boolean applied = false;
+        FixtureStep step = fixture.beginStep(getStepMethod(entry.action), dataNameOrLabel);
+        try {
+            apply(window, entry, dataAction);
+            applied = true;
+        } catch (Exception ex) {
+            fixture.ProcessException(ex);
+            setResult(results, entry.row, valueCol, ERROR + ":" + ex.getMessage());
+        } finally {
+            try {
+                fixture.endStep(step, applied && (entry.status == null
+                        || entry.status.equals(PASS)));
+            } catch (Exception ex) {
+                // The step exceeded its budget
+                entry.status = FAIL + ":" + ex.getMessage();
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * @return The name of the fixture method equivalent to the action. Used for the step
+     * signature.
+     */
+    private String getStepMethod(String action) {
+        String result = "fillForm";
+        if (action.equals("type")) {
+            result = "typeInto";
+        } else if (action.equals("select")) {
+            result = "selectFrom";
+        } else if (action.equals("tick") || action.equals("untick")) {
+            result = "selectFor";
+        } else if (action.equals("click")) {
+            result = "click";
+        } else if (action.equals("tab")) {
+            result = "selectTab";
+        }
+        return result;
+    }
+
+    /**
+     * Validates the pending entries and reports their results. The pending list is cleared.
+     */
+    private void validate(List<Entry> pending, List<List<String>> results, int valueCol) {
+        for (Entry entry : pending) {
+            String status = entry.status != null ? entry.status : validate(entry);
+            if (!status.equals(PASS)) {
+                fixture.setPageFailed();
+            }
+            setResult(results, entry.row, valueCol, status);
+        }
+        pending.clear();
+    }
+
+    private String cell(List<String> row, int col) {
+        return col >= 0 && col < row.size() && row.get(col) != null ? row.get(col) : "";
+    }
+
+    private void setResult(List<List<String>> results, int row, int col, String status) {
+        List<String> resultRow = results.get(row);
+        resultRow.set(col >= 0 && col < resultRow.size() ? col : 0, status);
+    }
+
+    /**
+     * Applies the entry to its control on the window. Validation of the control state is
+     * deferred to {@linkplain #validate(Entry)}.
+     */
+    private void apply(Window window, Entry entry, String dataAction) throws Exception {
+        System.out.println("Fill form: " + entry.action + " " + entry.label + " "
+                + (entry.value == null ? "" : entry.value));
+        boolean swing = fixture.isSwingBackend();
+        if (entry.action.equals("type") && swing) {
+            JTextComponent textComp = (JTextComponent) resolve(window, entry.label,
+                    ControlResolver.ControlType.TEXT_BOX);
+            if (!SwingDriver.setText(textComp, entry.value)) {
+                entry.status = FAIL + ":" + textComp.getText();
+            }
+            entry.control = textComp;
+        } else if (entry.action.equals("type")) {
+            TextBox tb = window.getTextBox(entry.label);
+            tb.setText(entry.value);
+            entry.control = tb;
+        } else if (entry.action.equals("select")) {
+            ControlResolver.Resolution control = fixture.resolveSelectable(window, entry.label);
+            if (!control.isFound()) {
+                throw new Exception(control.getMessage());
+            }
+            boolean selected = swing
+                    ? SwingDriver.select(control.getComponent(), entry.value, dataAction)
+                    : fixture.select(control, entry.value, dataAction, entry.label);
+            entry.status = selected ? PASS : FAIL + ":" + entry.value + " not selected";
+        } else if ((entry.action.equals("tick") || entry.action.equals("untick")) && swing) {
+            AbstractButton checkBox = (AbstractButton) resolve(window, entry.label,
+                    ControlResolver.ControlType.CHECK_BOX);
+            if (!SwingDriver.setSelected(checkBox, entry.action.equals("tick"))) {
+                entry.status = FAIL + ":" + (checkBox.isSelected() ? "ticked" : "not ticked");
+            }
+            entry.control = checkBox;
+        } else if (entry.action.equals("tick") || entry.action.equals("untick")) {
+            CheckBox checkBox = window.getCheckBox(entry.label);
+            if (entry.action.equals("tick")) {
+                checkBox.select();
+            } else {
+                checkBox.unselect();
+            }
+            entry.control = checkBox;
+        } else if (entry.action.equals("click")) {
+            window.getButton(entry.label).triggerClick().run();
+            entry.status = PASS;
+        } else if (entry.action.equals("tab")) {
+            window.getTabGroup().selectTab(entry.label);
+            entry.status = PASS;
+        } else {
+            throw new Exception("Unknown fill form action " + entry.action);
+        }
+    }
+
+    /**
+     * Locates the control for the Swing backend.
+     * @throws Exception If the control is not found on the window.
+     */
+    private Component resolve(Window window, String label, ControlResolver.ControlType type)
+            throws Exception {
+        ControlResolver.Resolution control = ControlResolver.resolve(window, label, type);
+        if (!control.isFound()) {
+            throw new Exception(control.getMessage());
+        }
+        return control.getComponent();
+    }
+
+    /**
+     * @return The result status for the entry based on the current state of its control.
+     */
+    private String validate(Entry entry) {
+        String result = PASS;
+        if (entry.control instanceof TextBox) {
+            String text = ((TextBox) entry.control).getText();
+            if (!(entry.value == null ? "" : entry.value).equals(text)) {
+                result = FAIL + ":" + text;
+            }
+        } else if (entry.control instanceof JTextComponent) {
+            String text = ((JTextComponent) entry.control).getText();
+            if (!(entry.value == null ? "" : entry.value).equals(text)) {
+                result = FAIL + ":" + text;
+            }
+        } else if (entry.control instanceof CheckBox || entry.control instanceof AbstractButton) {
+            boolean selected = entry.control instanceof CheckBox
+                    ? ((CheckBox) entry.control).getAwtComponent().isSelected()
+                    : ((AbstractButton) entry.control).isSelected();
+            if (selected != entry.action.equals("tick")) {
+                result = FAIL + ":" + (selected ? "ticked" : "not ticked");
+            }
+        }
+        return result;
+    }
+}
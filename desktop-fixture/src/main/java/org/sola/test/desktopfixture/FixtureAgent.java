@@ -0,0 +1,359 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs the Desktop Fixture as a long lived agent inside the SOLA Desktop JVM. The agent accepts
+ * step commands over a local socket and runs them with a single {@linkplain DesktopFixture} in
+ * resident mode (see {@linkplain FixturePool}), so IDE runs, FitNesse and load harnesses can all
+ * drive the same warm SOLA instance. Commands are the public {@code DesktopFixture} methods that
+ * take String arguments. The method name can be given in Java form (e.g. openWindowClick) or in
+ * FitNesse form (e.g. open Window Click). The command {@code ping} returns {@code pong} without
+ * calling the fixture and can be used to measure the dispatch overhead.
+ * <p>Commands are run one at a time in the order they are received, even if several clients
+ * are connected. The protocol uses length framed messages. All integers are big endian and all
+ * strings are UTF-8.
+ * <pre>
+ * request  = length:int32, id:int32, method:string, argCount:int16, args:string*
+ * response = length:int32, id:int32, status:int8 (0 ok, 1 error), elapsedNanos:int64,
+ *            result:string
+ * string   = byteCount:int32 (-1 for null), bytes
+ * </pre>
+ * Frames longer than {@value #MAX_FRAME} bytes or with a negative length are rejected and the
+ * connection is closed. The elapsed time covers the fixture method only. Use {@linkplain Client} to call the agent
+ * from Java, or run {@code FixtureAgent -call method args...} from a script.</p>
+ * @author soladev
+ */
+public class FixtureAgent {
+
+    public static final int DEFAULT_PORT = 8098;
+    /** The maximum length of a frame in bytes. */
+    public static final int MAX_FRAME = 16 * 1024 * 1024;
+    private final int port;
+    private final Map<String, Method> methods = new HashMap<String, Method>();
+    private final Object lock = new Object();
+    private DesktopFixture fixture;
+
+    public FixtureAgent(int port) {
+        this.port = port;
+        for (Method method : DesktopFixture.class.getMethods()) {
+            if (method.getDeclaringClass() == DesktopFixture.class && hasStringArgs(method)) {
+                methods.put(key(method.getName(), method.getParameterTypes().length), method);
+            }
+        }
+    }
+
+    private static boolean hasStringArgs(Method method) {
+        for (Class<?> type : method.getParameterTypes()) {
+            if (type != String.class) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The key for the method. Spaces are removed and the name is lower cased so that
+     * FitNesse style names match the Java method names.
+     */
+    private static String key(String name, int argCount) {
+        return name.replace(" ", "").toLowerCase() + "/" + argCount;
+    }
+
+    /**
+     * Listens for clients on the loopback interface until the process is stopped.
+     */
+    public void run() throws IOException {
+        System.setProperty(DesktopFixture.RESIDENT_PROPERTY, "true");
+        fixture = new DesktopFixture();
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getByName("localhost"));
+        System.out.println("Fixture agent listening on port " + port + " with "
+                + methods.size() + " commands");
+        while (true) {
+            final Socket socket = server.accept();
+            Thread handler = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        serve(socket);
+                    } catch (IOException ex) {
+                        System.out.println("Fixture agent connection closed: " + ex);
+                    }
+                }
+            }, "Fixture Agent Connection");
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    private void serve(Socket socket) throws IOException {
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                socket.getOutputStream()));
+        try {
+            while (true) {
+                int length;
+                try {
+                    length = in.readInt();
+                } catch (EOFException ex) {
+                    break;
+                }
+                DataInputStream request = readFrame(in, length);
+                int id = request.readInt();
+                String command = readString(request);
+                int argCount = request.readShort();
+                if (argCount < 0) {
+                    throw new IOException("Invalid argument count " + argCount);
+                }
+                String[] args = new String[argCount];
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = readString(request);
+                }
+                writeFrame(out, id, execute(command, args));
+            }
+        } finally {
+            socket.close();
+        }
+    }
+
+    /**
+     * Runs the command.
+     * @return The status, elapsed nanoseconds and result of the command.
+     */
+    Object[] execute(String command, String[] args) {
+        if (command.equals("ping")) {
+            return new Object[]{(byte) 0, 0L, "pong"};
+        }
+        Method method = methods.get(key(command, args.length));
+        if (method == null) {
+            return new Object[]{(byte) 1, 0L, "Unknown command " + command + " with "
+                        + args.length + " arguments"};
+        }
+        synchronized (lock) {
+            long start = System.nanoTime();
+            try {
+                Object result = method.invoke(fixture, (Object[]) args);
+                return new Object[]{(byte) 0, System.nanoTime() - start,
+                            method.getReturnType() == Void.TYPE ? null : String.valueOf(result)};
+            } catch (InvocationTargetException ex) {
+                return new Object[]{(byte) 1, System.nanoTime() - start,
+                            String.valueOf(ex.getCause())};
+            } catch (IllegalAccessException ex) {
+                return new Object[]{(byte) 1, System.nanoTime() - start, ex.toString()};
+            }
+        }
+    }
+
+    private static void writeFrame(DataOutputStream out, int id, Object[] result)
+            throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream frame = new DataOutputStream(buffer);
+        frame.writeInt(id);
+        frame.writeByte((Byte) result[0]);
+        frame.writeLong((Long) result[1]);
+        writeString(frame, (String) result[2]);
+        out.writeInt(buffer.size());
+        buffer.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Reads a frame once its length has been read.
+     * @throws IOException If the length is negative or longer than {@linkplain #MAX_FRAME}.
+     */
+    static DataInputStream readFrame(DataInputStream in, int length) throws IOException {
+        if (length < 0 || length > MAX_FRAME) {
+            throw new IOException("Invalid frame length " + length);
+        }
+        byte[] frame = new byte[length];
+        in.readFully(frame);
+        return new DataInputStream(new ByteArrayInputStream(frame));
+    }
+
+    /**
+     * Reads a string from a frame returned by {@linkplain #readFrame(DataInputStream, int)}, so
+     * the byte count can be checked against the bytes remaining in the frame.
+     */
+    static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > in.available()) {
+            throw new IOException("Invalid string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = value.getBytes("UTF-8");
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Client for the fixture agent. Not thread safe. Use one client per thread.
+     */
+    public static class Client {
+
+        private final Socket socket;
+        private final DataInputStream in;
+        private final DataOutputStream out;
+        private int nextId = 1;
+
+        /**
+         * The result of a command.
+         */
+        public static class Result {
+
+            private final boolean success;
+            private final long elapsedNanos;
+            private final String value;
+
+            Result(boolean success, long elapsedNanos, String value) {
+                this.success = success;
+                this.elapsedNanos = elapsedNanos;
+                this.value = value;
+            }
+
+            public boolean isSuccess() {
+                return success;
+            }
+
+            /**
+             * @return The time taken by the fixture method in the agent.
+             */
+            public long getElapsedNanos() {
+                return elapsedNanos;
+            }
+
+            /**
+             * @return The value returned by the fixture method or the error if the command
+             * failed.
+             */
+            public String getValue() {
+                return value;
+            }
+
+            @Override
+            public String toString() {
+                return (success ? "" : "error: ") + value + " (" + elapsedNanos / 1000 + "us)";
+            }
+        }
+
+        public Client(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setTcpNoDelay(true);
+            in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        /**
+         * Runs the command in the agent and waits for the result.
+         * @param command The fixture method name.
+         * @param args The arguments for the method.
+         */
+        public Result call(String command, String... args) throws IOException {
+            int id = nextId++;
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            DataOutputStream frame = new DataOutputStream(buffer);
+            frame.writeInt(id);
+            writeString(frame, command);
+            frame.writeShort(args.length);
+            for (String arg : args) {
+                writeString(frame, arg);
+            }
+            out.writeInt(buffer.size());
+            buffer.writeTo(out);
+            out.flush();
+
+            DataInputStream result = readFrame(in, in.readInt());
+            if (result.readInt() != id) {
+                throw new IOException("Fixture agent response out of sequence");
+            }
+            boolean success = result.readByte() == 0;
+            long elapsed = result.readLong();
+            return new Result(success, elapsed, readString(result));
+        }
+
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+
+    /**
+     * @param args [-port n] to run the agent, or [-port n] -call method args... to run a single
+     * command in a running agent and print the result.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = DEFAULT_PORT;
+        int pos = 0;
+        if (args.length > 1 && args[0].equals("-port")) {
+            port = Integer.parseInt(args[1]);
+            pos = 2;
+        }
+        if (args.length > pos + 1 && args[pos].equals("-call")) {
+            Client client = new Client(port);
+            try {
+                Client.Result result = client.call(args[pos + 1],
+                        Arrays.copyOfRange(args, pos + 2, args.length));
+                System.out.println(result);
+                System.exit(result.isSuccess() ? 0 : 1);
+            } finally {
+                client.close();
+            }
+        } else {
+            new FixtureAgent(port).run();
+        }
+    }
+}
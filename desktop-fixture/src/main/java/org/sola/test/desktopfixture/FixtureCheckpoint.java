@@ -0,0 +1,376 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An append-only checkpoint of the progress of a test run so a run that dies part way through
+ * (e.g. the SOLA Desktop or the JVM crashes) can resume from the last completed page rather than
+ * starting again. A record is appended when each page ends, holding the outcome of the page, the
+ * title of the current window, all test data items (locked and unlocked) and the message
+ * journal. Each record is terminated by an END line and synced to disk, so a record torn by a
+ * crash is ignored when the checkpoint is read.
+ * <p>In resume mode (see {@linkplain DesktopFixture#startPage(String)}), pages that already have
+ * a record are skipped and the test data from the last record is restored. The checkpoint is
+ * kept until it is cleared, so clear it at the start of each new run. e.g.
+ * <pre>
+ * java -cp sola-desktop-fixture.jar org.sola.test.desktopfixture.FixtureCheckpoint -clear
+ * java -cp sola-desktop-fixture.jar org.sola.test.desktopfixture.FixtureCheckpoint -pending &lt; pages.txt
+ * </pre>
+ * The second command reads the page paths of a suite (one per line) and prints the pages that
+ * have not been completed, so a runner can resume without starting FitNesse for the skipped
+ * pages.</p>
+ * <p>The checkpoint is written to the file {@code fixture-checkpoint.log} in the working
+ * directory.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class FixtureCheckpoint {
+
+    public static final String CHECKPOINT_FILE = "fixture-checkpoint.log";
+    public static final String RESUME_PROPERTY = "sola.fixture.resume";
+    private final File file;
+    private Map<String, Record> pages = null;
+    private Record last = null;
+    private boolean restored = false;
+
+    /** A completed page read from the checkpoint. */
+    public static class Record {
+
+        private final String page;
+        private final boolean passed;
+        private final String windowTitle;
+        private final List<TestDataItem> testData = new ArrayList<TestDataItem>();
+        private String messages = null;
+
+        Record(String page, boolean passed, String windowTitle) {
+            this.page = page;
+            this.passed = passed;
+            this.windowTitle = windowTitle;
+        }
+
+        public String getPage() {
+            return page;
+        }
+
+        public boolean isPassed() {
+            return passed;
+        }
+
+        public String getWindowTitle() {
+            return windowTitle;
+        }
+
+        public List<TestDataItem> getTestData() {
+            return testData;
+        }
+
+        public String getMessages() {
+            return messages;
+        }
+    }
+
+    FixtureCheckpoint(File file) {
+        this.file = file;
+    }
+
+    private static class FixtureCheckpointHolder {
+
+        public static final FixtureCheckpoint INSTANCE =
+                new FixtureCheckpoint(new File(CHECKPOINT_FILE));
+    }
+
+    public static FixtureCheckpoint getInstance() {
+        return FixtureCheckpointHolder.INSTANCE;
+    }
+
+    /**
+     * @return True if the {@code sola.fixture.resume} system property is true.
+     */
+    public static boolean isResumeRequested() {
+        return Boolean.getBoolean(RESUME_PROPERTY);
+    }
+
+    /**
+     * Appends a record for a completed page and syncs it to disk.
+     * @param page The full path of the page.
+     * @param passed False if the page was aborted or a step failed or exceeded its budget.
+     * @param windowTitle The title of the current window. May be null.
+     * @param testData The test data items.
+     * @param messages The message journal. May be null.
+     */
+    public synchronized void record(String page, boolean passed, String windowTitle,
+            Map<String, TestDataItem> testData, String messages) {
+        StringBuilder text = new StringBuilder();
+        if (endsWithTornLine()) {
+            // Start the record on a new line so it is not merged with the torn record
+            text.append('\n');
+        }
+        text.append("PAGE\t").append(escape(page)).append('\t').append(passed ? "PASS" : "FAIL")
+                .append('\t').append(System.currentTimeMillis()).append('\t')
+                .append(escape(windowTitle)).append('\n');
+        for (Map.Entry<String, TestDataItem> entry : testData.entrySet()) {
+            TestDataItem item = entry.getValue();
+            text.append("DATA\t").append(escape(entry.getKey())).append('\t')
+                    .append(item.isLocked()).append('\t').append(escape(item.getAction()))
+                    .append('\t').append(escape(item.getActionExtension())).append('\t')
+                    .append(escape(item.getValue())).append('\n');
+        }
+        text.append("MESSAGES\t").append(escape(messages)).append('\n');
+        text.append("END\n");
+        try {
+            FileOutputStream out = new FileOutputStream(file, true);
+            try {
+                out.write(text.toString().getBytes("UTF-8"));
+                out.flush();
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        if (pages != null) {
+            // Keep the loaded checkpoint in step with the file
+            Record record = new Record(page, passed, windowTitle);
+            record.testData.addAll(testData.values());
+            record.messages = messages;
+            pages.put(page, record);
+            last = record;
+        }
+    }
+
+    /**
+     * Restores the test data and message journal from the last record into the TestManager.
+     * Only restores once per JVM. Test data items that have already been loaded (e.g. by the
+     * SetUp page) are not replaced.
+     * @return The last record or null if the checkpoint has no records or has already been
+     * restored.
+     */
+    public synchronized Record restore(TestManager testMan) {
+        load();
+        if (restored || last == null) {
+            return null;
+        }
+        restored = true;
+        for (TestDataItem item : last.getTestData()) {
+            if (!testMan.getTestData().containsKey(item.getName())) {
+                testMan.loadTestDataItem(item.getName(), item.getValue(), item.isLocked(),
+                        item.getAction(), item.getActionExtension());
+            }
+        }
+        if (last.getMessages() != null && testMan.getTestObject("Messages", String.class) == null) {
+            testMan.loadTestObject("Messages", last.getMessages());
+        }
+        return last;
+    }
+
+    /**
+     * Thrown to skip a page that has already been completed. FitNesse stops the test when it
+     * receives an exception with StopTest in its name.
+     */
+    public static class CompletedPageStopTestException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        public CompletedPageStopTestException(String page) {
+            super("Page " + page + " was completed in an earlier run and has been skipped");
+        }
+    }
+
+    private boolean endsWithTornLine() {
+        if (file.length() == 0) {
+            return false;
+        }
+        try {
+            RandomAccessFile in = new RandomAccessFile(file, "r");
+            try {
+                in.seek(file.length() - 1);
+                return in.read() != '\n';
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return True if the page has been completed (passed or failed) in the checkpoint.
+     */
+    public synchronized boolean isCompleted(String page) {
+        load();
+        return pages.containsKey(page);
+    }
+
+    /**
+     * @return The last complete record in the checkpoint or null if there are no records.
+     */
+    public synchronized Record getLast() {
+        load();
+        return last;
+    }
+
+    /**
+     * Deletes the checkpoint so the next run starts from the beginning.
+     */
+    public synchronized void clear() {
+        file.delete();
+        pages = null;
+        last = null;
+    }
+
+    private void load() {
+        if (pages != null) {
+            return;
+        }
+        pages = new LinkedHashMap<String, Record>();
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(file), "UTF-8"));
+            try {
+                Record record = null;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t", -1);
+                    if (fields[0].equals("PAGE") && fields.length == 5) {
+                        record = new Record(unescape(fields[1]), fields[2].equals("PASS"),
+                                unescape(fields[4]));
+                    } else if (record != null && fields[0].equals("DATA") && fields.length == 6) {
+                        TestDataItem item = new TestDataItem();
+                        item.setName(unescape(fields[1]));
+                        item.setLocked(Boolean.parseBoolean(fields[2]));
+                        item.setAction(unescape(fields[3]));
+                        item.setActionExtension(unescape(fields[4]));
+                        item.setValue(unescape(fields[5]));
+                        record.testData.add(item);
+                    } else if (record != null && fields[0].equals("MESSAGES")) {
+                        record.messages = fields.length > 1 ? unescape(fields[1]) : null;
+                    } else if (record != null && fields[0].equals("END")) {
+                        pages.put(record.getPage(), record);
+                        last = record;
+                        record = null;
+                    } else {
+                        // Torn or unexpected line. Discard the incomplete record.
+                        record = null;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Escapes tabs, new lines and backslashes. Null is written as \0.
+     */
+    static String escape(String text) {
+        if (text == null) {
+            return "\\0";
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        for (char c : text.toCharArray()) {
+            if (c == '\\') {
+                result.append("\\\\");
+            } else if (c == '\t') {
+                result.append("\\t");
+            } else if (c == '\n') {
+                result.append("\\n");
+            } else if (c == '\r') {
+                result.append("\\r");
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    static String unescape(String text) {
+        if (text.equals("\\0")) {
+            return null;
+        }
+        StringBuilder result = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\\' && i + 1 < text.length()) {
+                char next = text.charAt(++i);
+                result.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param args -clear to delete the checkpoint, or -pending to read page paths from standard
+     * input and print those that have not been completed.
+     */
+    public static void main(String[] args) throws IOException {
+        FixtureCheckpoint checkpoint = getInstance();
+        if (args.length == 1 && args[0].equals("-clear")) {
+            checkpoint.clear();
+            System.out.println("Checkpoint cleared");
+        } else if (args.length == 1 && args[0].equals("-pending")) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() > 0 && !checkpoint.isCompleted(line.trim())) {
+                    System.out.println(line.trim());
+                }
+            }
+        } else {
+            Map<String, Integer> outcomes = new HashMap<String, Integer>();
+            checkpoint.load();
+            for (Record record : checkpoint.pages.values()) {
+                String outcome = record.isPassed() ? "PASS" : "FAIL";
+                outcomes.put(outcome, outcomes.containsKey(outcome) ? outcomes.get(outcome) + 1 : 1);
+                System.out.println(record.getPage() + "\t" + outcome);
+            }
+            System.out.println("# " + checkpoint.pages.size() + " pages completed " + outcomes);
+        }
+    }
+}
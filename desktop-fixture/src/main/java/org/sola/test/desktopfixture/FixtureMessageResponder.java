@@ -48,15 +48,6 @@ public class FixtureMessageResponder implements MessageResponder  {
         return TestManager.getInstance();
     }
 
-    private String getData(String dataName) {
-        String result = null;
-        TestDataItem data = getTestMan().getTestDataItem(dataName);
-        if (data != null) {
-            result = data.getValue();
-        }
-        return result;
-    }
-
     /**
      * Logs the message to standard output and checks the setup data to determine if the
      * user has indicated a specific response for the message based on the message code. 
@@ -67,6 +58,8 @@ public class FixtureMessageResponder implements MessageResponder  {
      * |script|Setup Test Data               |
      * |Field |CLIAPP004        |Value|No    |
      * </pre>
+     * <p>Responses can also be configured for groups of messages using code prefixes and
+     * wildcards, the message text or the message type. See {@linkplain MessageRuleTable}.</p>
      * <p>If no customized response is configured for a message, the default response will
      * be used unless the message is an Error. Error messages that do not have a specific
      * response configured are assumed to be unexpected errors and will cause an Exception to be
@@ -80,7 +73,8 @@ public class FixtureMessageResponder implements MessageResponder  {
     @Override
     public int getResponse(LocalizedMessage msg, String errorNumber, int defaultButton) {
         int result = defaultButton;
-        String messageResponse = getData(msg.getMessageCode());
+        MessageRuleTable.Rule rule = MessageRuleTable.getInstance().findRule(msg);
+        String messageResponse = rule == null ? null : rule.getResponse();
         if (messageResponse != null) {
             // The user has specified the text of the button, so match this to the
             // list of dialog options to determine the approriate number of the button
@@ -92,13 +86,15 @@ public class FixtureMessageResponder implements MessageResponder  {
             }
             // Load the details of the specific message so that the user can check the
             // messge details if necesary. 
-            getTestMan().loadTestObject(msg.getMessageCode().toUpperCase(), msg);
+            getTestMan().loadCachedTestObject(msg.getMessageCode().toUpperCase(), msg);
         } else if (msg.getType() == LocalizedMessage.Type.ERROR) {
             // Error message that hasn't been trapped - throw exception
             String error = "Desktop Fixture: Error message with no response "
                     + "identified. Assumed to be an unexpected error! Message "
                     + msg.getMessageCode().toUpperCase() + " [" + msg.getMessage()
                     + "].";
+            TraceLog.getInstance().instant(TraceLog.MESSAGE, msg.getMessageCode().toUpperCase(),
+                    "unexpected error");
             throw new RuntimeException(error);
         }
         // Capture the message code so that it is possible for the user to check the messages that
@@ -115,6 +111,8 @@ public class FixtureMessageResponder implements MessageResponder  {
             }
             options = options + msg.getDialogOptions()[i];
         }
+        TraceLog.getInstance().instant(TraceLog.MESSAGE, msg.getMessageCode().toUpperCase(),
+                msg.getDialogOptions()[result]);
         System.out.println("Responding to message " + msg.getMessageCode().toUpperCase() + " ["
                 + msg.getMessage() + "] with option " + msg.getDialogOptions()[result]
                 + ". Available options: " + options + ".");
@@ -0,0 +1,406 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Keeps a pool of fixture JVMs that have already started the SOLA Desktop and logged in, so
+ * FitNesse suites do not wait for {@linkplain DesktopFixture#startSola()}. Each pool member
+ * (see {@linkplain FixturePoolMember}) parks on the Dashboard and runs the FitNesse Slim
+ * service in resident mode, where {@code startSola} returns the existing Dashboard and
+ * {@code exitSola} resets the member rather than exiting the JVM.
+ * <p>To use the pool, start it from the FitNesse directory and set the FitNesse command
+ * pattern so that each suite leases a member rather than starting a new JVM. e.g.
+ * <pre>
+ * java -cp fitnesse.jar:../desktop-fixture/target/*:../desktop-fixture/target/lib/* \
+ *      org.sola.test.desktopfixture.FixturePool fixture-pool.txt
+ *
+ * !define COMMAND_PATTERN {java -cp %p org.sola.test.desktopfixture.FixturePool -lease %m}
+ * </pre>
+ * The lease process listens on the port FitNesse gives the Slim service and relays the
+ * connection to a ready member. A leased member returns to the pool when its suite completes,
+ * so a replacement is only started when a member exits (e.g. when it is recycled). If the pool
+ * is not running, the lease process runs the Slim service itself so the tests still run, just
+ * without the pool.</p>
+ * <p>The configuration file holds one {@code name = value} setting per line. The pool settings
+ * are listed below. All other settings are loaded into each member as setup data before SOLA is
+ * started, so the login credentials are configured with {@code Login: User Name} and
+ * {@code Login: Password} in the same way as for FitNesse pages.
+ * <ul><li>Pool: Size - the number of members to keep, including the leased members. This is
+ * the number of suites that can run at once without waiting for a member (default 2)</li>
+ * <li>Pool: Port - the port the pool listens on (default 8099)</li>
+ * <li>Pool: Slim Port - the first port used by the members for the Slim service
+ * (default 8100)</li>
+ * <li>Pool: Max Suites - the number of suites a member runs before it is recycled
+ * (default 20)</li>
+ * <li>Pool: Max Heap Growth - the growth in used heap in MB after which a member is recycled
+ * (default 256)</li>
+ * <li>Pool: Jvm Args - space separated JVM arguments for the members</li></ul></p>
+ * @author soladev
+ */
+public class FixturePool {
+
+    public static final String DEFAULT_CONFIG = "fixture-pool.txt";
+    private final Map<String, String> config;
+    private final int size;
+    private final int port;
+    private final int firstSlimPort;
+    private final String configFile;
+    private final List<Member> members = new ArrayList<Member>();
+    private final LinkedList<Member> ready = new LinkedList<Member>();
+    private final Set<Integer> slimPortsInUse = new TreeSet<Integer>();
+    private int starting = 0;
+    private int nextId = 1;
+
+    /**
+     * A member JVM known to the pool.
+     */
+    private static class Member {
+
+        int id;
+        int slimPort;
+        Process process;
+        PrintWriter out;
+        boolean leased;
+    }
+
+    public FixturePool(String configFile) throws IOException {
+        this.configFile = configFile;
+        this.config = readConfig(configFile);
+        this.size = Integer.parseInt(getSetting(config, "Pool: Size", "2"));
+        this.port = Integer.parseInt(getSetting(config, "Pool: Port", "8099"));
+        this.firstSlimPort = Integer.parseInt(getSetting(config, "Pool: Slim Port", "8100"));
+    }
+
+    /**
+     * Reads a configuration file of {@code name = value} lines. Blank lines and lines starting
+     * with # are ignored. Names are normalised in the same way as test data names.
+     */
+    static Map<String, String> readConfig(String configFile) throws IOException {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        File file = new File(configFile);
+        if (!file.exists()) {
+            return result;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int pos = line.indexOf('=');
+                if (!line.trim().startsWith("#") && pos > 0) {
+                    result.put(line.substring(0, pos).replace(" ", "").toLowerCase(),
+                            line.substring(pos + 1).trim());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    static String getSetting(Map<String, String> config, String name, String defaultValue) {
+        String result = config.get(name.replace(" ", "").toLowerCase());
+        return result == null || result.length() == 0 ? defaultValue : result;
+    }
+
+    /**
+     * Starts the pool members and serves leases until the process is stopped.
+     */
+    public void run() throws IOException {
+        ServerSocket server = new ServerSocket(port, 50, InetAddress.getByName("localhost"));
+        System.out.println("Fixture pool listening on port " + port + " with " + size
+                + " members");
+        replenish();
+        while (true) {
+            final Socket socket = server.accept();
+            Thread handler = new Thread(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        handle(socket);
+                    } catch (Exception ex) {
+                        System.out.println("Fixture pool connection failed: " + ex);
+                    }
+                }
+            }, "Fixture Pool Connection");
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    /**
+     * Handles a connection from a member or a lease process. Members identify themselves with
+     * {@code READY id} each time they are ready for a suite and keep the connection open. Lease
+     * processes send {@code LEASE} and receive {@code PORT n} once a member is available.
+     */
+    private void handle(Socket socket) throws Exception {
+        BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                "UTF-8"));
+        PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
+        String line;
+        while ((line = in.readLine()) != null) {
+            String[] parts = line.trim().split(" ");
+            if (parts[0].equals("LEASE")) {
+                Member member = lease();
+                out.println("PORT " + member.slimPort);
+                System.out.println("Leased member " + member.id + " on port " + member.slimPort);
+                socket.close();
+                return;
+            } else if (parts[0].equals("READY") && parts.length > 1) {
+                ready(Integer.parseInt(parts[1]), out);
+            }
+        }
+        socket.close();
+    }
+
+    private synchronized Member lease() throws InterruptedException, IOException {
+        while (ready.isEmpty()) {
+            wait();
+        }
+        Member result = ready.removeFirst();
+        result.leased = true;
+        return result;
+    }
+
+    /**
+     * Adds a member to the ready list unless the pool already has enough members, in which
+     * case the member is told to exit. Members returning from a lease are counted as part of
+     * the pool while they are leased, so they are normally kept.
+     */
+    private synchronized void ready(int id, PrintWriter out) throws IOException {
+        Member member = findMember(id);
+        if (member == null) {
+            out.println("EXIT");
+            return;
+        }
+        if (member.out == null) {
+            // First READY from a new member
+            member.out = out;
+            starting--;
+        }
+        member.leased = false;
+        if (ready.size() + starting + getLeasedCount() >= size) {
+            System.out.println("Member " + id + " is surplus to the pool. Stopping it.");
+            out.println("EXIT");
+        } else {
+            out.println("OK");
+            ready.addLast(member);
+            System.out.println("Member " + id + " is ready on port " + member.slimPort);
+            notifyAll();
+        }
+    }
+
+    private Member findMember(int id) {
+        for (Member member : members) {
+            if (member.id == id) {
+                return member;
+            }
+        }
+        return null;
+    }
+
+    private int getLeasedCount() {
+        int result = 0;
+        for (Member member : members) {
+            if (member.leased) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Starts new members until the number of ready, starting and leased members matches the
+     * pool size.
+     */
+    private synchronized void replenish() throws IOException {
+        while (ready.size() + starting + getLeasedCount() < size) {
+            startMember();
+        }
+    }
+
+    private void startMember() throws IOException {
+        final Member member = new Member();
+        member.id = nextId++;
+        member.slimPort = firstSlimPort;
+        while (slimPortsInUse.contains(member.slimPort)) {
+            member.slimPort++;
+        }
+        slimPortsInUse.add(member.slimPort);
+
+        List<String> command = new ArrayList<String>();
+        command.add(new File(System.getProperty("java.home"), "bin" + File.separator + "java")
+                .getPath());
+        String jvmArgs = getSetting(config, "Pool: Jvm Args", "");
+        if (jvmArgs.length() > 0) {
+            command.addAll(Arrays.asList(jvmArgs.split("\\s+")));
+        }
+        command.addAll(Arrays.asList("-cp", System.getProperty("java.class.path"),
+                FixturePoolMember.class.getName(), Integer.toString(port),
+                Integer.toString(member.id), Integer.toString(member.slimPort), configFile));
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File("fixture-pool-member-" + member.id + ".log"));
+        member.process = builder.start();
+        members.add(member);
+        starting++;
+        System.out.println("Starting member " + member.id + " on port " + member.slimPort);
+
+        Thread monitor = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    member.process.waitFor();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                removeMember(member);
+            }
+        }, "Fixture Pool Member " + member.id);
+        monitor.setDaemon(true);
+        monitor.start();
+    }
+
+    /**
+     * Called when a member process exits, either because it was recycled or because it failed.
+     */
+    private synchronized void removeMember(Member member) {
+        System.out.println("Member " + member.id + " exited with " + member.process.exitValue());
+        members.remove(member);
+        ready.remove(member);
+        slimPortsInUse.remove(member.slimPort);
+        if (member.out == null) {
+            starting--;
+        }
+        try {
+            replenish();
+        } catch (IOException ex) {
+            System.out.println("Failed to start a replacement member: " + ex);
+        }
+    }
+
+    /**
+     * Leases a member from the pool and relays the connection from FitNesse to it. If the pool
+     * is not running, the Slim service is run in this process instead.
+     * @param slimArgs The Slim service class name followed by its arguments. The last argument
+     * is the port FitNesse will connect to.
+     */
+    static void lease(String[] slimArgs) throws Exception {
+        int fitnessePort = Integer.parseInt(slimArgs[slimArgs.length - 1]);
+        Map<String, String> config = readConfig(DEFAULT_CONFIG);
+        int poolPort = Integer.parseInt(getSetting(config, "Pool: Port", "8099"));
+        int memberPort;
+        try {
+            Socket pool = new Socket("localhost", poolPort);
+            try {
+                PrintWriter out = new PrintWriter(pool.getOutputStream(), true);
+                out.println("LEASE");
+                String reply = new BufferedReader(new InputStreamReader(
+                        pool.getInputStream(), "UTF-8")).readLine();
+                memberPort = Integer.parseInt(reply.substring("PORT ".length()).trim());
+            } finally {
+                pool.close();
+            }
+        } catch (IOException ex) {
+            System.out.println("Fixture pool is not available (" + ex.getMessage()
+                    + "). Running the Slim service without the pool.");
+            Class<?> slimClass = Class.forName(slimArgs[0]);
+            Method main = slimClass.getMethod("main", String[].class);
+            main.invoke(null, (Object) Arrays.copyOfRange(slimArgs, 1, slimArgs.length));
+            return;
+        }
+
+        ServerSocket server = new ServerSocket(fitnessePort);
+        Socket fitnesse = server.accept();
+        server.close();
+        Socket member = new Socket("localhost", memberPort);
+        Thread upstream = relay(fitnesse.getInputStream(), member.getOutputStream());
+        Thread downstream = relay(member.getInputStream(), fitnesse.getOutputStream());
+        downstream.join();
+        fitnesse.close();
+        member.close();
+        upstream.join(1000);
+    }
+
+    private static Thread relay(final InputStream in, final OutputStream out) {
+        Thread result = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                byte[] buffer = new byte[8192];
+                try {
+                    int len;
+                    while ((len = in.read(buffer)) >= 0) {
+                        out.write(buffer, 0, len);
+                        out.flush();
+                    }
+                    out.close();
+                } catch (IOException ex) {
+                    // The other side has closed the connection
+                }
+            }
+        }, "Fixture Pool Relay");
+        result.setDaemon(true);
+        result.start();
+        return result;
+    }
+
+    /**
+     * @param args The configuration file (default fixture-pool.txt) to run the pool, or
+     * -lease followed by the Slim service command line to lease a member for a suite.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("-lease")) {
+            lease(Arrays.copyOfRange(args, 1, args.length));
+        } else {
+            new FixturePool(args.length > 0 ? args[0] : DEFAULT_CONFIG).run();
+        }
+    }
+}
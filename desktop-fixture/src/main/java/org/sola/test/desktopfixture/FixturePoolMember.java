@@ -0,0 +1,138 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.reflect.Method;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Map;
+
+/**
+ * A member of the {@linkplain FixturePool}. Starts SOLA and logs in once, then runs the FitNesse
+ * Slim service for one suite at a time. The Slim service closes at the end of each suite, after
+ * which the member resets the fixture and reports to the pool that it is ready for the next
+ * suite. The member exits once it has run the configured number of suites or its used heap has
+ * grown by more than the configured limit since SOLA started, and the pool starts a replacement.
+ * <p>This class is started by the pool and should not be referenced from FitNesse tests.</p>
+ * @author soladev
+ */
+public class FixturePoolMember {
+
+    private static final String SLIM_SERVICE = "fitnesse.slim.SlimService";
+    private static final long POLL_MILLIS = 250;
+
+    /**
+     * @param args The pool port, the member id, the port for the Slim service and the pool
+     * configuration file.
+     */
+    public static void main(String[] args) throws Exception {
+        int poolPort = Integer.parseInt(args[0]);
+        String id = args[1];
+        int slimPort = Integer.parseInt(args[2]);
+        Map<String, String> config = FixturePool.readConfig(args[3]);
+        int maxSuites = Integer.parseInt(FixturePool.getSetting(config, "Pool: Max Suites", "20"));
+        long maxHeapGrowth = Long.parseLong(FixturePool.getSetting(config,
+                "Pool: Max Heap Growth", "256")) * 1024 * 1024;
+
+        System.setProperty(DesktopFixture.RESIDENT_PROPERTY, "true");
+        if (System.getProperty(TestDataGenerators.WORKER_PROPERTY) == null) {
+            // Give each member its own PARTITION range for generated test data
+            System.setProperty(TestDataGenerators.WORKER_PROPERTY, id);
+        }
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            if (!entry.getKey().startsWith("pool:")) {
+                TestManager.getInstance().loadTestDataItem(entry.getKey(), entry.getValue(),
+                        false, "", "");
+            }
+        }
+        DesktopFixture fixture = new DesktopFixture();
+        if (!fixture.startSola()) {
+            System.out.println("Member " + id + " failed to start SOLA");
+            System.exit(1);
+        }
+        fixture.resetResident();
+        long baselineHeap = usedHeap();
+        System.out.println("Member " + id + " started SOLA. Used heap " + baselineHeap / 1024
+                + "KB");
+
+        Method slimMain = Class.forName(SLIM_SERVICE).getMethod("main", String[].class);
+        Socket pool = new Socket("localhost", poolPort);
+        BufferedReader in = new BufferedReader(new InputStreamReader(pool.getInputStream(),
+                "UTF-8"));
+        PrintWriter out = new PrintWriter(pool.getOutputStream(), true);
+        int suites = 0;
+        while (true) {
+            // The Slim service serves a single suite and then closes
+            slimMain.invoke(null, (Object) new String[]{Integer.toString(slimPort)});
+            out.println("READY " + id);
+            String reply = in.readLine();
+            if (reply == null || !reply.equals("OK")) {
+                System.out.println("Member " + id + " released by the pool");
+                break;
+            }
+            awaitSlimClosed(slimPort);
+            suites++;
+            fixture.resetResident();
+            long growth = usedHeap() - baselineHeap;
+            System.out.println("Member " + id + " completed suite " + suites + ". Heap growth "
+                    + growth / 1024 + "KB");
+            if (suites >= maxSuites || growth > maxHeapGrowth) {
+                System.out.println("Member " + id + " recycled after " + suites + " suites");
+                break;
+            }
+        }
+        pool.close();
+        System.exit(0);
+    }
+
+    /**
+     * Waits until the Slim service has closed its port, which indicates the suite is complete.
+     */
+    private static void awaitSlimClosed(int slimPort) throws InterruptedException {
+        while (true) {
+            try {
+                ServerSocket probe = new ServerSocket(slimPort);
+                probe.close();
+                return;
+            } catch (IOException ex) {
+                // Still bound by the Slim service
+                Thread.sleep(POLL_MILLIS);
+            }
+        }
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+/**
+ * Describes a fixture method call (a step) while it is in progress. The step signature
+ * (method + window title + control label) identifies equivalent steps across test runs.
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class FixtureStep {
+
+    private final String method;
+    private final String windowTitle;
+    private final String control;
+    private final long startNanos;
+    private final StepCost cost;
+    private final ServiceUsage serviceUsage;
+    private long endNanos = 0;
+    private long excludedNanos = 0;
+    private boolean success = false;
+
+    public FixtureStep(String method, String windowTitle, String control) {
+        this.method = method;
+        this.windowTitle = windowTitle == null ? "" : windowTitle;
+        this.control = control == null ? "" : control;
+        this.startNanos = System.nanoTime();
+        this.cost = StepCost.start();
+        this.serviceUsage = ServiceMeter.getInstance().begin();
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getWindowTitle() {
+        return windowTitle;
+    }
+
+    public String getControl() {
+        return control;
+    }
+
+    /**
+     * @return The value of {@linkplain System#nanoTime()} when the step started.
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return The signature of the step in the form method|window title|control.
+     */
+    public String getSignature() {
+        return method + "|" + windowTitle + "|" + control;
+    }
+
+    /**
+     * @return The signature of the step in the form method&gt;window title&gt;control. Used to
+     * name the budget for the step (see {@linkplain DesktopFixture#setBudget(String, String)}),
+     * as | cannot be used in a FitNesse table cell.
+     */
+    public String getBudgetSignature() {
+        return method + ">" + windowTitle + ">" + control;
+    }
+
+    /**
+     * Marks the step as complete.
+     * @param success Indicates if the step completed successfully.
+     */
+    public void end(boolean success) {
+        this.endNanos = System.nanoTime();
+        this.success = success;
+        cost.end();
+        ServiceMeter.getInstance().end(serviceUsage);
+    }
+
+    public boolean isEnded() {
+        return endNanos != 0;
+    }
+
+    public boolean isSuccess() {
+        return success;
+    }
+
+    /**
+     * Excludes time spent by the fixture measuring the step (e.g. waiting for a window to
+     * become interactive) from the elapsed time of the step.
+     * @param nanos The time to exclude in nanoseconds.
+     */
+    public void exclude(long nanos) {
+        excludedNanos += Math.max(0, nanos);
+    }
+
+    /**
+     * @return The elapsed time of the step in milliseconds, less any excluded time. If the step
+     * has not ended, the time elapsed so far.
+     */
+    public long getElapsedMillis() {
+        return ((isEnded() ? endNanos : System.nanoTime()) - startNanos - excludedNanos)
+                / 1000000L;
+    }
+
+    /**
+     * @return The CPU time, allocation and garbage collection for the step. Only complete once
+     * the step has ended.
+     */
+    public StepCost getCost() {
+        return cost;
+    }
+
+    /**
+     * @return The web service calls made by the SOLA client during the step. Empty unless the
+     * {@linkplain ServiceMeter} is installed.
+     */
+    public ServiceUsage getServiceUsage() {
+        return serviceUsage;
+    }
+
+    @Override
+    public String toString() {
+        return getSignature();
+    }
+}
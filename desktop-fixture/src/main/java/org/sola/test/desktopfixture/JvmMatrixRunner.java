@@ -0,0 +1,544 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Runs a scenario (a FitNesse page or suite that starts SOLA and runs a workflow) with the SOLA
+ * Desktop in each of a matrix of JVM configurations and compares the startup time, step latency,
+ * peak memory and garbage collection of each configuration. e.g.
+ * <pre>
+ * java -cp "fitnesse.jar:../desktop-fixture/target/*:../desktop-fixture/target/lib/*" org.sola.test.desktopfixture.JvmMatrixRunner
+ * </pre>
+ * <p>The matrix is configured from the {@code jvm-matrix.txt} file in the working directory.
+ * Each {@code Dimension: <name>} setting lists alternative JVM options separated by | and the
+ * matrix contains every combination of the dimensions. An empty alternative uses the JVM
+ * default. Configurations can also be listed individually with
+ * {@code Configuration: <name> = <options>}. See the example in the FitNesse directory.</p>
+ * <p>The JVM options are applied to the JVM that runs the fixture by setting the FitNesse
+ * {@code COMMAND_PATTERN} variable as a system property of the FitNesse process, so the
+ * scenario pages must not define {@code COMMAND_PATTERN} themselves. The locale of the SOLA
+ * Desktop is set with the {@code sola.fixture.locale} system property (see
+ * {@linkplain DesktopFixture#startSola()}).</p>
+ * <p>Each configuration is run {@code Matrix: Cold Runs} times followed by
+ * {@code Matrix: Warm Runs} times. Every run uses a new JVM, so cold runs are the first runs
+ * after the JVM options change (e.g. while a CDS archive is created or the OS file cache holds
+ * the files used by another configuration) and warm runs are the later runs. A command to make
+ * the cold runs colder (e.g. to clear the OS file cache) can be given with
+ * {@code Matrix: Cold Command}. For each run:</p>
+ * <ul><li>the startup time is the latency of the {@code startSola} step</li>
+ * <li>the step latencies are the latencies of the other steps, written by the
+ * {@linkplain StepLatencyHistory} to a file for the run</li>
+ * <li>the peak RSS, GC count and GC time are recorded by the fixture JVM when it exits. Peak
+ * RSS is only available on Linux. The peak committed memory of the JVM memory pools is reported
+ * on all platforms.</li></ul>
+ * <p>The comparison table is printed and written to {@code jvm-matrix-results.txt}. The
+ * latency percentiles for each step are written to {@code jvm-matrix-steps.txt}.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class JvmMatrixRunner {
+
+    public static final String CONFIG_FILE = "jvm-matrix.txt";
+    public static final String RESULTS_FILE = "jvm-matrix-results.txt";
+    public static final String STEPS_FILE = "jvm-matrix-steps.txt";
+    /** System property naming the file the fixture JVM appends its statistics to on exit. */
+    public static final String STATS_PROPERTY = "sola.fixture.jvmStats";
+    private static final String STATS_FILE = "jvm-matrix-stats.txt";
+    private static final String STEP_LOG_FILE = "jvm-matrix-step-log.txt";
+    private static final String PAGE_LOG_FILE = "jvm-matrix-page-log.txt";
+    private static final String STARTUP_SIGNATURE = "startSola||";
+    private static final String DIMENSION_PREFIX = "dimension:";
+    private static final String CONFIGURATION_PREFIX = "configuration:";
+    private final Map<String, String> config;
+    private final Map<String, String> configurations = new LinkedHashMap<String, String>();
+    private final File fitNesseDir;
+
+    /** The measurements from one run of the scenario. */
+    public static class Run {
+
+        private final boolean cold;
+        private boolean passed = false;
+        private long startupMillis = -1;
+        private final Map<String, List<Long>> steps = new TreeMap<String, List<Long>>();
+        private long peakRssKb = -1;
+        private long peakCommittedKb = -1;
+        private long gcCount = -1;
+        private long gcMillis = -1;
+
+        Run(boolean cold) {
+            this.cold = cold;
+        }
+
+        public boolean isCold() {
+            return cold;
+        }
+
+        public boolean isPassed() {
+            return passed;
+        }
+
+        public long getStartupMillis() {
+            return startupMillis;
+        }
+
+        /**
+         * @return The latencies of the steps other than startSola by step signature.
+         */
+        public Map<String, List<Long>> getSteps() {
+            return steps;
+        }
+
+        public long getPeakRssKb() {
+            return peakRssKb;
+        }
+
+        public long getPeakCommittedKb() {
+            return peakCommittedKb;
+        }
+
+        public long getGcCount() {
+            return gcCount;
+        }
+
+        public long getGcMillis() {
+            return gcMillis;
+        }
+    }
+
+    public JvmMatrixRunner(Map<String, String> config) {
+        this.config = config;
+        List<String> names = new ArrayList<String>();
+        List<List<String>> dimensions = new ArrayList<List<String>>();
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            if (entry.getKey().startsWith(DIMENSION_PREFIX)) {
+                names.add(entry.getKey().substring(DIMENSION_PREFIX.length()));
+                List<String> values = new ArrayList<String>();
+                for (String value : (entry.getValue() + " ").split("\\|")) {
+                    values.add(value.trim());
+                }
+                dimensions.add(values);
+            }
+        }
+        String exclude = getSetting("Matrix: Exclude", null);
+        int count = 0;
+        for (String options : combine(dimensions)) {
+            if (exclude == null || !options.matches(exclude)) {
+                configurations.put("C" + (++count), options);
+            }
+        }
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            if (entry.getKey().startsWith(CONFIGURATION_PREFIX)) {
+                configurations.put(entry.getKey().substring(CONFIGURATION_PREFIX.length()),
+                        entry.getValue());
+            }
+        }
+        if (configurations.isEmpty()) {
+            configurations.put("default", "");
+        }
+        fitNesseDir = new File(getSetting("Suite: FitNesse Dir", "."));
+    }
+
+    private String getSetting(String name, String defaultValue) {
+        return FixturePool.getSetting(config, name, defaultValue);
+    }
+
+    /**
+     * @return The JVM options for each configuration in the matrix by configuration name.
+     */
+    public Map<String, String> getConfigurations() {
+        return configurations;
+    }
+
+    /**
+     * @return Every combination of the alternative options in the dimensions. The options for
+     * each combination are separated by a space.
+     */
+    static List<String> combine(List<List<String>> dimensions) {
+        List<String> result = new ArrayList<String>();
+        if (dimensions.isEmpty()) {
+            return result;
+        }
+        result.add("");
+        for (List<String> dimension : dimensions) {
+            List<String> next = new ArrayList<String>();
+            for (String prefix : result) {
+                for (String value : dimension) {
+                    next.add((prefix + " " + value).trim());
+                }
+            }
+            result = next;
+        }
+        return result;
+    }
+
+    /**
+     * Runs the scenario once with the JVM options.
+     * @param page The page path, optionally followed by ?suite to run a suite.
+     * @param options The JVM options for the fixture JVM.
+     * @param cold True if the run is a cold run.
+     */
+    public Run run(String page, String options, boolean cold) throws IOException,
+            InterruptedException {
+        String path = page;
+        String type = "test";
+        int pos = page.indexOf('?');
+        if (pos > 0) {
+            path = page.substring(0, pos);
+            type = page.substring(pos + 1);
+        }
+        String java = getSetting("Matrix: Java",
+                new File(System.getProperty("java.home"), "bin/java").getPath());
+        File statsFile = new File(fitNesseDir, STATS_FILE);
+        statsFile.delete();
+        File stepLog = new File(fitNesseDir, STEP_LOG_FILE);
+        stepLog.delete();
+        String coldCommand = getSetting("Matrix: Cold Command", null);
+        if (cold && coldCommand != null) {
+            ProcessBuilder builder = new ProcessBuilder(coldCommand.trim().split("\\s+"));
+            builder.redirectErrorStream(true);
+            builder.redirectOutput(new File(fitNesseDir, "jvm-matrix-cold.log"));
+            builder.start().waitFor();
+        }
+        String commandPattern = (java + " " + options + " -D" + STATS_PROPERTY + "="
+                + STATS_FILE + " -D" + StepLatencyHistory.RUN_LOG_PROPERTY + "=" + STEP_LOG_FILE
+                + " -cp %p %m").replaceAll("\\s+", " ");
+        int exitCode = PerformanceSuite.runFitNesse(config, path + "?" + type,
+                Arrays.asList("-DCOMMAND_PATTERN=" + commandPattern), "jvm-matrix-run.log",
+                new File(fitNesseDir, PAGE_LOG_FILE));
+
+        Run result = new Run(cold);
+        int pages = 0;
+        boolean failed = false;
+        for (String[] fields : PerformanceSuite.readPageLog(new File(fitNesseDir, PAGE_LOG_FILE))) {
+            if (fields[0].startsWith(path)) {
+                pages++;
+                failed = failed || !fields[2].equals("PASS");
+            }
+        }
+        result.passed = pages > 0 && !failed && exitCode == 0;
+        if (pages == 0) {
+            System.out.println("No pages recorded for " + page + ". FitNesse exit code "
+                    + exitCode);
+        }
+        for (String line : readFrom(stepLog, 0)) {
+            int tab = line.lastIndexOf('\t');
+            if (tab > 0) {
+                String signature = line.substring(0, tab);
+                long latency = Long.parseLong(line.substring(tab + 1).trim());
+                if (signature.equals(STARTUP_SIGNATURE)) {
+                    result.startupMillis = latency;
+                } else {
+                    if (!result.steps.containsKey(signature)) {
+                        result.steps.put(signature, new ArrayList<Long>());
+                    }
+                    result.steps.get(signature).add(latency);
+                }
+            }
+        }
+        List<String> stats = readFrom(statsFile, 0);
+        if (!stats.isEmpty()) {
+            String[] fields = stats.get(stats.size() - 1).split("\t");
+            result.peakRssKb = Long.parseLong(fields[0]);
+            result.peakCommittedKb = Long.parseLong(fields[1]);
+            result.gcCount = Long.parseLong(fields[2]);
+            result.gcMillis = Long.parseLong(fields[3]);
+        }
+        return result;
+    }
+
+    /**
+     * @return The lines appended to the file after the offset.
+     */
+    private static List<String> readFrom(File file, long offset) throws IOException {
+        List<String> result = new ArrayList<String>();
+        if (!file.exists()) {
+            return result;
+        }
+        RandomAccessFile reader = new RandomAccessFile(file, "r");
+        try {
+            reader.seek(offset);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() > 0) {
+                    result.add(line);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    /**
+     * Runs the cold and warm runs for each configuration and reports the results.
+     * @param page The scenario page, optionally followed by ?suite to run a suite.
+     * @return True if every run passed.
+     */
+    public boolean runAll(String page) throws IOException, InterruptedException {
+        int coldRuns = Integer.parseInt(getSetting("Matrix: Cold Runs", "1"));
+        int warmRuns = Integer.parseInt(getSetting("Matrix: Warm Runs", "5"));
+        Map<String, List<Run>> results = new LinkedHashMap<String, List<Run>>();
+        boolean result = true;
+        for (Map.Entry<String, String> configuration : configurations.entrySet()) {
+            List<Run> runs = new ArrayList<Run>();
+            for (int i = 0; i < coldRuns + warmRuns; i++) {
+                Run run = run(page, configuration.getValue(), i < coldRuns);
+                runs.add(run);
+                result = result && run.isPassed();
+                System.out.println(configuration.getKey() + (run.isCold() ? " cold " : " warm ")
+                        + (i + 1) + ": " + (run.isPassed() ? "PASS" : "FAIL") + " startup "
+                        + run.getStartupMillis() + " ms");
+            }
+            results.put(configuration.getKey(), runs);
+        }
+        report(page, results);
+        return result;
+    }
+
+    /**
+     * Writes the comparison table and the step percentiles for the results.
+     */
+    void report(String page, Map<String, List<Run>> results) throws IOException {
+        PrintWriter table = new PrintWriter(new BufferedWriter(new FileWriter(RESULTS_FILE)));
+        PrintWriter steps = new PrintWriter(new BufferedWriter(new FileWriter(STEPS_FILE)));
+        try {
+            List<String> lines = new ArrayList<String>();
+            lines.add("# Scenario " + page);
+            for (String name : results.keySet()) {
+                String options = configurations.get(name);
+                lines.add("# " + name + " = " + (options.length() == 0 ? "(JVM defaults)"
+                        : options));
+            }
+            lines.add("config\trun\tpassed\tstartup\tstep p50\tstep p90\tstep p95\trss MB"
+                    + "\tcommitted MB\tgc count\tgc ms");
+            steps.println("config\trun\tstep\tcount\tp50\tp90\tp95");
+            for (Map.Entry<String, List<Run>> entry : results.entrySet()) {
+                for (boolean cold : new boolean[]{true, false}) {
+                    List<Run> runs = new ArrayList<Run>();
+                    for (Run run : entry.getValue()) {
+                        if (run.isCold() == cold && run.isPassed()) {
+                            runs.add(run);
+                        }
+                    }
+                    int total = 0;
+                    for (Run run : entry.getValue()) {
+                        total += run.isCold() == cold ? 1 : 0;
+                    }
+                    if (total == 0) {
+                        continue;
+                    }
+                    String label = entry.getKey() + "\t" + (cold ? "cold" : "warm");
+                    lines.add(label + "\t" + runs.size() + "/" + total + "\t"
+                            + summarise(runs, steps, label));
+                }
+            }
+            for (String line : lines) {
+                System.out.println(line);
+                table.println(line);
+            }
+        } finally {
+            table.close();
+            steps.close();
+        }
+    }
+
+    /**
+     * Summarises the passed runs of a configuration and writes the percentiles for each step.
+     * @return The tab separated columns from startup to gc ms. Medians are used for the values
+     * measured once per run.
+     */
+    private static String summarise(List<Run> runs, PrintWriter steps, String label) {
+        List<Long> startup = new ArrayList<Long>();
+        List<Long> all = new ArrayList<Long>();
+        List<Long> rss = new ArrayList<Long>();
+        List<Long> committed = new ArrayList<Long>();
+        List<Long> gcCount = new ArrayList<Long>();
+        List<Long> gcMillis = new ArrayList<Long>();
+        Map<String, List<Long>> bySignature = new TreeMap<String, List<Long>>();
+        for (Run run : runs) {
+            addIfKnown(startup, run.getStartupMillis());
+            addIfKnown(rss, run.getPeakRssKb() < 0 ? -1 : run.getPeakRssKb() / 1024);
+            addIfKnown(committed, run.getPeakCommittedKb() < 0 ? -1
+                    : run.getPeakCommittedKb() / 1024);
+            addIfKnown(gcCount, run.getGcCount());
+            addIfKnown(gcMillis, run.getGcMillis());
+            for (Map.Entry<String, List<Long>> step : run.getSteps().entrySet()) {
+                all.addAll(step.getValue());
+                if (!bySignature.containsKey(step.getKey())) {
+                    bySignature.put(step.getKey(), new ArrayList<Long>());
+                }
+                bySignature.get(step.getKey()).addAll(step.getValue());
+            }
+        }
+        for (Map.Entry<String, List<Long>> step : bySignature.entrySet()) {
+            steps.println(label + "\t" + step.getKey() + "\t" + step.getValue().size() + "\t"
+                    + percentile(step.getValue(), 50) + "\t" + percentile(step.getValue(), 90)
+                    + "\t" + percentile(step.getValue(), 95));
+        }
+        return percentile(startup, 50) + "\t" + percentile(all, 50) + "\t" + percentile(all, 90)
+                + "\t" + percentile(all, 95) + "\t" + percentile(rss, 50) + "\t"
+                + percentile(committed, 50) + "\t" + percentile(gcCount, 50) + "\t"
+                + percentile(gcMillis, 50);
+    }
+
+    private static void addIfKnown(List<Long> values, long value) {
+        if (value >= 0) {
+            values.add(value);
+        }
+    }
+
+    /**
+     * @return The nearest rank percentile of the values or -1 if there are no values.
+     */
+    static long percentile(List<Long> values, double percentile) {
+        if (values.isEmpty()) {
+            return -1;
+        }
+        List<Long> sorted = new ArrayList<Long>(values);
+        Collections.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.size());
+        return sorted.get(Math.max(0, Math.min(sorted.size(), rank) - 1));
+    }
+
+    /**
+     * Registers a shutdown hook that appends the peak RSS, peak committed memory and garbage
+     * collection of this JVM to the file named by the {@code sola.fixture.jvmStats} system
+     * property. Does nothing if the property is not set. Called when the fixture is loaded.
+     */
+    static void installStatsHook() {
+        final String statsFile = System.getProperty(STATS_PROPERTY);
+        if (statsFile == null || statsFile.trim().length() == 0) {
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                long committed = 0;
+                for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+                    if (pool.getPeakUsage() != null) {
+                        committed += pool.getPeakUsage().getCommitted();
+                    }
+                }
+                long gcCount = 0;
+                long gcMillis = 0;
+                for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                    gcCount += Math.max(0, gc.getCollectionCount());
+                    gcMillis += Math.max(0, gc.getCollectionTime());
+                }
+                try {
+                    BufferedWriter writer = new BufferedWriter(new FileWriter(statsFile.trim(),
+                            true));
+                    writer.write(getPeakRssKb() + "\t" + committed / 1024 + "\t" + gcCount
+                            + "\t" + gcMillis + "\t"
+                            + ManagementFactory.getRuntimeMXBean().getUptime());
+                    writer.newLine();
+                    writer.close();
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }, "JVM Matrix Stats"));
+    }
+
+    /**
+     * @return The peak resident set size of this process in kilobytes from
+     * {@code /proc/self/status} or -1 if it is not available.
+     */
+    static long getPeakRssKb() {
+        File status = new File("/proc/self/status");
+        if (!status.exists()) {
+            return -1;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(status));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.startsWith("VmHWM:")) {
+                        return Long.parseLong(line.substring(6).replace("kB", "").trim());
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException ex) {
+            // Fall through to unavailable
+        }
+        return -1;
+    }
+
+    /**
+     * Runs the matrix. Arguments: {@code [-scenario page] [-list]}. The scenario defaults to the
+     * {@code Matrix: Scenario} setting. -list prints the configurations without running them.
+     */
+    public static void main(String[] args) throws Exception {
+        JvmMatrixRunner runner = new JvmMatrixRunner(FixturePool.readConfig(CONFIG_FILE));
+        String page = runner.getSetting("Matrix: Scenario", null);
+        boolean list = false;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-scenario") && i + 1 < args.length) {
+                page = args[++i];
+            } else if (args[i].equals("-list")) {
+                list = true;
+            }
+        }
+        if (list) {
+            for (Map.Entry<String, String> entry : runner.getConfigurations().entrySet()) {
+                System.out.println(entry.getKey() + " = " + entry.getValue());
+            }
+            return;
+        }
+        if (page == null) {
+            System.out.println("No scenario. Set Matrix: Scenario in " + CONFIG_FILE
+                    + " or use -scenario <page>");
+            System.exit(2);
+        }
+        System.exit(runner.runAll(page) ? 0 : 1);
+    }
+}
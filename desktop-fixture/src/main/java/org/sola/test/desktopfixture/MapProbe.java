@@ -0,0 +1,513 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Toolkit;
+import java.awt.event.InputEvent;
+import java.awt.event.MouseEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.AbstractButton;
+import javax.swing.SwingUtilities;
+
+/**
+ * Drives the GeoTools map pane used by the SOLA map controls and measures how long the map takes
+ * to render after each interaction. The map classes are supplied by the SOLA Desktop, so they are
+ * accessed by reflection to avoid tying the fixture to a particular GeoTools version.
+ * <p>Rendering is tracked with a {@code MapPaneListener}. The map is considered rendered once
+ * every rendering that started has stopped, the Swing event queue is empty and no further
+ * rendering has started for the quiet period. If the map pane does not support the listener,
+ * only the event queue is checked and the render time is unknown (-1). The time until the map
+ * was idle is always recorded. It covers the interaction, any rendering and the processing of
+ * the Swing event queue, but not the quiet period.</p>
+ * <p>Every render and idle time is appended to the file {@code map-render.log} in the working
+ * directory along with the scale of the map (map units per pixel) and the visible layers, so the
+ * times can be compared per zoom level and layer set.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class MapProbe {
+
+    public static final String HISTORY_FILE = "map-render.log";
+    private static final String MAP_PANE_CLASS = "org.geotools.swing.JMapPane";
+    private static final String LISTENER_CLASS = "org.geotools.swing.event.MapPaneListener";
+    private static final long POLL_MILLIS = 25;
+    private final Component pane;
+    private final boolean listening;
+    private volatile int renderStarts = 0;
+    private volatile int renderStops = 0;
+    private volatile long lastRenderNanos = 0;
+
+    /**
+     * The time taken to render the map after an interaction. A render time of -1 indicates the
+     * render time is unknown because the map pane does not report rendering or the interaction
+     * did not cause the map to render. An idle time of -1 indicates the map did not finish
+     * rendering before the timeout.
+     */
+    public static class RenderTiming {
+
+        private final String action;
+        private final String scale;
+        private final String layers;
+        private final long renderMillis;
+        private final long idleMillis;
+
+        RenderTiming(String action, String scale, String layers, long renderMillis,
+                long idleMillis) {
+            this.action = action;
+            this.scale = scale;
+            this.layers = layers;
+            this.renderMillis = renderMillis;
+            this.idleMillis = idleMillis;
+        }
+
+        public String getAction() {
+            return action;
+        }
+
+        public String getScale() {
+            return scale;
+        }
+
+        public String getLayers() {
+            return layers;
+        }
+
+        public long getRenderMillis() {
+            return renderMillis;
+        }
+
+        /**
+         * @return The time until the map was idle or -1 if the map was not idle before the
+         * timeout.
+         */
+        public long getIdleMillis() {
+            return idleMillis;
+        }
+
+        /**
+         * @return The timing in the form
+         * {@code |render=850|idle=870|scale=2.5|layers=Parcels,Roads|}. An unknown render time
+         * is shown as ?.
+         */
+        @Override
+        public String toString() {
+            return "|render=" + (renderMillis < 0 ? "?" : String.valueOf(renderMillis))
+                    + "|idle=" + idleMillis + "|scale=" + scale + "|layers=" + layers + "|";
+        }
+    }
+
+    private MapProbe(Component pane) {
+        this.pane = pane;
+        this.listening = addListener();
+    }
+
+    /**
+     * Locates the map pane on the window.
+     * @return The probe for the map pane or null if the window does not display a map.
+     */
+    public static MapProbe find(Component root) {
+        Component pane = findMapPane(root);
+        return pane == null ? null : new MapProbe(pane);
+    }
+
+    public Component getPane() {
+        return pane;
+    }
+
+    private static Component findMapPane(Component comp) {
+        for (Class<?> c = comp.getClass(); c != null; c = c.getSuperclass()) {
+            if (c.getName().equals(MAP_PANE_CLASS)) {
+                return comp;
+            }
+        }
+        if (comp instanceof Container) {
+            for (Component child : ((Container) comp).getComponents()) {
+                Component result = findMapPane(child);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers a proxy MapPaneListener that counts the rendering start and stop events.
+     * @return True if the listener was added.
+     */
+    private boolean addListener() {
+        try {
+            Class<?> listenerClass = Class.forName(LISTENER_CLASS, false,
+                    pane.getClass().getClassLoader());
+            Object listener = Proxy.newProxyInstance(listenerClass.getClassLoader(),
+                    new Class<?>[]{listenerClass}, new InvocationHandler() {
+
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if (method.getName().equals("onRenderingStarted")) {
+                        renderStarts++;
+                        lastRenderNanos = System.nanoTime();
+                    } else if (method.getName().equals("onRenderingStopped")) {
+                        renderStops++;
+                        lastRenderNanos = System.nanoTime();
+                    } else if (method.getName().equals("equals")) {
+                        return proxy == args[0];
+                    } else if (method.getName().equals("hashCode")) {
+                        return System.identityHashCode(proxy);
+                    } else if (method.getName().equals("toString")) {
+                        return "MapProbe listener";
+                    }
+                    return null;
+                }
+            });
+            pane.getClass().getMethod("addMapPaneListener", listenerClass).invoke(pane, listener);
+            return true;
+        } catch (Exception ex) {
+            System.out.println("Map render events not available: " + ex);
+            return false;
+        }
+    }
+
+    /**
+     * Performs a map interaction on the Swing event dispatch thread and waits for the map to
+     * render.
+     * @param action The name of the action to record the timing against.
+     * @param interaction The interaction to perform.
+     * @param quietMillis The time the map must remain idle to be considered rendered.
+     * @param timeoutMillis The maximum time to wait for the map to render.
+     * @return The render timing, which is also appended to the history file.
+     */
+    public RenderTiming perform(String action, final MapInteraction interaction,
+            long quietMillis, long timeoutMillis) throws Exception {
+        int startsBefore = renderStarts;
+        long start = System.nanoTime();
+        final Exception[] error = new Exception[1];
+        SwingUtilities.invokeAndWait(new Runnable() {
+
+            @Override
+            public void run() {
+                try {
+                    interaction.run(MapProbe.this);
+                } catch (Exception ex) {
+                    error[0] = ex;
+                }
+            }
+        });
+        if (error[0] != null) {
+            throw error[0];
+        }
+        long idleMillis = awaitIdle(start, startsBefore, quietMillis, timeoutMillis);
+        long renderMillis = -1;
+        if (listening && renderStarts > startsBefore && idleMillis >= 0) {
+            renderMillis = (lastRenderNanos - start) / 1000000L;
+        }
+        RenderTiming result = new RenderTiming(action, getScale(), getVisibleLayers(),
+                renderMillis, idleMillis);
+        record(result);
+        return result;
+    }
+
+    /**
+     * An interaction with the map. Always run on the Swing event dispatch thread.
+     */
+    public interface MapInteraction {
+
+        void run(MapProbe probe) throws Exception;
+    }
+
+    /**
+     * Waits for the map to be idle for the quiet period.
+     * @return The time from the start until the map was idle or -1 if the map was not idle
+     * before the timeout.
+     */
+    private long awaitIdle(long start, int startsBefore, long quietMillis, long timeoutMillis)
+            throws Exception {
+        long deadline = start + timeoutMillis * 1000000L;
+        final boolean[] queueEmpty = new boolean[1];
+        long idleSince = -1;
+        while (System.nanoTime() < deadline) {
+            Thread.sleep(POLL_MILLIS);
+            SwingUtilities.invokeAndWait(new Runnable() {
+
+                @Override
+                public void run() {
+                    queueEmpty[0] = Toolkit.getDefaultToolkit().getSystemEventQueue()
+                            .peekEvent() == null;
+                }
+            });
+            long now = System.nanoTime();
+            if (!queueEmpty[0] || renderStops < renderStarts) {
+                idleSince = -1;
+                continue;
+            }
+            if (idleSince < 0) {
+                idleSince = now;
+            }
+            // The map is idle from the later of the last rendering event and the first poll
+            // that found the map idle
+            long lastEvent = renderStarts > startsBefore
+                    ? Math.max(lastRenderNanos, idleSince) : idleSince;
+            if (now - lastEvent >= quietMillis * 1000000L) {
+                return (lastEvent - start) / 1000000L;
+            }
+        }
+        return -1;
+    }
+
+    Object invoke(Object target, String name, Object... args) throws Exception {
+        for (Method method : target.getClass().getMethods()) {
+            if (method.getName().equals(name) && method.getParameterTypes().length == args.length
+                    && isApplicable(method.getParameterTypes(), args)) {
+                return method.invoke(target, args);
+            }
+        }
+        throw new NoSuchMethodException(target.getClass().getName() + "." + name);
+    }
+
+    private static boolean isApplicable(Class<?>[] types, Object[] args) {
+        for (int i = 0; i < types.length; i++) {
+            Class<?> type = types[i].isPrimitive() ? boxed(types[i]) : types[i];
+            if (args[i] != null && !type.isInstance(args[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Class<?> boxed(Class<?> type) {
+        return type == Boolean.TYPE ? Boolean.class : type == Double.TYPE ? Double.class
+                : type == Integer.TYPE ? Integer.class : type == Long.TYPE ? Long.class : type;
+    }
+
+    private boolean hasMethod(String name) {
+        for (Method method : pane.getClass().getMethods()) {
+            if (method.getName().equals(name) && method.getParameterTypes().length == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Zooms the map to the full extent of its layers.
+     */
+    public void zoomToExtent() throws Exception {
+        invoke(pane, hasMethod("zoomToFullExtent") ? "zoomToFullExtent" : "reset");
+    }
+
+    /**
+     * Zooms the map to the extent given in map units.
+     */
+    public void zoomTo(double minX, double minY, double maxX, double maxY) throws Exception {
+        Object area = copyDisplayArea();
+        invoke(area, "init", minX, maxX, minY, maxY);
+        invoke(pane, "setDisplayArea", area);
+    }
+
+    /**
+     * Zooms the map about its centre.
+     * @param factor Greater than 1 to zoom in, less than 1 to zoom out.
+     */
+    public void zoomBy(double factor) throws Exception {
+        Object area = copyDisplayArea();
+        double width = (Double) invoke(area, "getWidth");
+        double height = (Double) invoke(area, "getHeight");
+        invoke(area, "expandBy", width * (1 / factor - 1) / 2, height * (1 / factor - 1) / 2);
+        invoke(pane, "setDisplayArea", area);
+    }
+
+    /**
+     * Pans the map by a number of pixels.
+     */
+    public void panBy(int dx, int dy) throws Exception {
+        Object area = copyDisplayArea();
+        double unitsPerPixel = (Double) invoke(area, "getWidth") / Math.max(1, pane.getWidth());
+        // Moving the map content right moves the display area left
+        invoke(area, "translate", -dx * unitsPerPixel, dy * unitsPerPixel);
+        invoke(pane, "setDisplayArea", area);
+    }
+
+    /**
+     * @return The centre of the map display area in map units.
+     */
+    public double[] getCentre() throws Exception {
+        Object area = invoke(pane, "getDisplayArea");
+        return new double[]{(Double) invoke(area, "getMinX") + (Double) invoke(area, "getWidth") / 2,
+                    (Double) invoke(area, "getMinY") + (Double) invoke(area, "getHeight") / 2};
+    }
+
+    /**
+     * Clicks the map at a position given in map units. Used with a map tool that has been
+     * selected to add points.
+     */
+    public void clickAt(double x, double y) throws Exception {
+        AffineTransform toScreen = (AffineTransform) invoke(pane, "getWorldToScreenTransform");
+        Point2D point = toScreen.transform(new Point2D.Double(x, y), null);
+        int px = (int) Math.round(point.getX());
+        int py = (int) Math.round(point.getY());
+        long when = System.currentTimeMillis();
+        pane.dispatchEvent(new MouseEvent(pane, MouseEvent.MOUSE_PRESSED, when,
+                InputEvent.BUTTON1_DOWN_MASK, px, py, 1, false, MouseEvent.BUTTON1));
+        pane.dispatchEvent(new MouseEvent(pane, MouseEvent.MOUSE_RELEASED, when,
+                InputEvent.BUTTON1_DOWN_MASK, px, py, 1, false, MouseEvent.BUTTON1));
+        pane.dispatchEvent(new MouseEvent(pane, MouseEvent.MOUSE_CLICKED, when,
+                InputEvent.BUTTON1_DOWN_MASK, px, py, 1, false, MouseEvent.BUTTON1));
+    }
+
+    /**
+     * Sets the visibility of the layers with the title.
+     * @return True if a layer with the title was found.
+     */
+    public boolean setLayerVisible(String title, boolean visible) throws Exception {
+        boolean result = false;
+        for (Object layer : getLayers()) {
+            Object layerTitle = invoke(layer, "getTitle");
+            if (layerTitle != null && layerTitle.toString().equalsIgnoreCase(title)) {
+                invoke(layer, "setVisible", visible);
+                result = true;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Selects a map tool by clicking the toolbar button with the name, tooltip or text.
+     * @return True if the tool was found.
+     */
+    public static boolean selectTool(Component root, String label) {
+        AbstractButton button = findButton(root, label);
+        if (button != null) {
+            button.doClick();
+        }
+        return button != null;
+    }
+
+    private static AbstractButton findButton(Component comp, String label) {
+        if (comp instanceof AbstractButton) {
+            AbstractButton button = (AbstractButton) comp;
+            if (label.equalsIgnoreCase(button.getName())
+                    || label.equalsIgnoreCase(button.getToolTipText())
+                    || label.equalsIgnoreCase(button.getText())) {
+                return button;
+            }
+        }
+        if (comp instanceof Container) {
+            for (Component child : ((Container) comp).getComponents()) {
+                AbstractButton result = findButton(child, label);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The layers of the map using the MapContent (GeoTools 8 and later) or the
+     * MapContext of the map pane.
+     */
+    private List<Object> getLayers() throws Exception {
+        List<Object> result = new ArrayList<Object>();
+        try {
+            result.addAll((List<?>) invoke(invoke(pane, "getMapContent"), "layers"));
+        } catch (NoSuchMethodException ex) {
+            for (Object layer : (Object[]) invoke(invoke(pane, "getMapContext"), "getLayers")) {
+                result.add(layer);
+            }
+        }
+        return result;
+    }
+
+    private Object copyDisplayArea() throws Exception {
+        Object area = invoke(pane, "getDisplayArea");
+        return area.getClass().getConstructor(area.getClass()).newInstance(area);
+    }
+
+    /**
+     * @return The map units per pixel to 3 significant figures or ? if the scale is not known.
+     */
+    private String getScale() {
+        try {
+            double units = (Double) invoke(invoke(pane, "getDisplayArea"), "getWidth")
+                    / Math.max(1, pane.getWidth());
+            return String.format("%.3g", units);
+        } catch (Exception ex) {
+            return "?";
+        }
+    }
+
+    /**
+     * @return The titles of the visible layers separated by commas.
+     */
+    private String getVisibleLayers() {
+        StringBuilder result = new StringBuilder();
+        try {
+            for (Object layer : getLayers()) {
+                if (Boolean.TRUE.equals(invoke(layer, "isVisible"))) {
+                    result.append(result.length() == 0 ? "" : ",").append(invoke(layer, "getTitle"));
+                }
+            }
+        } catch (Exception ex) {
+            return "?";
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return True if the map pane reports its rendering events.
+     */
+    public boolean isListening() {
+        return listening;
+    }
+
+    private static synchronized void record(RenderTiming timing) {
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(HISTORY_FILE),
+                    true));
+            writer.write(timing.getAction() + "\t" + timing.getScale() + "\t" + timing.getLayers()
+                    + "\t" + timing.getRenderMillis() + "\t" + timing.getIdleMillis());
+            writer.newLine();
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.sola.common.messaging.LocalizedMessage;
+
+/**
+ * Rule table used by the {@linkplain FixtureMessageResponder} to determine the response to a
+ * message. The rules are compiled from the test data into lookup structures the first time a
+ * message is processed after the test data has changed, so the response for each message is
+ * determined without scanning the test data. The following rules are supported, in order of
+ * precedence.
+ * <pre>
+ * |script|Setup Test Data                                                             |
+ * |Field |CLIAPP004              |Value|No                                              |
+ * |Field |CLIAPP*                |Value|Yes                                             |
+ * |Field |CLI*001                |Value|OK                                              |
+ * |Field |Message Text: Duplicate|Value|Cancel|Action|MATCH|Extension|.*already exists.*|
+ * |Field |Message Type: Warning  |Value|Yes                                             |
+ * </pre>
+ * <ol><li>Message code - the test data name matches the message code exactly.</li>
+ * <li>Code prefix - the test data name ends with *. The longest matching prefix is used.</li>
+ * <li>Code wildcard - the test data name contains * or ? elsewhere.</li>
+ * <li>Message text - the test data name starts with {@code Message Text:} and the action
+ * extension is a regular expression matched against the text of the message.</li>
+ * <li>Message type - the test data name is {@code Message Type:} followed by the message
+ * type e.g. Warning.</li></ol>
+ * <p>Only test data that can describe a message is compiled into rules. Code, prefix and
+ * wildcard rules are taken from test data names that do not contain {@code :}, so field data
+ * such as {@code Login: Username} is ignored. Message text rules must use the {@code MATCH}
+ * action. Message text rules with an invalid regular expression are logged and skipped.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class MessageRuleTable {
+
+    private static final String TEXT_RULE = "messagetext:";
+    private static final String TYPE_RULE = "messagetype:";
+    private static final String ACTION_MATCH = "MATCH";
+
+    /** A compiled rule. */
+    public static class Rule {
+
+        private final String name;
+        private final String response;
+        private final Pattern pattern;
+        private final AtomicLong hits;
+
+        Rule(String name, String response, Pattern pattern, AtomicLong hits) {
+            this.name = name;
+            this.response = response;
+            this.pattern = pattern;
+            this.hits = hits;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return The text of the button to select in response to the message.
+         */
+        public String getResponse() {
+            return response;
+        }
+
+        public long getHits() {
+            return hits.get();
+        }
+    }
+
+    /** The lookup structures compiled from one version of the test data. */
+    private static class CompiledRules {
+
+        final int dataVersion;
+        final Map<String, Rule> codes = new HashMap<String, Rule>();
+        final Map<String, Rule> prefixes = new HashMap<String, Rule>();
+        final List<Rule> wildcards = new ArrayList<Rule>();
+        final List<Rule> texts = new ArrayList<Rule>();
+        final Map<LocalizedMessage.Type, Rule> types =
+                new EnumMap<LocalizedMessage.Type, Rule>(LocalizedMessage.Type.class);
+        int maxPrefix = 0;
+
+        CompiledRules(int dataVersion) {
+            this.dataVersion = dataVersion;
+        }
+    }
+    private volatile CompiledRules rules = null;
+    /** Hit counters are retained by rule name when the rules are recompiled. */
+    private final Map<String, AtomicLong> hitCounters = new ConcurrentHashMap<String, AtomicLong>();
+
+    private MessageRuleTable() {
+    }
+
+    private static class MessageRuleTableHolder {
+
+        public static final MessageRuleTable INSTANCE = new MessageRuleTable();
+    }
+
+    public static MessageRuleTable getInstance() {
+        return MessageRuleTableHolder.INSTANCE;
+    }
+
+    /**
+     * Finds the rule that applies to the message.
+     * @param msg The message.
+     * @return The rule or null if no rule applies to the message.
+     */
+    public Rule findRule(LocalizedMessage msg) {
+        CompiledRules compiled = getRules();
+        String code = msg.getMessageCode() == null ? "" : msg.getMessageCode().toLowerCase();
+        Rule result = compiled.codes.get(code);
+        for (int len = Math.min(code.length(), compiled.maxPrefix); result == null && len >= 0; len--) {
+            result = compiled.prefixes.get(code.substring(0, len));
+        }
+        for (int i = 0; result == null && i < compiled.wildcards.size(); i++) {
+            if (compiled.wildcards.get(i).pattern.matcher(code).matches()) {
+                result = compiled.wildcards.get(i);
+            }
+        }
+        String text = msg.getMessage() == null ? "" : msg.getMessage();
+        for (int i = 0; result == null && i < compiled.texts.size(); i++) {
+            if (compiled.texts.get(i).pattern.matcher(text).matches()) {
+                result = compiled.texts.get(i);
+            }
+        }
+        if (result == null && msg.getType() != null) {
+            result = compiled.types.get(msg.getType());
+        }
+        if (result != null) {
+            result.hits.incrementAndGet();
+        }
+        return result;
+    }
+
+    /**
+     * @return The rules compiled from the current test data in order of precedence.
+     */
+    public List<Rule> getRuleList() {
+        CompiledRules compiled = getRules();
+        List<Rule> result = new ArrayList<Rule>(compiled.codes.values());
+        result.addAll(compiled.prefixes.values());
+        result.addAll(compiled.wildcards);
+        result.addAll(compiled.texts);
+        result.addAll(compiled.types.values());
+        return result;
+    }
+
+    /**
+     * Returns the compiled rules, recompiling them if the test data has changed since they
+     * were last compiled.
+     */
+    private CompiledRules getRules() {
+        TestManager testMan = TestManager.getInstance();
+        CompiledRules result = rules;
+        if (result == null || result.dataVersion != testMan.getDataVersion()) {
+            synchronized (this) {
+                result = rules;
+                if (result == null || result.dataVersion != testMan.getDataVersion()) {
+                    result = compile(testMan);
+                    rules = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private CompiledRules compile(TestManager testMan) {
+        CompiledRules result = new CompiledRules(testMan.getDataVersion());
+        for (Map.Entry<String, TestDataItem> entry : testMan.getTestData().entrySet()) {
+            String name = entry.getKey();
+            TestDataItem item = entry.getValue();
+            if (name.startsWith(TEXT_RULE)) {
+                if (ACTION_MATCH.equals(item.getAction()) && item.getActionExtension() != null) {
+                    try {
+                        result.texts.add(newRule(name, item.getValue(),
+                                Pattern.compile(item.getActionExtension(), Pattern.DOTALL)));
+                    } catch (PatternSyntaxException ex) {
+                        System.out.println("Ignoring message rule " + name
+                                + ". Invalid regular expression " + ex.getMessage());
+                    }
+                }
+            } else if (name.startsWith(TYPE_RULE)) {
+                LocalizedMessage.Type type = getType(name.substring(TYPE_RULE.length()));
+                if (type != null) {
+                    result.types.put(type, newRule(name, item.getValue(), null));
+                }
+            } else if (name.indexOf(':') >= 0) {
+                // Field data rather than a message code
+                continue;
+            } else if (name.endsWith("*") && name.indexOf('*') == name.length() - 1
+                    && name.indexOf('?') < 0) {
+                String prefix = name.substring(0, name.length() - 1);
+                result.prefixes.put(prefix, newRule(name, item.getValue(), null));
+                result.maxPrefix = Math.max(result.maxPrefix, prefix.length());
+            } else if (name.indexOf('*') >= 0 || name.indexOf('?') >= 0) {
+                result.wildcards.add(newRule(name, item.getValue(), wildcardPattern(name)));
+            } else {
+                result.codes.put(name, newRule(name, item.getValue(), null));
+            }
+        }
+        return result;
+    }
+
+    private Rule newRule(String name, String response, Pattern pattern) {
+        AtomicLong hits = hitCounters.get(name);
+        if (hits == null) {
+            hits = new AtomicLong();
+            hitCounters.put(name, hits);
+        }
+        return new Rule(name, response, pattern, hits);
+    }
+
+    /**
+     * Resets the hit counters for all rules.
+     */
+    public void resetHits() {
+        for (AtomicLong hits : hitCounters.values()) {
+            hits.set(0);
+        }
+    }
+
+    private LocalizedMessage.Type getType(String typeName) {
+        LocalizedMessage.Type result = null;
+        for (LocalizedMessage.Type type : LocalizedMessage.Type.values()) {
+            if (type.name().equalsIgnoreCase(typeName)) {
+                result = type;
+                break;
+            }
+        }
+        return result;
+    }
+
+    private Pattern wildcardPattern(String wildcard) {
+        StringBuilder regex = new StringBuilder();
+        for (char c : wildcard.toCharArray()) {
+            if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,299 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Records the footprint of each FitNesse page, which is the set of SOLA window titles, form
+ * classes, control names and menu paths the page exercised during its last run. The footprints
+ * are kept in the file {@code page-footprint.log} in the working directory and are used to
+ * select the pages affected by a change to the SOLA desktop client. e.g.
+ * <pre>
+ * java -cp sola-desktop-fixture.jar org.sola.test.desktopfixture.PageFootprints ApplicationPanel.java "New Application"
+ * </pre>
+ * lists the pages that opened the New Application window or used the ApplicationPanel form.
+ * Pages without a recorded footprint (e.g. new pages) cannot be matched, so give the full list
+ * of pages in a file with {@code -pages <file>} to include every page that has no footprint.
+ * <p>Each update appends a record for the page to the file, so fixture JVMs running at the same
+ * time (see {@linkplain FixturePool}) do not overwrite each other's footprints. The last record
+ * for a page replaces the earlier ones when the file is loaded. Run with {@code -compact} to
+ * rewrite the file with only the latest record for each page.</p>
+ * <p>Each entry in the footprint is of the form {@code type:value} where type is one of
+ * {@code window}, {@code class}, {@code control} or {@code menu}. Changed items are matched
+ * against the values ignoring case. Source file names are matched with their path and file
+ * extension removed.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class PageFootprints {
+
+    public static final String FOOTPRINT_FILE = "page-footprint.log";
+    public static final String WINDOW = "window";
+    public static final String CLASS = "class";
+    public static final String CONTROL = "control";
+    public static final String MENU = "menu";
+    private final Map<String, Set<String>> footprints = new TreeMap<String, Set<String>>();
+    private final File file;
+    private boolean loaded = false;
+
+    PageFootprints(File file) {
+        this.file = file;
+    }
+
+    private static class PageFootprintsHolder {
+
+        public static final PageFootprints INSTANCE = new PageFootprints(new File(FOOTPRINT_FILE));
+    }
+
+    public static PageFootprints getInstance() {
+        return PageFootprintsHolder.INSTANCE;
+    }
+
+    /**
+     * Creates a footprint entry.
+     * @param type The type of entry e.g. {@linkplain #WINDOW}
+     * @param value The value for the entry.
+     * @return The entry or null if the value is null or empty.
+     */
+    public static String entry(String type, String value) {
+        return value == null || value.trim().length() == 0 ? null
+                : type + ":" + value.trim().toLowerCase();
+    }
+
+    /**
+     * Replaces the footprint recorded for the page and appends it to the file.
+     * @param page The full path of the page.
+     * @param footprint The entries exercised by the page.
+     */
+    public synchronized void update(String page, Set<String> footprint) {
+        load();
+        footprints.put(page, new LinkedHashSet<String>(footprint));
+        try {
+            // Write the record with a single append so records from other JVMs do not
+            // interleave with it
+            StringBuilder record = new StringBuilder();
+            appendRecord(record, page, footprint);
+            FileWriter writer = new FileWriter(file, true);
+            try {
+                writer.write(record.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Appends the record for a page. The record starts with the page on its own, which marks
+     * the start of a new footprint and retains pages with an empty footprint.
+     */
+    private static void appendRecord(StringBuilder record, String page, Set<String> footprint) {
+        String newLine = System.getProperty("line.separator");
+        record.append(page).append('\t').append(newLine);
+        for (String entry : footprint) {
+            record.append(page).append('\t').append(entry).append(newLine);
+        }
+    }
+
+    /**
+     * @return The footprint recorded for the page or null if the page has not been recorded.
+     */
+    public synchronized Set<String> getFootprint(String page) {
+        load();
+        return footprints.get(page);
+    }
+
+    /**
+     * Determines the pages affected by the changed items.
+     * @param changedItems Window titles, form class names, source file names, control names or
+     * menu paths that have changed.
+     * @return The pages whose footprint includes at least one of the changed items.
+     */
+    public synchronized List<String> getAffectedPages(List<String> changedItems) {
+        return getAffectedPages(changedItems, new ArrayList<String>());
+    }
+
+    /**
+     * Determines the pages affected by the changed items, including every page that does not
+     * have a recorded footprint.
+     * @param changedItems Window titles, form class names, source file names, control names or
+     * menu paths that have changed.
+     * @param allPages The full paths of all pages that can be selected.
+     * @return The pages whose footprint includes at least one of the changed items followed by
+     * the pages in allPages that have no footprint.
+     */
+    public synchronized List<String> getAffectedPages(List<String> changedItems,
+            List<String> allPages) {
+        load();
+        Set<String> changed = new LinkedHashSet<String>();
+        for (String item : changedItems) {
+            changed.add(normalize(item));
+        }
+        List<String> result = new ArrayList<String>();
+        for (Map.Entry<String, Set<String>> page : footprints.entrySet()) {
+            for (String entry : page.getValue()) {
+                if (changed.contains(entry.substring(entry.indexOf(':') + 1))) {
+                    result.add(page.getKey());
+                    break;
+                }
+            }
+        }
+        for (String page : allPages) {
+            if (!footprints.containsKey(page) && !result.contains(page)) {
+                result.add(page);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Removes the path and file extension from source file names so they can be matched with
+     * the form classes recorded in the footprint.
+     */
+    private String normalize(String item) {
+        String result = item.trim();
+        if (result.endsWith(".java") || result.endsWith(".form") || result.endsWith(".class")) {
+            result = result.substring(0, result.lastIndexOf('.'));
+            result = result.substring(Math.max(result.lastIndexOf('/'), result.lastIndexOf('\\')) + 1);
+        }
+        return result.toLowerCase();
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int pos = line.indexOf('\t');
+                    if (pos > 0) {
+                        String page = line.substring(0, pos);
+                        if (pos == line.length() - 1) {
+                            // Start of a new record for the page
+                            footprints.put(page, new LinkedHashSet<String>());
+                        } else {
+                            Set<String> footprint = footprints.get(page);
+                            if (footprint == null) {
+                                footprint = new LinkedHashSet<String>();
+                                footprints.put(page, footprint);
+                            }
+                            footprint.add(line.substring(pos + 1));
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Rewrites the file with only the latest record for each page.
+     */
+    public synchronized void compact() throws IOException {
+        load();
+        StringBuilder records = new StringBuilder();
+        for (Map.Entry<String, Set<String>> page : footprints.entrySet()) {
+            appendRecord(records, page.getKey(), page.getValue());
+        }
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file, false));
+        try {
+            writer.write(records.toString());
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Lists the pages affected by the changed items, one page per line. Arguments:
+     * {@code [-pages file] [-compact] changed items...} where file lists the full path of every
+     * page, one per line. See {@linkplain #getAffectedPages(List, List)}
+     */
+    public static void main(String[] args) throws IOException {
+        List<String> changed = new ArrayList<String>();
+        List<String> allPages = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-pages") && i + 1 < args.length) {
+                allPages = readPages(new File(args[++i]));
+            } else if (args[i].equals("-compact")) {
+                getInstance().compact();
+            } else {
+                changed.add(args[i]);
+            }
+        }
+        if (allPages == null) {
+            allPages = new ArrayList<String>();
+            System.err.println("No -pages file given. Pages without a footprint are not listed.");
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+        for (String page : getInstance().getAffectedPages(changed, allPages)) {
+            System.out.println(page);
+        }
+    }
+
+    private static List<String> readPages(File pagesFile) throws IOException {
+        List<String> result = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(pagesFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() > 0) {
+                    result.add(line.trim());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,411 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps a local history of the duration and outcome of each FitNesse page and uses it to plan
+ * the order the pages of a suite should run in. Pages likely to fail are run first so failures
+ * are reported as early as possible. Otherwise the shortest pages are run first. Pages are kept
+ * together with the other pages in their parent suite so the setup and teardown for the suite
+ * remain valid. e.g.
+ * <pre>
+ * java -cp sola-desktop-fixture.jar org.sola.test.desktopfixture.PageHistory -shards 2 &lt; pages.txt
+ * </pre>
+ * reads the page paths to run (one per line) and prints the shard, page path and estimated
+ * duration of each page in the order the pages should be run. This can be combined with the
+ * output of {@linkplain PageFootprints} to order the pages affected by a change.
+ * <p>The history is appended to the file {@code page-history.log} in the working directory.
+ * Only the most recent {@value #MAX_RUNS} runs are kept for each page, so the file is compacted
+ * from time to time. If the {@code sola.fixture.pageLog} system property or the
+ * {@code SOLA_FIXTURE_PAGE_LOG} environment variable is set, each run is also appended to the
+ * file it names, which is never compacted. This gives {@linkplain PerformanceSuite} and
+ * {@linkplain JvmMatrixRunner} the pages of a single FitNesse run.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class PageHistory {
+
+    public static final String HISTORY_FILE = "page-history.log";
+    /** System property naming a file that receives a copy of each run recorded. */
+    public static final String RUN_LOG_PROPERTY = "sola.fixture.pageLog";
+    /**
+     * Environment variable used if the {@linkplain #RUN_LOG_PROPERTY} is not set. The fixture
+     * JVM inherits the environment of the FitNesse process that starts it.
+     */
+    public static final String RUN_LOG_VARIABLE = "SOLA_FIXTURE_PAGE_LOG";
+    /** Number of runs retained for each page. */
+    public static final int MAX_RUNS = 10;
+    /** Failure score used for pages that have no history so they are run early. */
+    private static final double UNKNOWN_FAILURE_SCORE = 0.5;
+    private final Map<String, LinkedList<Run>> history = new HashMap<String, LinkedList<Run>>();
+    private final File file;
+    private boolean loaded = false;
+
+    /** The outcome of one run of a page. */
+    private static class Run {
+
+        final long durationMillis;
+        final boolean passed;
+
+        Run(long durationMillis, boolean passed) {
+            this.durationMillis = durationMillis;
+            this.passed = passed;
+        }
+    }
+
+    /** The planned position of a page. */
+    public static class PlannedPage {
+
+        private final String page;
+        private final long estimateMillis;
+        private final double failureScore;
+        private int shard = 0;
+
+        PlannedPage(String page, long estimateMillis, double failureScore) {
+            this.page = page;
+            this.estimateMillis = estimateMillis;
+            this.failureScore = failureScore;
+        }
+
+        public String getPage() {
+            return page;
+        }
+
+        public long getEstimateMillis() {
+            return estimateMillis;
+        }
+
+        public double getFailureScore() {
+            return failureScore;
+        }
+
+        public int getShard() {
+            return shard;
+        }
+
+        /**
+         * @return The path of the suite containing the page.
+         */
+        public String getSuite() {
+            int pos = page.lastIndexOf('.');
+            return pos < 0 ? "" : page.substring(0, pos);
+        }
+    }
+
+    PageHistory(File file) {
+        this.file = file;
+    }
+
+    private static class PageHistoryHolder {
+
+        public static final PageHistory INSTANCE = new PageHistory(new File(HISTORY_FILE));
+    }
+
+    public static PageHistory getInstance() {
+        return PageHistoryHolder.INSTANCE;
+    }
+
+    /**
+     * Records the outcome of a page and appends it to the history file.
+     * @param page The full path of the page.
+     * @param durationMillis The time taken to run the page.
+     * @param passed True if the page passed.
+     */
+    public synchronized void record(String page, long durationMillis, boolean passed) {
+        load();
+        add(page, new Run(durationMillis, passed));
+        try {
+            String entry = page + "\t" + durationMillis + "\t" + (passed ? "PASS" : "FAIL");
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
+            writer.write(entry);
+            writer.newLine();
+            writer.close();
+            String runLog = System.getProperty(RUN_LOG_PROPERTY, System.getenv(RUN_LOG_VARIABLE));
+            if (runLog != null && runLog.trim().length() > 0) {
+                writer = new BufferedWriter(new FileWriter(runLog.trim(), true));
+                writer.write(entry);
+                writer.newLine();
+                writer.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return The estimated duration of the page based on the average of its recent runs or
+     * the defaultMillis if the page has no history.
+     */
+    public synchronized long getEstimate(String page, long defaultMillis) {
+        load();
+        long result = defaultMillis;
+        LinkedList<Run> runs = history.get(page);
+        if (runs != null && !runs.isEmpty()) {
+            long total = 0;
+            for (Run run : runs) {
+                total += run.durationMillis;
+            }
+            result = total / runs.size();
+        }
+        return result;
+    }
+
+    /**
+     * Calculates the likelihood the page will fail from its recent runs. More recent failures
+     * carry more weight.
+     * @return A score between 0 (all recent runs passed) and 1 (all recent runs failed).
+     */
+    public synchronized double getFailureScore(String page) {
+        load();
+        double result = UNKNOWN_FAILURE_SCORE;
+        LinkedList<Run> runs = history.get(page);
+        if (runs != null && !runs.isEmpty()) {
+            double weight = 1;
+            double failed = 0;
+            double total = 0;
+            // Most recent run first, each older run has half the weight of the next
+            for (int i = runs.size() - 1; i >= 0; i--) {
+                failed += runs.get(i).passed ? 0 : weight;
+                total += weight;
+                weight = weight / 2;
+            }
+            result = failed / total;
+        }
+        return result;
+    }
+
+    /**
+     * Plans the order to run the pages in. Suites are ordered by the highest failure score of
+     * their pages and then by their total estimated duration. Pages within a suite are ordered
+     * the same way. Suites are allocated to shards so the estimated duration of each shard is
+     * balanced.
+     * @param pages The full paths of the pages to run.
+     * @param shards The number of shards to allocate the suites to.
+     * @return The pages in the order they should be run.
+     */
+    public synchronized List<PlannedPage> plan(List<String> pages, int shards) {
+        load();
+        long defaultEstimate = getMedianEstimate();
+        Map<String, List<PlannedPage>> suites = new LinkedHashMap<String, List<PlannedPage>>();
+        for (String page : pages) {
+            PlannedPage planned = new PlannedPage(page, getEstimate(page, defaultEstimate),
+                    getFailureScore(page));
+            List<PlannedPage> suite = suites.get(planned.getSuite());
+            if (suite == null) {
+                suite = new ArrayList<PlannedPage>();
+                suites.put(planned.getSuite(), suite);
+            }
+            suite.add(planned);
+        }
+
+        final Comparator<PlannedPage> pageOrder = new Comparator<PlannedPage>() {
+
+            public int compare(PlannedPage p1, PlannedPage p2) {
+                int result = Double.compare(p2.failureScore, p1.failureScore);
+                if (result == 0) {
+                    result = p1.estimateMillis < p2.estimateMillis ? -1
+                            : (p1.estimateMillis == p2.estimateMillis ? 0 : 1);
+                }
+                return result;
+            }
+        };
+        List<List<PlannedPage>> suiteList = new ArrayList<List<PlannedPage>>(suites.values());
+        for (List<PlannedPage> suite : suiteList) {
+            Collections.sort(suite, pageOrder);
+        }
+        Collections.sort(suiteList, new Comparator<List<PlannedPage>>() {
+
+            public int compare(List<PlannedPage> s1, List<PlannedPage> s2) {
+                // The first page of each sorted suite has the highest failure score
+                int result = Double.compare(s2.get(0).failureScore, s1.get(0).failureScore);
+                if (result == 0) {
+                    long d1 = getDuration(s1);
+                    long d2 = getDuration(s2);
+                    result = d1 < d2 ? -1 : (d1 == d2 ? 0 : 1);
+                }
+                return result;
+            }
+        });
+
+        // Allocate each suite to the shard with the lowest estimated duration so far
+        long[] shardDuration = new long[Math.max(1, shards)];
+        List<PlannedPage> result = new ArrayList<PlannedPage>();
+        for (List<PlannedPage> suite : suiteList) {
+            int shard = 0;
+            for (int i = 1; i < shardDuration.length; i++) {
+                if (shardDuration[i] < shardDuration[shard]) {
+                    shard = i;
+                }
+            }
+            shardDuration[shard] += getDuration(suite);
+            for (PlannedPage page : suite) {
+                page.shard = shard;
+                result.add(page);
+            }
+        }
+        return result;
+    }
+
+    private static long getDuration(List<PlannedPage> suite) {
+        long result = 0;
+        for (PlannedPage page : suite) {
+            result += page.estimateMillis;
+        }
+        return result;
+    }
+
+    private long getMedianEstimate() {
+        List<Long> estimates = new ArrayList<Long>();
+        for (String page : history.keySet()) {
+            estimates.add(getEstimate(page, 0));
+        }
+        Collections.sort(estimates);
+        return estimates.isEmpty() ? 60000 : estimates.get(estimates.size() / 2);
+    }
+
+    private void add(String page, Run run) {
+        LinkedList<Run> runs = history.get(page);
+        if (runs == null) {
+            runs = new LinkedList<Run>();
+            history.put(page, runs);
+        }
+        runs.add(run);
+        if (runs.size() > MAX_RUNS) {
+            runs.removeFirst();
+        }
+    }
+
+    /**
+     * Loads the history file the first time the history is accessed. If the file holds
+     * considerably more runs than are retained, it is rewritten to remove the old runs.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        int lines = 0;
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] fields = line.split("\t");
+                    if (fields.length == 3) {
+                        try {
+                            add(fields[0], new Run(Long.parseLong(fields[1]), "PASS".equals(fields[2])));
+                            lines++;
+                        } catch (NumberFormatException ex) {
+                            // Ignore corrupt entries
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            int retained = 0;
+            for (LinkedList<Run> runs : history.values()) {
+                retained += runs.size();
+            }
+            if (lines > retained * 2) {
+                compact();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void compact() throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file, false));
+        try {
+            for (Map.Entry<String, LinkedList<Run>> entry : history.entrySet()) {
+                for (Run run : entry.getValue()) {
+                    writer.write(entry.getKey() + "\t" + run.durationMillis + "\t"
+                            + (run.passed ? "PASS" : "FAIL"));
+                    writer.newLine();
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Reads the page paths from standard input (one per line) and prints the shard, page path
+     * and estimated duration in milliseconds for each page in the order they should run,
+     * followed by the estimated duration of each shard.
+     * @param args Optionally {@code -shards n} to allocate the pages to n shards.
+     */
+    public static void main(String[] args) throws IOException {
+        int shards = 1;
+        if (args.length == 2 && args[0].equals("-shards")) {
+            shards = Integer.parseInt(args[1]);
+        }
+        if (shards < 1) {
+            throw new IllegalArgumentException("The number of shards must be at least 1. Was "
+                    + shards);
+        }
+        List<String> pages = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.trim().length() > 0) {
+                pages.add(line.trim());
+            }
+        }
+        long[] shardDuration = new long[shards];
+        for (PlannedPage page : getInstance().plan(pages, shards)) {
+            shardDuration[page.getShard()] += page.getEstimateMillis();
+            System.out.println(page.getShard() + "\t" + page.getPage() + "\t"
+                    + page.getEstimateMillis());
+        }
+        for (int i = 0; i < shards; i++) {
+            System.out.println("# shard " + i + " estimated duration " + shardDuration[i] + " ms");
+        }
+    }
+}
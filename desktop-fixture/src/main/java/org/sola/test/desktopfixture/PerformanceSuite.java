@@ -0,0 +1,487 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import org.sola.clients.desktop.DesktopApplication;
+
+/**
+ * Runs a fixed set of FitNesse pages as performance scenarios and compares the results with a
+ * baseline recorded for an earlier version of the SOLA Desktop. Each scenario is run a number
+ * of times to warm up the SOLA server and then a number of measured times. The duration of each
+ * measured run is read from the {@linkplain PageHistory} run log written by the fixture, so it
+ * covers the pages from {@code start Page} to {@code end Page} and excludes the time to start
+ * FitNesse. A run fails if a page failed or FitNesse reports a failure in its exit code. e.g.
+ * <pre>
+ * java -cp "fitnesse.jar:../desktop-fixture/target/*:../desktop-fixture/target/lib/*" org.sola.test.desktopfixture.PerformanceSuite -baseline 1502a
+ * </pre>
+ * runs the scenarios from the FitNesse directory, saves the results as the baseline for the
+ * current version and compares them with the baseline saved for version 1502a.
+ * <p>The measured durations are saved to {@code performance-baselines/<version>/<page>.txt}, one
+ * duration per line. The comparison uses a one sided Mann-Whitney U test, which makes no
+ * assumption about the shape of the latency distribution and is not skewed by the occasional
+ * slow run. A scenario is reported as a regression if the test is significant and the median
+ * duration has increased by more than the minimum regression. The process exits with 1 if any
+ * scenario regressed or failed so it can be used to fail a build.</p>
+ * <p>The suite is configured from the {@code performance-suite.txt} file in the working
+ * directory. See the example in the FitNesse directory for the available settings.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class PerformanceSuite {
+
+    public static final String CONFIG_FILE = "performance-suite.txt";
+    public static final String BASELINE_DIR = "performance-baselines";
+    private static final String PAGE_LOG_FILE = "performance-suite-pages.log";
+    private static final String SCENARIO_PREFIX = "scenario:";
+    private final Map<String, String> config;
+    private final Map<String, String> scenarios = new LinkedHashMap<String, String>();
+
+    /** The result of comparing the current durations for a scenario with its baseline. */
+    public static class Comparison {
+
+        private final long baselineMedian;
+        private final long currentMedian;
+        private final double pValue;
+        private final boolean regression;
+
+        Comparison(long baselineMedian, long currentMedian, double pValue, boolean regression) {
+            this.baselineMedian = baselineMedian;
+            this.currentMedian = currentMedian;
+            this.pValue = pValue;
+            this.regression = regression;
+        }
+
+        public long getBaselineMedian() {
+            return baselineMedian;
+        }
+
+        public long getCurrentMedian() {
+            return currentMedian;
+        }
+
+        /**
+         * @return The probability of seeing current durations at least this much slower than
+         * the baseline if there had been no change.
+         */
+        public double getPValue() {
+            return pValue;
+        }
+
+        public boolean isRegression() {
+            return regression;
+        }
+
+        /**
+         * @return The comparison in the form
+         * {@code |baseline=1200|current=1410|change=17.5%|p=0.0012|REGRESSION|}
+         */
+        @Override
+        public String toString() {
+            double change = baselineMedian == 0 ? 0
+                    : (currentMedian - baselineMedian) * 100.0 / baselineMedian;
+            return String.format("|baseline=%d|current=%d|change=%.1f%%|p=%.4f|%s|",
+                    baselineMedian, currentMedian, change, pValue,
+                    regression ? "REGRESSION" : "OK");
+        }
+    }
+
+    public PerformanceSuite(Map<String, String> config) {
+        this.config = config;
+        for (Map.Entry<String, String> entry : config.entrySet()) {
+            if (entry.getKey().startsWith(SCENARIO_PREFIX)) {
+                scenarios.put(entry.getKey().substring(SCENARIO_PREFIX.length()),
+                        entry.getValue());
+            }
+        }
+    }
+
+    private String getSetting(String name, String defaultValue) {
+        return FixturePool.getSetting(config, name, defaultValue);
+    }
+
+    private File getFitNesseDir() {
+        return new File(getSetting("Suite: FitNesse Dir", "."));
+    }
+
+    /**
+     * Runs the warm up and measured iterations for a scenario.
+     * @param page The page path, optionally followed by ?suite to run a suite. Pages are run
+     * as tests by default.
+     * @return The measured durations in milliseconds.
+     * @throws IOException if FitNesse could not be run or a page failed.
+     */
+    public List<Long> run(String page) throws IOException, InterruptedException {
+        int warmUp = Integer.parseInt(getSetting("Suite: Warm Up", "2"));
+        int iterations = Integer.parseInt(getSetting("Suite: Iterations", "10"));
+        List<Long> result = new ArrayList<Long>();
+        for (int i = 0; i < warmUp + iterations; i++) {
+            long duration = runOnce(page);
+            System.out.println(page + (i < warmUp ? " warm up " : " run ") + (i + 1) + ": "
+                    + duration + " ms");
+            if (i >= warmUp) {
+                result.add(duration);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs the page once with FitNesse in single command mode.
+     * @return The total duration of the pages recorded in the page history by the run.
+     */
+    private long runOnce(String page) throws IOException, InterruptedException {
+        String path = page;
+        String type = "test";
+        int pos = page.indexOf('?');
+        if (pos > 0) {
+            path = page.substring(0, pos);
+            type = page.substring(pos + 1);
+        }
+        File pageLog = new File(getFitNesseDir(), PAGE_LOG_FILE);
+        int exitCode = runFitNesse(config, path + "?" + type, new ArrayList<String>(),
+                "performance-suite-run.log", pageLog);
+
+        long result = 0;
+        int pages = 0;
+        for (String[] fields : readPageLog(pageLog)) {
+            if (fields[0].startsWith(path)) {
+                if (!fields[2].equals("PASS")) {
+                    throw new IOException("Page " + fields[0] + " failed");
+                }
+                result += Long.parseLong(fields[1]);
+                pages++;
+            }
+        }
+        if (pages == 0) {
+            throw new IOException("No pages recorded for " + page + ". FitNesse exit code "
+                    + exitCode);
+        }
+        if (exitCode != 0) {
+            throw new IOException(page + " failed. FitNesse exit code " + exitCode);
+        }
+        return result;
+    }
+
+    /**
+     * Runs a page with FitNesse in single command mode and waits for it to complete. The run is
+     * stopped if it exceeds the {@code Suite: Run Timeout}.
+     * @param config The settings for the FitNesse directory, root, port and run timeout.
+     * @param command The page path followed by the command e.g. {@code FrontPage.StartUp?test}
+     * @param jvmArgs Additional arguments for the FitNesse JVM, such as system properties used
+     * as FitNesse variables.
+     * @param logFile The file in the FitNesse directory to write the FitNesse output to.
+     * @param pageLog The file the fixture writes the {@linkplain PageHistory} of the run to. It
+     * is deleted before the run starts.
+     * @return The exit code of FitNesse, which is the number of pages that failed.
+     */
+    static int runFitNesse(Map<String, String> config, String command, List<String> jvmArgs,
+            String logFile, File pageLog) throws IOException, InterruptedException {
+        File fitNesseDir = new File(FixturePool.getSetting(config, "Suite: FitNesse Dir", "."));
+        List<String> commandLine = new ArrayList<String>();
+        commandLine.add(new File(System.getProperty("java.home"), "bin/java").getPath());
+        commandLine.addAll(jvmArgs);
+        commandLine.add("-jar");
+        commandLine.add("fitnesse.jar");
+        commandLine.add("-p");
+        commandLine.add(FixturePool.getSetting(config, "Suite: Port", "8071"));
+        commandLine.add("-r");
+        commandLine.add(FixturePool.getSetting(config, "Suite: FitNesse Root", "SOLAFitNesse"));
+        commandLine.add("-o");
+        commandLine.add("-c");
+        commandLine.add(command + "&format=text");
+        ProcessBuilder builder = new ProcessBuilder(commandLine);
+        builder.directory(fitNesseDir);
+        builder.redirectErrorStream(true);
+        builder.redirectOutput(new File(fitNesseDir, logFile));
+        pageLog.delete();
+        builder.environment().put(PageHistory.RUN_LOG_VARIABLE, pageLog.getAbsolutePath());
+        final Process process = builder.start();
+        Timer watchdog = new Timer(true);
+        watchdog.schedule(new TimerTask() {
+
+            @Override
+            public void run() {
+                process.destroy();
+            }
+        }, Long.parseLong(FixturePool.getSetting(config, "Suite: Run Timeout", "600")) * 1000);
+        int exitCode = process.waitFor();
+        watchdog.cancel();
+        return exitCode;
+    }
+
+    /**
+     * Reads the pages recorded in a {@linkplain PageHistory} run log.
+     * @return The page path, duration and outcome of each page in the order they were run.
+     */
+    static List<String[]> readPageLog(File pageLog) throws IOException {
+        List<String[]> result = new ArrayList<String[]>();
+        if (!pageLog.exists()) {
+            return result;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(pageLog));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length == 3) {
+                    result.add(fields);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    /**
+     * Compares the current durations with the baseline durations using a one sided
+     * Mann-Whitney U test.
+     * @param baseline The baseline durations.
+     * @param current The current durations.
+     * @param alpha The significance level.
+     * @param minChangePercent The minimum increase in the median duration for a significant
+     * result to be considered a regression.
+     */
+    public static Comparison compare(List<Long> baseline, List<Long> current, double alpha,
+            double minChangePercent) {
+        int n1 = current.size();
+        int n2 = baseline.size();
+        int n = n1 + n2;
+        long[] values = new long[n];
+        boolean[] isCurrent = new boolean[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = i < n1 ? current.get(i) : baseline.get(i - n1);
+            isCurrent[i] = i < n1;
+            order[i] = i;
+        }
+        final long[] sortValues = values;
+        Arrays.sort(order, new Comparator<Integer>() {
+
+            @Override
+            public int compare(Integer a, Integer b) {
+                return sortValues[a] < sortValues[b] ? -1 : sortValues[a] > sortValues[b] ? 1 : 0;
+            }
+        });
+        // Rank the combined samples, giving tied values the average of their ranks
+        double currentRanks = 0;
+        double tieCorrection = 0;
+        int i = 0;
+        while (i < n) {
+            int j = i;
+            while (j + 1 < n && values[order[j + 1]] == values[order[i]]) {
+                j++;
+            }
+            double rank = (i + j + 2) / 2.0;
+            for (int k = i; k <= j; k++) {
+                if (isCurrent[order[k]]) {
+                    currentRanks += rank;
+                }
+            }
+            int ties = j - i + 1;
+            tieCorrection += (double) ties * ties * ties - ties;
+            i = j + 1;
+        }
+        double pValue = 1;
+        if (n1 > 0 && n2 > 0) {
+            double u = currentRanks - n1 * (n1 + 1) / 2.0;
+            double mean = n1 * (double) n2 / 2.0;
+            double variance = n1 * (double) n2 / 12.0
+                    * ((n + 1) - (n > 1 ? tieCorrection / (n * (n - 1.0)) : 0));
+            if (variance > 0) {
+                // Normal approximation with continuity correction
+                double z = (u - mean - 0.5) / Math.sqrt(variance);
+                pValue = 1 - normalCdf(z);
+            }
+        }
+        long baselineMedian = median(baseline);
+        long currentMedian = median(current);
+        boolean regression = pValue < alpha
+                && currentMedian > baselineMedian * (1 + minChangePercent / 100.0);
+        return new Comparison(baselineMedian, currentMedian, pValue, regression);
+    }
+
+    static long median(List<Long> samples) {
+        if (samples.isEmpty()) {
+            return 0;
+        }
+        Long[] sorted = samples.toArray(new Long[samples.size()]);
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+
+    /**
+     * Standard normal cumulative distribution using the Abramowitz and Stegun approximation of
+     * the error function.
+     */
+    static double normalCdf(double z) {
+        double x = Math.abs(z) / Math.sqrt(2);
+        double t = 1 / (1 + 0.3275911 * x);
+        double erf = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741
+                + t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+        return z >= 0 ? (1 + erf) / 2 : (1 - erf) / 2;
+    }
+
+    static File getBaselineFile(String version, String page) {
+        return new File(new File(BASELINE_DIR, version), page.replace('?', '_') + ".txt");
+    }
+
+    static List<Long> readBaseline(File file) throws IOException {
+        List<Long> result = new ArrayList<Long>();
+        if (!file.exists()) {
+            return result;
+        }
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().length() > 0) {
+                    result.add(Long.parseLong(line.trim()));
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return result;
+    }
+
+    static void writeBaseline(File file, List<Long> durations) throws IOException {
+        file.getParentFile().mkdirs();
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+        try {
+            for (Long duration : durations) {
+                writer.write(duration.toString());
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @return The version of the SOLA Desktop on the classpath, taken from the jar manifest or
+     * the jar file name, or "unknown".
+     */
+    static String getDesktopVersion() {
+        Package pkg = DesktopApplication.class.getPackage();
+        if (pkg != null && pkg.getImplementationVersion() != null) {
+            return pkg.getImplementationVersion();
+        }
+        try {
+            String jar = new File(DesktopApplication.class.getProtectionDomain().getCodeSource()
+                    .getLocation().toURI()).getName();
+            if (jar.startsWith("sola-desktop-") && jar.endsWith(".jar")) {
+                return jar.substring("sola-desktop-".length(), jar.length() - ".jar".length());
+            }
+        } catch (Exception ex) {
+            // Fall through to unknown
+        }
+        return "unknown";
+    }
+
+    /**
+     * Runs each scenario, saves the durations as the baseline for the current version and
+     * compares them with the baseline version if one is configured.
+     * @return True if no scenario regressed or failed.
+     */
+    public boolean runAll(String version, String baselineVersion) throws InterruptedException {
+        double alpha = Double.parseDouble(getSetting("Suite: Alpha", "0.01"));
+        double minChange = Double.parseDouble(getSetting("Suite: Min Regression", "10"));
+        boolean result = true;
+        for (Map.Entry<String, String> scenario : scenarios.entrySet()) {
+            String page = scenario.getValue();
+            try {
+                List<Long> baseline = baselineVersion == null ? null
+                        : readBaseline(getBaselineFile(baselineVersion, page));
+                List<Long> current = run(page);
+                writeBaseline(getBaselineFile(version, page), current);
+                if (baseline == null) {
+                    System.out.println(scenario.getKey() + " median " + median(current) + " ms");
+                } else if (baseline.isEmpty()) {
+                    System.out.println(scenario.getKey() + " has no baseline for version "
+                            + baselineVersion);
+                } else {
+                    Comparison comparison = compare(baseline, current, alpha, minChange);
+                    System.out.println(scenario.getKey() + " " + comparison);
+                    result = result && !comparison.isRegression();
+                }
+            } catch (IOException ex) {
+                System.out.println(scenario.getKey() + " FAILED " + ex.getMessage());
+                result = false;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @param args [-config file] [-version v] [-baseline v]. The version defaults to the version
+     * of the SOLA Desktop on the classpath. The baseline version can also be set with the
+     * Suite: Baseline Version setting.
+     */
+    public static void main(String[] args) throws Exception {
+        String configFile = CONFIG_FILE;
+        String version = null;
+        String baselineVersion = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (args[i].equals("-config")) {
+                configFile = args[i + 1];
+            } else if (args[i].equals("-version")) {
+                version = args[i + 1];
+            } else if (args[i].equals("-baseline")) {
+                baselineVersion = args[i + 1];
+            }
+        }
+        Map<String, String> config = FixturePool.readConfig(configFile);
+        if (version == null) {
+            version = FixturePool.getSetting(config, "Suite: Version", getDesktopVersion());
+        }
+        if (baselineVersion == null) {
+            baselineVersion = FixturePool.getSetting(config, "Suite: Baseline Version", null);
+        }
+        System.out.println("Performance suite for version " + version
+                + (baselineVersion == null ? "" : " against baseline " + baselineVersion));
+        boolean passed = new PerformanceSuite(config).runAll(version, baselineVersion);
+        System.exit(passed ? 0 : 1);
+    }
+}
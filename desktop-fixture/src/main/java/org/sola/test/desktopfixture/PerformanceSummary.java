@@ -0,0 +1,109 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+/**
+ * Machine readable summary of the performance results checked by the fixture - steps that have
+ * a budget and named timers. Each result is appended to the file
+ * {@code performance-summary.jsonl} in the working directory as one JSON object per line. e.g.
+ * <pre>
+ * {"time":1414040400000,"page":"FrontPage.LodgeApplication","type":"step","name":"click|Application|Lodge","elapsed":3210,"budget":3000,"status":"FAIL"}
+ * </pre>
+ * <p>The status is PASS or FAIL if the result has a budget, otherwise NONE.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class PerformanceSummary {
+
+    public static final String SUMMARY_FILE = "performance-summary.jsonl";
+    public static final String STEP = "step";
+    public static final String TIMER = "timer";
+    private final File file;
+
+    PerformanceSummary(File file) {
+        this.file = file;
+    }
+
+    private static class PerformanceSummaryHolder {
+
+        public static final PerformanceSummary INSTANCE =
+                new PerformanceSummary(new File(SUMMARY_FILE));
+    }
+
+    public static PerformanceSummary getInstance() {
+        return PerformanceSummaryHolder.INSTANCE;
+    }
+
+    /**
+     * Appends a result to the summary file.
+     * @param page The page the result was obtained on. May be null.
+     * @param type The type of result, {@linkplain #STEP} or {@linkplain #TIMER}.
+     * @param name The step signature or the timer name.
+     * @param elapsedMillis The elapsed time in milliseconds.
+     * @param budgetMillis The budget in milliseconds or null if there is no budget.
+     * @return True if the elapsed time is within the budget or there is no budget.
+     */
+    public synchronized boolean record(String page, String type, String name, long elapsedMillis,
+            Long budgetMillis) {
+        boolean result = budgetMillis == null || elapsedMillis <= budgetMillis;
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
+            writer.write("{\"time\":" + System.currentTimeMillis()
+                    + ",\"page\":" + (page == null ? "null" : "\"" + escape(page) + "\"")
+                    + ",\"type\":\"" + escape(type) + "\",\"name\":\"" + escape(name)
+                    + "\",\"elapsed\":" + elapsedMillis + ",\"budget\":" + budgetMillis
+                    + ",\"status\":\"" + (budgetMillis == null ? "NONE" : result ? "PASS" : "FAIL")
+                    + "\"}");
+            writer.newLine();
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return result;
+    }
+
+    private String escape(String text) {
+        StringBuilder result = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+}
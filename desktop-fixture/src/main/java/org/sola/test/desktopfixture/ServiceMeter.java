@@ -0,0 +1,783 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.Proxy;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.net.URLStreamHandlerFactory;
+import java.security.Permission;
+import java.security.Principal;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.net.ssl.HostnameVerifier;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Meters the web service calls made by the SOLA client and attributes them to the
+ * {@linkplain FixtureStep} in progress when each call starts. The meter installs a
+ * {@linkplain URLStreamHandlerFactory} that wraps the HTTP and HTTPS connections opened in the
+ * JVM, so it measures the traffic of the SOLA web service clients without any change to the
+ * SOLA Desktop. The factory can only be installed once per JVM and only affects the URLs created
+ * after it is installed, so the meter must be installed before SOLA is started.
+ * <p>Each call is identified by its operation - the SOAPAction, the action of a SOAP 1.2
+ * content type or the name of the first element in the SOAP Body. Requests that are not SOAP
+ * calls (e.g. for a WSDL) are identified by the method and path. Calls made by the
+ * {@linkplain ServiceStandIn} when it forwards requests to a SOLA server are not metered.</p>
+ * <p>The usage for each step (see {@linkplain ServiceUsage}) is appended to the file
+ * {@code service-calls.log} in the working directory. Running this class from the command line
+ * reports the average usage for each step from the log with the largest steps first. e.g.
+ * {@code java -cp desktop-fixture.jar org.sola.test.desktopfixture.ServiceMeter}</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class ServiceMeter {
+
+    public static final String LOG_FILE = "service-calls.log";
+    private static final Pattern BODY_OPERATION = Pattern.compile(
+            "<(?:\\w+:)?Body[^>]*>\\s*<(?:\\w+:)?([\\w.-]+)", Pattern.DOTALL);
+    private static final Pattern CONTENT_TYPE_ACTION = Pattern.compile(
+            "action\\s*=\\s*\"?([^\";]+)");
+    /** The number of bytes of each request kept to identify the operation. */
+    private static final int CAPTURE_BYTES = 4096;
+    private final ServiceUsage total = new ServiceUsage();
+    private volatile ServiceUsage current = null;
+    private volatile boolean installed = false;
+
+    ServiceMeter() {
+    }
+
+    private static class ServiceMeterHolder {
+
+        public static final ServiceMeter INSTANCE = new ServiceMeter();
+    }
+
+    public static ServiceMeter getInstance() {
+        return ServiceMeterHolder.INSTANCE;
+    }
+
+    /**
+     * Installs the meter for the JVM if it has not already been installed.
+     * @return True if the meter is installed. False if another
+     * {@linkplain URLStreamHandlerFactory} has already been set for the JVM or neither of the
+     * default HTTP and HTTPS handlers can be created to be wrapped. On JDK 16 and later the
+     * fixture JVM must be run with
+     * {@code --add-exports java.base/sun.net.www.protocol.http=ALL-UNNAMED} (and the same for
+     * {@code sun.net.www.protocol.https}) for the handlers to be created.
+     */
+    public synchronized boolean install() {
+        if (!installed) {
+            final URLStreamHandler http = getDefaultHandler("http");
+            final URLStreamHandler https = getDefaultHandler("https");
+            if (http == null && https == null) {
+                System.out.println("Service meter could not be installed: no handler to meter");
+                return false;
+            }
+            try {
+                URL.setURLStreamHandlerFactory(new URLStreamHandlerFactory() {
+
+                    @Override
+                    public URLStreamHandler createURLStreamHandler(String protocol) {
+                        URLStreamHandler result = null;
+                        if ("http".equals(protocol) && http != null) {
+                            result = new MeteredHandler(http, 80);
+                        } else if ("https".equals(protocol) && https != null) {
+                            result = new MeteredHandler(https, 443);
+                        }
+                        return result;
+                    }
+                });
+                installed = true;
+                System.out.println("Service meter installed");
+            } catch (Error ex) {
+                System.out.println("Service meter could not be installed: " + ex.getMessage());
+            }
+        }
+        return installed;
+    }
+
+    public boolean isInstalled() {
+        return installed;
+    }
+
+    /**
+     * Starts attributing calls to a new step. Calls already in progress remain with the step
+     * they started in.
+     * @return The usage for the step.
+     */
+    public ServiceUsage begin() {
+        ServiceUsage result = new ServiceUsage();
+        current = result;
+        return result;
+    }
+
+    /**
+     * Stops attributing calls to the step. Calls that start after the step has ended (e.g. from
+     * background tasks) are only included in the {@linkplain #getTotal() total}.
+     */
+    public void end(ServiceUsage usage) {
+        if (current == usage) {
+            current = null;
+        }
+    }
+
+    /**
+     * @return The usage for all calls metered in this JVM.
+     */
+    public ServiceUsage getTotal() {
+        return total;
+    }
+
+    private void record(ServiceUsage usage, String operation, long sentBytes,
+            long receivedBytes, long waitNanos) {
+        total.record(operation, sentBytes, receivedBytes, waitNanos);
+        if (usage != null) {
+            usage.record(operation, sentBytes, receivedBytes, waitNanos);
+        }
+    }
+
+    /**
+     * Appends the usage for a step to the {@code service-calls.log}.
+     * @param page The page the step belongs to. May be null.
+     * @param signature The step signature.
+     * @param usage The usage for the step.
+     */
+    public static synchronized void log(String page, String signature, ServiceUsage usage) {
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(new File(LOG_FILE), true));
+            writer.write((page == null ? "" : page) + "\t" + signature + "\t"
+                    + usage.getCallCount() + "\t" + usage.getSentBytes() + "\t"
+                    + usage.getReceivedBytes() + "\t" + usage.getWaitMillis() + "\t"
+                    + usage.getOperationReport());
+            writer.newLine();
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return The handler the JVM uses for the protocol by default or null if it is not
+     * available.
+     */
+    private static URLStreamHandler getDefaultHandler(String protocol) {
+        try {
+            return (URLStreamHandler) Class.forName("sun.net.www.protocol." + protocol
+                    + ".Handler").getDeclaredConstructor().newInstance();
+        } catch (Exception ex) {
+            System.out.println("Service meter cannot meter " + protocol + ": " + ex.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Opens connections using the default handler for the protocol and wraps them with a
+     * {@linkplain MeteredConnection}.
+     */
+    private class MeteredHandler extends URLStreamHandler {
+
+        private final URLStreamHandler base;
+        private final int defaultPort;
+
+        MeteredHandler(URLStreamHandler base, int defaultPort) {
+            this.base = base;
+            this.defaultPort = defaultPort;
+        }
+
+        @Override
+        protected URLConnection openConnection(URL u) throws IOException {
+            return wrap(u, new URL(null, u.toExternalForm(), base).openConnection());
+        }
+
+        @Override
+        protected URLConnection openConnection(URL u, Proxy p) throws IOException {
+            return wrap(u, new URL(null, u.toExternalForm(), base).openConnection(p));
+        }
+
+        @Override
+        protected int getDefaultPort() {
+            return defaultPort;
+        }
+
+        private URLConnection wrap(URL u, URLConnection connection) {
+            if (connection instanceof HttpURLConnection
+                    && !ServiceStandIn.THREAD_NAME.equals(Thread.currentThread().getName())) {
+                return new MeteredConnection(u, (HttpURLConnection) connection, current);
+            }
+            return connection;
+        }
+    }
+
+    /**
+     * Delegates to the connection opened by the default handler and counts the bytes written to
+     * and read from it. The connection extends {@linkplain HttpsURLConnection} so it can be used
+     * for both protocols. The HTTPS methods are ignored or fail if the underlying connection is
+     * not an HTTPS connection.
+     */
+    private class MeteredConnection extends HttpsURLConnection {
+
+        private final HttpURLConnection delegate;
+        private final ServiceUsage usage;
+        private final ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        private String soapAction = null;
+        private String requestContentType = null;
+        private OutputStream out = null;
+        private long sentBytes = 0;
+        private long receivedBytes = 0;
+        private long sentNanos = 0;
+        private long responseNanos = 0;
+        private boolean recorded = false;
+
+        MeteredConnection(URL url, HttpURLConnection delegate, ServiceUsage usage) {
+            super(url);
+            this.delegate = delegate;
+            this.usage = usage;
+        }
+
+        private synchronized void requestSent() {
+            if (sentNanos == 0) {
+                sentNanos = System.nanoTime();
+            }
+        }
+
+        private synchronized void responseReceived() {
+            if (responseNanos == 0) {
+                responseNanos = System.nanoTime();
+            }
+        }
+
+        private synchronized void finish() {
+            if (!recorded && sentNanos != 0) {
+                recorded = true;
+                record(usage, getOperation(), sentBytes, receivedBytes,
+                        responseNanos == 0 ? 0 : responseNanos - sentNanos);
+            }
+        }
+
+        private String getOperation() {
+            String action = soapAction;
+            if ((action == null || action.length() == 0) && requestContentType != null) {
+                Matcher matcher = CONTENT_TYPE_ACTION.matcher(requestContentType);
+                action = matcher.find() ? matcher.group(1) : null;
+            }
+            if (action != null && action.replace("\"", "").trim().length() > 0) {
+                action = action.replace("\"", "").trim();
+                return action.substring(action.lastIndexOf('/') + 1);
+            }
+            Matcher matcher = BODY_OPERATION.matcher(captured.toString());
+            if (matcher.find()) {
+                return matcher.group(1);
+            }
+            return delegate.getRequestMethod() + " " + url.getPath()
+                    + (url.getQuery() == null ? "" : "?" + url.getQuery());
+        }
+
+        private void captureRequestProperty(String key, String value) {
+            if ("SOAPAction".equalsIgnoreCase(key)) {
+                soapAction = value;
+            } else if ("Content-Type".equalsIgnoreCase(key)) {
+                requestContentType = value;
+            }
+        }
+
+        private InputStream meter(InputStream in) {
+            responseReceived();
+            if (in == null) {
+                finish();
+                return null;
+            }
+            return new FilterInputStream(in) {
+
+                @Override
+                public int read() throws IOException {
+                    int result = super.read();
+                    count(result < 0 ? -1 : 1);
+                    return result;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int result = super.read(b, off, len);
+                    count(result);
+                    return result;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    super.close();
+                    finish();
+                }
+
+                private void count(int bytes) {
+                    if (bytes < 0) {
+                        finish();
+                    } else {
+                        synchronized (MeteredConnection.this) {
+                            receivedBytes += bytes;
+                        }
+                    }
+                }
+            };
+        }
+
+        @Override
+        public void connect() throws IOException {
+            delegate.connect();
+        }
+
+        @Override
+        public void disconnect() {
+            finish();
+            delegate.disconnect();
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return delegate.usingProxy();
+        }
+
+        @Override
+        public synchronized OutputStream getOutputStream() throws IOException {
+            if (out == null) {
+                out = new FilterOutputStream(delegate.getOutputStream()) {
+
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                        count(new byte[]{(byte) b}, 0, 1);
+                    }
+
+                    @Override
+                    public void write(byte[] b, int off, int len) throws IOException {
+                        out.write(b, off, len);
+                        count(b, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        requestSent();
+                    }
+
+                    private void count(byte[] b, int off, int len) {
+                        synchronized (MeteredConnection.this) {
+                            sentBytes += len;
+                            int keep = Math.min(len, CAPTURE_BYTES - captured.size());
+                            if (keep > 0) {
+                                captured.write(b, off, keep);
+                            }
+                        }
+                    }
+                };
+            }
+            return out;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            requestSent();
+            try {
+                return meter(delegate.getInputStream());
+            } catch (IOException ex) {
+                responseReceived();
+                throw ex;
+            }
+        }
+
+        @Override
+        public InputStream getErrorStream() {
+            requestSent();
+            return meter(delegate.getErrorStream());
+        }
+
+        @Override
+        public int getResponseCode() throws IOException {
+            requestSent();
+            int result = delegate.getResponseCode();
+            responseReceived();
+            return result;
+        }
+
+        @Override
+        public String getResponseMessage() throws IOException {
+            requestSent();
+            String result = delegate.getResponseMessage();
+            responseReceived();
+            return result;
+        }
+
+        @Override
+        public String getHeaderField(String name) {
+            requestSent();
+            String result = delegate.getHeaderField(name);
+            responseReceived();
+            return result;
+        }
+
+        @Override
+        public String getHeaderField(int n) {
+            requestSent();
+            String result = delegate.getHeaderField(n);
+            responseReceived();
+            return result;
+        }
+
+        @Override
+        public String getHeaderFieldKey(int n) {
+            requestSent();
+            String result = delegate.getHeaderFieldKey(n);
+            responseReceived();
+            return result;
+        }
+
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            requestSent();
+            Map<String, List<String>> result = delegate.getHeaderFields();
+            responseReceived();
+            return result;
+        }
+
+        @Override
+        public long getHeaderFieldDate(String name, long defaultValue) {
+            return delegate.getHeaderFieldDate(name, defaultValue);
+        }
+
+        @Override
+        public int getHeaderFieldInt(String name, int defaultValue) {
+            return delegate.getHeaderFieldInt(name, defaultValue);
+        }
+
+        @Override
+        public long getHeaderFieldLong(String name, long defaultValue) {
+            return delegate.getHeaderFieldLong(name, defaultValue);
+        }
+
+        @Override
+        public String getContentType() {
+            return getHeaderField("content-type");
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return getHeaderField("content-encoding");
+        }
+
+        @Override
+        public int getContentLength() {
+            return delegate.getContentLength();
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return delegate.getContentLengthLong();
+        }
+
+        @Override
+        public long getDate() {
+            return delegate.getDate();
+        }
+
+        @Override
+        public long getExpiration() {
+            return delegate.getExpiration();
+        }
+
+        @Override
+        public long getLastModified() {
+            return delegate.getLastModified();
+        }
+
+        @Override
+        public void setRequestMethod(String method) throws java.net.ProtocolException {
+            delegate.setRequestMethod(method);
+        }
+
+        @Override
+        public String getRequestMethod() {
+            return delegate.getRequestMethod();
+        }
+
+        @Override
+        public void setRequestProperty(String key, String value) {
+            delegate.setRequestProperty(key, value);
+            captureRequestProperty(key, value);
+        }
+
+        @Override
+        public void addRequestProperty(String key, String value) {
+            delegate.addRequestProperty(key, value);
+            captureRequestProperty(key, value);
+        }
+
+        @Override
+        public String getRequestProperty(String key) {
+            return delegate.getRequestProperty(key);
+        }
+
+        @Override
+        public Map<String, List<String>> getRequestProperties() {
+            return delegate.getRequestProperties();
+        }
+
+        @Override
+        public void setDoInput(boolean doinput) {
+            delegate.setDoInput(doinput);
+        }
+
+        @Override
+        public boolean getDoInput() {
+            return delegate.getDoInput();
+        }
+
+        @Override
+        public void setDoOutput(boolean dooutput) {
+            delegate.setDoOutput(dooutput);
+        }
+
+        @Override
+        public boolean getDoOutput() {
+            return delegate.getDoOutput();
+        }
+
+        @Override
+        public void setUseCaches(boolean usecaches) {
+            delegate.setUseCaches(usecaches);
+        }
+
+        @Override
+        public boolean getUseCaches() {
+            return delegate.getUseCaches();
+        }
+
+        @Override
+        public void setAllowUserInteraction(boolean allowuserinteraction) {
+            delegate.setAllowUserInteraction(allowuserinteraction);
+        }
+
+        @Override
+        public boolean getAllowUserInteraction() {
+            return delegate.getAllowUserInteraction();
+        }
+
+        @Override
+        public void setIfModifiedSince(long ifmodifiedsince) {
+            delegate.setIfModifiedSince(ifmodifiedsince);
+        }
+
+        @Override
+        public long getIfModifiedSince() {
+            return delegate.getIfModifiedSince();
+        }
+
+        @Override
+        public void setConnectTimeout(int timeout) {
+            delegate.setConnectTimeout(timeout);
+        }
+
+        @Override
+        public int getConnectTimeout() {
+            return delegate.getConnectTimeout();
+        }
+
+        @Override
+        public void setReadTimeout(int timeout) {
+            delegate.setReadTimeout(timeout);
+        }
+
+        @Override
+        public int getReadTimeout() {
+            return delegate.getReadTimeout();
+        }
+
+        @Override
+        public void setChunkedStreamingMode(int chunklen) {
+            delegate.setChunkedStreamingMode(chunklen);
+        }
+
+        @Override
+        public void setFixedLengthStreamingMode(int contentLength) {
+            delegate.setFixedLengthStreamingMode(contentLength);
+        }
+
+        @Override
+        public void setFixedLengthStreamingMode(long contentLength) {
+            delegate.setFixedLengthStreamingMode(contentLength);
+        }
+
+        @Override
+        public void setInstanceFollowRedirects(boolean followRedirects) {
+            delegate.setInstanceFollowRedirects(followRedirects);
+        }
+
+        @Override
+        public boolean getInstanceFollowRedirects() {
+            return delegate.getInstanceFollowRedirects();
+        }
+
+        @Override
+        public Permission getPermission() throws IOException {
+            return delegate.getPermission();
+        }
+
+        @Override
+        public String getCipherSuite() {
+            return https().getCipherSuite();
+        }
+
+        @Override
+        public Certificate[] getLocalCertificates() {
+            return https().getLocalCertificates();
+        }
+
+        @Override
+        public Certificate[] getServerCertificates() throws SSLPeerUnverifiedException {
+            return https().getServerCertificates();
+        }
+
+        @Override
+        public Principal getPeerPrincipal() throws SSLPeerUnverifiedException {
+            return https().getPeerPrincipal();
+        }
+
+        @Override
+        public Principal getLocalPrincipal() {
+            return https().getLocalPrincipal();
+        }
+
+        @Override
+        public void setHostnameVerifier(HostnameVerifier v) {
+            if (delegate instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) delegate).setHostnameVerifier(v);
+            }
+        }
+
+        @Override
+        public HostnameVerifier getHostnameVerifier() {
+            return delegate instanceof HttpsURLConnection
+                    ? ((HttpsURLConnection) delegate).getHostnameVerifier()
+                    : super.getHostnameVerifier();
+        }
+
+        @Override
+        public void setSSLSocketFactory(SSLSocketFactory sf) {
+            if (delegate instanceof HttpsURLConnection) {
+                ((HttpsURLConnection) delegate).setSSLSocketFactory(sf);
+            }
+        }
+
+        @Override
+        public SSLSocketFactory getSSLSocketFactory() {
+            return delegate instanceof HttpsURLConnection
+                    ? ((HttpsURLConnection) delegate).getSSLSocketFactory()
+                    : super.getSSLSocketFactory();
+        }
+
+        private HttpsURLConnection https() {
+            if (delegate instanceof HttpsURLConnection) {
+                return (HttpsURLConnection) delegate;
+            }
+            throw new IllegalStateException("Not an HTTPS connection " + url);
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+
+    /**
+     * Reports the average usage for each step in the log with the steps that transfer the most
+     * bytes first. The log file can be given as the first argument.
+     */
+    public static void main(String[] args) throws IOException {
+        File logFile = new File(args.length > 0 ? args[0] : LOG_FILE);
+        final Map<String, long[]> steps = new TreeMap<String, long[]>();
+        BufferedReader reader = new BufferedReader(new FileReader(logFile));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t");
+                if (fields.length < 6) {
+                    continue;
+                }
+                long[] values = steps.get(fields[1]);
+                if (values == null) {
+                    values = new long[5];
+                    steps.put(fields[1], values);
+                }
+                values[0]++;
+                for (int i = 1; i < 5; i++) {
+                    values[i] += Long.parseLong(fields[i + 1]);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        List<String> order = new ArrayList<String>(steps.keySet());
+        Collections.sort(order, new Comparator<String>() {
+
+            @Override
+            public int compare(String a, String b) {
+                long bytesA = steps.get(a)[2] + steps.get(a)[3];
+                long bytesB = steps.get(b)[2] + steps.get(b)[3];
+                return bytesA == bytesB ? a.compareTo(b) : (bytesA < bytesB ? 1 : -1);
+            }
+        });
+        System.out.println("# step\truns\tcalls\tsent\treceived\twait (averages per run)");
+        for (String step : order) {
+            long[] values = steps.get(step);
+            System.out.println(step + "\t" + values[0] + "\t" + values[1] / values[0] + "\t"
+                    + values[2] / values[0] + "\t" + values[3] / values[0] + "\t"
+                    + values[4] / values[0]);
+        }
+    }
+}
@@ -0,0 +1,563 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Local stand-in for the SOLA web services. The SOLA Desktop can be pointed at the stand-in
+ * instead of a SOLA server so the cost of each client step can be measured without the network,
+ * the server or the database.
+ * <p>Each request is identified by its operation - the SOAPAction or the name of the first
+ * element in the SOAP Body for a POST, or the path and query for a GET (e.g. a WSDL or XSD).
+ * The response is the file in the responses directory named after the operation (see
+ * {@linkplain #getResponseFile(String)}). If there is no response file and a target server has
+ * been set, the request is forwarded to the target and the response is recorded to the responses
+ * directory so that it can be replayed in later runs. References to the target server in the
+ * recorded response (e.g. the soap:address of a WSDL) are replaced with the stand-in address.
+ * Only text responses (e.g. XML, HTML or JSON) are rewritten. Binary responses are recorded
+ * unchanged. The response headers from the target (e.g. Set-Cookie) are passed through to the
+ * client and recorded to a {@code .headers} file next to the response so they are replayed
+ * too.</p>
+ * <p>Each operation can be given a profile that adds latency, random jitter and padding to the
+ * response. A bandwidth limit in kilobits per second can also be set to simulate a slow WAN.
+ * Profiles can be loaded from a properties file in the form
+ * {@code operation=latency,jitter,padding} where latency and jitter are in milliseconds and
+ * padding is the number of bytes to add to the response. The operation {@code *} sets the
+ * default profile.</p>
+ * <p>The stand-in can also be run from the command line. e.g.
+ * {@code java -cp desktop-fixture.jar org.sola.test.desktopfixture.ServiceStandIn -port 8080
+ * -responses responses -target http://solaserver:8080 -profiles standin.properties
+ * -bandwidth 256}</p>
+ * @author soladev
+ */
+public class ServiceStandIn {
+
+    /** The operation used to set the default profile. */
+    public static final String DEFAULT_OPERATION = "*";
+    /** The name of the threads that serve requests. */
+    public static final String THREAD_NAME = "Service Stand-In";
+    private static final Pattern BODY_OPERATION = Pattern.compile(
+            "<(?:\\w+:)?Body[^>]*>\\s*<(?:\\w+:)?([\\w.-]+)", Pattern.DOTALL);
+    private static final Pattern CHARSET = Pattern.compile("charset=\"?([\\w.:-]+)",
+            Pattern.CASE_INSENSITIVE);
+    /** Headers that are set by the HTTP server for each response rather than passed through. */
+    private static final List<String> SERVER_HEADERS = Arrays.asList("content-length",
+            "transfer-encoding", "connection", "keep-alive", "date");
+    private final int port;
+    private final File responseDir;
+    private final Map<String, OperationProfile> profiles =
+            new ConcurrentHashMap<String, OperationProfile>();
+    private final ConcurrentMap<String, AtomicInteger> callCounts =
+            new ConcurrentHashMap<String, AtomicInteger>();
+    private final Random random = new Random();
+    private volatile String target;
+    private volatile int bandwidthKbps = 0;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * The latency, jitter and padding applied to the responses for an operation.
+     */
+    public static class OperationProfile {
+
+        private final long latency;
+        private final long jitter;
+        private final int padding;
+
+        public OperationProfile(long latency, long jitter, int padding) {
+            this.latency = latency;
+            this.jitter = jitter;
+            this.padding = padding;
+        }
+
+        /**
+         * Parses a profile in the form latency[,jitter[,padding]].
+         */
+        public static OperationProfile valueOf(String profile) {
+            String[] parts = profile.split(",");
+            return new OperationProfile(parse(parts, 0), parse(parts, 1), (int) parse(parts, 2));
+        }
+
+        private static long parse(String[] parts, int index) {
+            return index < parts.length && parts[index].trim().length() > 0
+                    ? Long.parseLong(parts[index].trim()) : 0;
+        }
+
+        public long getLatency() {
+            return latency;
+        }
+
+        public long getJitter() {
+            return jitter;
+        }
+
+        public int getPadding() {
+            return padding;
+        }
+    }
+
+    /**
+     * @param port The port to listen on. Use 0 to listen on any free port.
+     * @param responseDir The directory holding the canned or recorded responses.
+     */
+    public ServiceStandIn(int port, File responseDir) {
+        this.port = port;
+        this.responseDir = responseDir;
+    }
+
+    /**
+     * Sets the server to forward requests to if there is no response file for the operation.
+     * The responses from the server are recorded in the responses directory.
+     * @param target The base URL of the SOLA server e.g. http://solaserver:8080 or null to
+     * disable forwarding.
+     */
+    public void setTarget(String target) {
+        this.target = target == null || target.trim().length() == 0 ? null
+                : target.trim().replaceAll("/+$", "");
+    }
+
+    /**
+     * @param bandwidthKbps The maximum rate responses are sent at in kilobits per second or 0
+     * for no limit.
+     */
+    public void setBandwidth(int bandwidthKbps) {
+        this.bandwidthKbps = Math.max(0, bandwidthKbps);
+    }
+
+    public void setProfile(String operation, OperationProfile profile) {
+        profiles.put(operation.toLowerCase(), profile);
+    }
+
+    /**
+     * Loads the operation profiles from a properties file.
+     */
+    public void loadProfiles(File file) throws IOException {
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        for (String operation : props.stringPropertyNames()) {
+            setProfile(operation, OperationProfile.valueOf(props.getProperty(operation)));
+        }
+    }
+
+    /**
+     * @return The profile for the operation, the default profile if the operation does not have
+     * a profile or null if there is no default profile.
+     */
+    public OperationProfile getProfile(String operation) {
+        OperationProfile result = profiles.get(operation.toLowerCase());
+        return result == null ? profiles.get(DEFAULT_OPERATION) : result;
+    }
+
+    /**
+     * @return The number of requests served for each operation since the stand-in started.
+     */
+    public Map<String, Integer> getCallCounts() {
+        Map<String, Integer> result = new TreeMap<String, Integer>();
+        for (Map.Entry<String, AtomicInteger> entry : callCounts.entrySet()) {
+            result.put(entry.getKey(), entry.getValue().get());
+        }
+        return result;
+    }
+
+    /**
+     * @return The base URL of the stand-in e.g. http://localhost:8080
+     */
+    public String getAddress() {
+        return "http://localhost:" + getPort();
+    }
+
+    public int getPort() {
+        return server == null ? port : server.getAddress().getPort();
+    }
+
+    public synchronized void start() throws IOException {
+        if (server != null) {
+            return;
+        }
+        responseDir.mkdirs();
+        server = HttpServer.create(new InetSocketAddress(port), 0);
+        server.createContext("/", new HttpHandler() {
+
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                try {
+                    serve(exchange);
+                } catch (IOException ex) {
+                    System.out.println("Service stand-in failed to serve "
+                            + exchange.getRequestURI() + ": " + ex.getMessage());
+                    throw ex;
+                } finally {
+                    exchange.close();
+                }
+            }
+        });
+        executor = Executors.newCachedThreadPool(new ThreadFactory() {
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, THREAD_NAME);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+        System.out.println("Service stand-in listening at " + getAddress()
+                + " using responses from " + responseDir.getAbsolutePath()
+                + (target == null ? "" : " and recording from " + target));
+    }
+
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            server = null;
+            executor = null;
+        }
+    }
+
+    /**
+     * @return The file holding the response for the operation. Characters that are not valid in
+     * a file name are replaced with _.
+     */
+    public File getResponseFile(String operation) {
+        return new File(responseDir, operation.replaceAll("[^\\w.-]", "_") + ".xml");
+    }
+
+    /**
+     * Determines the operation for the request. For a POST, this is the SOAPAction if it is set or
+     * the name of the first element in the SOAP Body. For other requests it is the method, path
+     * and query.
+     */
+    static String getOperation(String method, String path, String query, String soapAction,
+            byte[] body) throws IOException {
+        String result = null;
+        if ("POST".equalsIgnoreCase(method)) {
+            if (soapAction != null && soapAction.replace("\"", "").trim().length() > 0) {
+                String action = soapAction.replace("\"", "").trim();
+                result = action.substring(Math.max(action.lastIndexOf('/'),
+                        action.lastIndexOf('#')) + 1);
+            } else {
+                Matcher matcher = BODY_OPERATION.matcher(new String(body, "UTF-8"));
+                result = matcher.find() ? matcher.group(1) : null;
+            }
+        }
+        if (result == null || result.length() == 0) {
+            result = method + path + (query == null ? "" : "?" + query);
+        }
+        return result;
+    }
+
+    private void serve(HttpExchange exchange) throws IOException {
+        long start = System.currentTimeMillis();
+        String method = exchange.getRequestMethod();
+        byte[] requestBody = read(exchange.getRequestBody());
+        String operation = getOperation(method, exchange.getRequestURI().getPath(),
+                exchange.getRequestURI().getRawQuery(),
+                exchange.getRequestHeaders().getFirst("SOAPAction"), requestBody);
+        callCounts.putIfAbsent(operation, new AtomicInteger());
+        callCounts.get(operation).incrementAndGet();
+
+        int status = 200;
+        String contentType = "text/xml; charset=utf-8";
+        Map<String, List<String>> headers = new TreeMap<String, List<String>>(
+                String.CASE_INSENSITIVE_ORDER);
+        byte[] response;
+        File file = getResponseFile(operation);
+        if (file.exists()) {
+            response = read(new FileInputStream(file));
+            readHeaders(getHeadersFile(file), headers);
+        } else if (target != null) {
+            HttpURLConnection conn = (HttpURLConnection) new URL(target
+                    + exchange.getRequestURI().toString()).openConnection();
+            conn.setRequestMethod(method);
+            for (String header : Arrays.asList("Content-Type", "SOAPAction", "Cookie",
+                    "Authorization")) {
+                String value = exchange.getRequestHeaders().getFirst(header);
+                if (value != null) {
+                    conn.setRequestProperty(header, value);
+                }
+            }
+            if (requestBody.length > 0) {
+                conn.setDoOutput(true);
+                OutputStream out = conn.getOutputStream();
+                try {
+                    out.write(requestBody);
+                } finally {
+                    out.close();
+                }
+            }
+            status = conn.getResponseCode();
+            for (Map.Entry<String, List<String>> header : conn.getHeaderFields().entrySet()) {
+                // The null key holds the status line
+                if (header.getKey() != null
+                        && !SERVER_HEADERS.contains(header.getKey().toLowerCase())) {
+                    headers.put(header.getKey(), new ArrayList<String>(header.getValue()));
+                }
+            }
+            InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            response = in == null ? new byte[0] : read(in);
+            String responseType = conn.getContentType();
+            if (responseType == null || isText(responseType)) {
+                String charset = getCharset(responseType);
+                response = new String(response, charset).replace(target, getAddress())
+                        .getBytes(charset);
+            }
+            if (status < 400) {
+                FileOutputStream out = new FileOutputStream(file);
+                try {
+                    out.write(response);
+                } finally {
+                    out.close();
+                }
+                writeHeaders(getHeadersFile(file), headers);
+                System.out.println("Service stand-in recorded " + operation);
+            }
+        } else {
+            status = 404;
+            response = ("No response recorded for " + operation).getBytes("UTF-8");
+            System.out.println("Service stand-in has no response for " + operation);
+        }
+
+        OperationProfile profile = getProfile(operation);
+        if (profile != null) {
+            if (profile.getPadding() > 0) {
+                response = pad(response, profile.getPadding());
+            }
+            long delay = profile.getLatency() + (profile.getJitter() > 0
+                    ? (long) (random.nextDouble() * profile.getJitter()) : 0);
+            delay -= System.currentTimeMillis() - start;
+            if (delay > 0) {
+                sleep(delay);
+            }
+        }
+
+        exchange.getResponseHeaders().putAll(headers);
+        if (!headers.containsKey("Content-Type")) {
+            exchange.getResponseHeaders().set("Content-Type", contentType);
+        }
+        exchange.sendResponseHeaders(status, response.length == 0 ? -1 : response.length);
+        if (response.length > 0) {
+            write(exchange.getResponseBody(), response);
+        }
+    }
+
+    /**
+     * @return True if the content type is a text type that can be rewritten.
+     */
+    static boolean isText(String contentType) {
+        String type = contentType.toLowerCase();
+        return type.startsWith("text/") || type.contains("xml") || type.contains("json")
+                || type.contains("javascript") || type.contains("html");
+    }
+
+    /**
+     * @return The charset of the content type or UTF-8 if the content type does not have one.
+     */
+    static String getCharset(String contentType) {
+        Matcher matcher = CHARSET.matcher(contentType == null ? "" : contentType);
+        return matcher.find() ? matcher.group(1) : "UTF-8";
+    }
+
+    private File getHeadersFile(File responseFile) {
+        return new File(responseFile.getPath() + ".headers");
+    }
+
+    /**
+     * Reads the recorded response headers. Each line holds one header value in the form
+     * {@code name: value}.
+     */
+    private void readHeaders(File file, Map<String, List<String>> headers) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int pos = line.indexOf(':');
+                if (pos > 0) {
+                    String name = line.substring(0, pos).trim();
+                    if (!headers.containsKey(name)) {
+                        headers.put(name, new ArrayList<String>());
+                    }
+                    headers.get(name).add(line.substring(pos + 1).trim());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void writeHeaders(File file, Map<String, List<String>> headers) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), "UTF-8"));
+        try {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                for (String value : header.getValue()) {
+                    writer.write(header.getKey() + ": " + value);
+                    writer.newLine();
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Adds an XML comment to the end of the response so that the response is larger by the
+     * number of bytes in padding. Comments are permitted after the root element so the
+     * response is still valid XML.
+     */
+    private byte[] pad(byte[] response, int padding) {
+        int fill = Math.max(0, padding - 7);
+        byte[] result = Arrays.copyOf(response, response.length + fill + 7);
+        int pos = response.length;
+        for (byte b : new byte[]{'<', '!', '-', '-'}) {
+            result[pos++] = b;
+        }
+        Arrays.fill(result, pos, pos + fill, (byte) 'x');
+        pos += fill;
+        for (byte b : new byte[]{'-', '-', '>'}) {
+            result[pos++] = b;
+        }
+        return result;
+    }
+
+    /**
+     * Writes the response, limiting the rate if a bandwidth has been set.
+     */
+    private void write(OutputStream out, byte[] response) throws IOException {
+        // Kilobits per second to bytes per second
+        long bytesPerSecond = bandwidthKbps * 1000L / 8;
+        int chunk = bandwidthKbps > 0 ? (int) Math.max(1, bytesPerSecond / 10) : response.length;
+        for (int pos = 0; pos < response.length; pos += chunk) {
+            int len = Math.min(chunk, response.length - pos);
+            out.write(response, pos, len);
+            out.flush();
+            if (bandwidthKbps > 0) {
+                sleep(len * 1000L / bytesPerSecond);
+            }
+        }
+        out.close();
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            byte[] bytes = new byte[8192];
+            int len;
+            while ((len = in.read(bytes)) >= 0) {
+                buffer.write(bytes, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * Runs the stand-in until the process is stopped.
+     * @param args -port n, -responses dir, -target url, -profiles file and -bandwidth kbps. All
+     * are optional.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = 8080;
+        String responses = "responses";
+        String target = null;
+        String profiles = null;
+        int bandwidth = 0;
+        for (int i = 0; i < args.length - 1; i += 2) {
+            if (args[i].equals("-port")) {
+                port = Integer.parseInt(args[i + 1]);
+            } else if (args[i].equals("-responses")) {
+                responses = args[i + 1];
+            } else if (args[i].equals("-target")) {
+                target = args[i + 1];
+            } else if (args[i].equals("-profiles")) {
+                profiles = args[i + 1];
+            } else if (args[i].equals("-bandwidth")) {
+                bandwidth = Integer.parseInt(args[i + 1]);
+            }
+        }
+        ServiceStandIn standIn = new ServiceStandIn(port, new File(responses));
+        standIn.setTarget(target);
+        standIn.setBandwidth(bandwidth);
+        if (profiles != null) {
+            standIn.loadProfiles(new File(profiles));
+        }
+        standIn.start();
+        Thread.currentThread().join();
+    }
+}
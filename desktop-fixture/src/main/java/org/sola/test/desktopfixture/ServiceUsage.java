@@ -0,0 +1,126 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The web service calls made by the SOLA client during a step, as measured by the
+ * {@linkplain ServiceMeter}. For each operation, the number of calls, the bytes sent and
+ * received and the time spent waiting for the response are totalled. The bytes are the payload
+ * of the HTTP requests and responses as sent over the network (i.e. before any decompression)
+ * excluding the HTTP headers. The wait time is measured from when the request has been sent to
+ * when the response headers are received, so it includes the network round trip as well as the
+ * time taken by the server.
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class ServiceUsage {
+
+    private final Map<String, long[]> operations = new TreeMap<String, long[]>();
+    private final long[] total = new long[4];
+
+    ServiceUsage() {
+    }
+
+    /**
+     * Adds a call to the usage.
+     * @param operation The operation called.
+     * @param sentBytes The bytes sent in the request.
+     * @param receivedBytes The bytes received in the response.
+     * @param waitNanos The time spent waiting for the response.
+     */
+    synchronized void record(String operation, long sentBytes, long receivedBytes,
+            long waitNanos) {
+        long[] values = operations.get(operation);
+        if (values == null) {
+            values = new long[4];
+            operations.put(operation, values);
+        }
+        for (long[] target : new long[][]{values, total}) {
+            target[0]++;
+            target[1] += sentBytes;
+            target[2] += receivedBytes;
+            target[3] += waitNanos;
+        }
+    }
+
+    public synchronized long getCallCount() {
+        return total[0];
+    }
+
+    public synchronized long getSentBytes() {
+        return total[1];
+    }
+
+    public synchronized long getReceivedBytes() {
+        return total[2];
+    }
+
+    public synchronized long getWaitMillis() {
+        return total[3] / 1000000L;
+    }
+
+    /**
+     * @return The number of calls made to each operation.
+     */
+    public synchronized Map<String, Long> getCallCounts() {
+        Map<String, Long> result = new TreeMap<String, Long>();
+        for (Map.Entry<String, long[]> entry : operations.entrySet()) {
+            result.put(entry.getKey(), entry.getValue()[0]);
+        }
+        return result;
+    }
+
+    /**
+     * @return The usage for each operation in the form
+     * {@code |getApplication=2/1840/96512/310|saveApplication=1/20480/22016/1250|} where the
+     * values are calls/bytes sent/bytes received/wait milliseconds.
+     */
+    public synchronized String getOperationReport() {
+        StringBuilder result = new StringBuilder("|");
+        for (Map.Entry<String, long[]> entry : operations.entrySet()) {
+            long[] values = entry.getValue();
+            result.append(entry.getKey()).append('=').append(values[0]).append('/')
+                    .append(values[1]).append('/').append(values[2]).append('/')
+                    .append(values[3] / 1000000L).append('|');
+        }
+        return result.toString();
+    }
+
+    /**
+     * @return The usage in the form {@code |calls=14|sent=184320|received=2411724|wait=1860|}
+     */
+    @Override
+    public synchronized String toString() {
+        return "|calls=" + total[0] + "|sent=" + total[1] + "|received=" + total[2]
+                + "|wait=" + total[3] / 1000000L + "|";
+    }
+}
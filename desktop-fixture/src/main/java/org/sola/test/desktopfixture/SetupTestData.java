@@ -162,4 +162,25 @@ public class SetupTestData {
         testMan.loadTestDataItem(field, value, true, action, actionExt);
         return true; 
     }
+
+    /// <summary>
+    /// Starts a test data scope. Data items loaded until the scope ends are discarded when 
+    /// the scope ends, so nested scripts and data driven iterations do not leave their values 
+    /// behind. Each page already runs in its own page scope. 
+    /// </summary>
+    /// <param name="scope">The name of the scope. e.g. suite, step or the name of an iteration.</param>
+    /// <example>Fitnesse Usage: <c>|Start Scope|Iteration|</c> ... <c>|End Scope|Iteration|</c></example>
+    public boolean startScope(String scope) {
+        testMan.enterScope(scope.trim().toLowerCase());
+        return true;
+    }
+
+    /// <summary>
+    /// Ends a test data scope and any scopes started within it. 
+    /// </summary>
+    /// <param name="scope">The name of the scope to end.</param>
+    /// <returns>True if the scope was found.</returns>
+    public boolean endScope(String scope) {
+        return testMan.exitScope(scope.trim().toLowerCase());
+    }
 }
@@ -0,0 +1,277 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.awt.EventQueue;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The CPU time and memory allocated by the fixture thread and the Swing event dispatch thread
+ * (EDT) during a step, along with the garbage collections that occurred during the step. This
+ * separates steps that are slow because of work done by the SOLA client from steps that are slow
+ * because they wait on the server.
+ * <p>Threads started by the fixture to run part of a step (e.g. the {@linkplain WindowWatcher}
+ * trigger thread that runs the click which opens a window) report their CPU time and allocation
+ * to the step using {@linkplain #track()} and are reported as other threads.</p>
+ * <p>CPU time and allocation are read from the JVM per-thread counters. Allocation is only
+ * available on JVMs that support {@code com.sun.management.ThreadMXBean}, otherwise it is
+ * reported as -1. Garbage collection is not attributed to individual threads, so all
+ * collections that completed while the step was running are counted against the step.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class StepCost {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static volatile Thread edt = null;
+    private final Thread fixtureThread;
+    private final Thread edtThread;
+    private final long startNanos;
+    private final long[] start;
+    private long[] delta = null;
+    private long wallMillis = 0;
+    private static volatile StepCost active = null;
+    private final Map<Thread, long[]> tracked = new HashMap<Thread, long[]>();
+    private final long[] other = new long[2];
+
+    private StepCost() {
+        fixtureThread = Thread.currentThread();
+        edtThread = getEdt();
+        startNanos = System.nanoTime();
+        start = sample();
+        active = this;
+    }
+
+    /**
+     * Starts accounting for a step on the current thread.
+     */
+    public static StepCost start() {
+        return new StepCost();
+    }
+
+    /**
+     * Ends the accounting for the step. Must be called on the same thread as {@link #start()}.
+     */
+    public void end() {
+        long[] end = sample();
+        synchronized (this) {
+            delta = new long[start.length];
+            for (int i = 0; i < start.length; i++) {
+                delta[i] = start[i] < 0 || end[i] < 0 ? -1 : end[i] - start[i];
+            }
+            // Threads still running part of the step are sampled as they are now
+            for (Map.Entry<Thread, long[]> entry : tracked.entrySet()) {
+                addOther(entry.getValue(), new long[]{cpuTime(entry.getKey()),
+                            allocatedBytes(entry.getKey())});
+            }
+            tracked.clear();
+        }
+        wallMillis = (System.nanoTime() - startNanos) / 1000000L;
+        if (active == this) {
+            active = null;
+        }
+    }
+
+    /**
+     * @return The cost of the step in progress or null if no step is in progress.
+     */
+    public static StepCost getActive() {
+        return active;
+    }
+
+    /**
+     * Starts accounting for the current thread as part of this step. Call
+     * {@linkplain #untrack()} on the same thread once its part of the step is complete. If the
+     * step ends first, the thread is accounted up to the end of the step.
+     */
+    public synchronized void track() {
+        if (!isEnded()) {
+            Thread thread = Thread.currentThread();
+            tracked.put(thread, new long[]{cpuTime(thread), allocatedBytes(thread)});
+        }
+    }
+
+    /**
+     * Adds the CPU time and allocation of the current thread since {@linkplain #track()} to
+     * the step.
+     */
+    public synchronized void untrack() {
+        Thread thread = Thread.currentThread();
+        long[] trackStart = tracked.remove(thread);
+        if (trackStart != null) {
+            addOther(trackStart, new long[]{cpuTime(thread), allocatedBytes(thread)});
+        }
+    }
+
+    private void addOther(long[] from, long[] to) {
+        for (int i = 0; i < other.length; i++) {
+            if (from[i] >= 0 && to[i] >= 0) {
+                other[i] += to[i] - from[i];
+            }
+        }
+    }
+
+    public boolean isEnded() {
+        return delta != null;
+    }
+
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    /** @return The CPU time used by the fixture thread in milliseconds or -1. */
+    public long getFixtureCpuMillis() {
+        return toMillis(get(0));
+    }
+
+    /** @return The CPU time used by the EDT in milliseconds or -1. */
+    public long getEdtCpuMillis() {
+        return toMillis(get(1));
+    }
+
+    /** @return The bytes allocated by the fixture thread or -1. */
+    public long getFixtureAllocatedBytes() {
+        return get(2);
+    }
+
+    /** @return The bytes allocated by the EDT or -1. */
+    public long getEdtAllocatedBytes() {
+        return get(3);
+    }
+
+    /** @return The CPU time used by other threads running part of the step in milliseconds. */
+    public synchronized long getOtherCpuMillis() {
+        return toMillis(other[0]);
+    }
+
+    /** @return The bytes allocated by other threads running part of the step. */
+    public synchronized long getOtherAllocatedBytes() {
+        return other[1];
+    }
+
+    public long getGcCount() {
+        return get(4);
+    }
+
+    public long getGcMillis() {
+        return get(5);
+    }
+
+    private long get(int index) {
+        return delta == null ? -1 : delta[index];
+    }
+
+    private static long toMillis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1000000L;
+    }
+
+    /**
+     * @return The cost in the form
+     * {@code |wall=850|fixtureCpu=5|edtCpu=610|otherCpu=240|fixtureAlloc=10240|}
+     * {@code edtAlloc=412000000|otherAlloc=96000000|gcCount=3|gcMillis=95|}
+     */
+    @Override
+    public String toString() {
+        return "|wall=" + wallMillis + "|fixtureCpu=" + getFixtureCpuMillis()
+                + "|edtCpu=" + getEdtCpuMillis() + "|otherCpu=" + getOtherCpuMillis()
+                + "|fixtureAlloc=" + getFixtureAllocatedBytes()
+                + "|edtAlloc=" + getEdtAllocatedBytes() + "|otherAlloc="
+                + getOtherAllocatedBytes() + "|gcCount=" + getGcCount()
+                + "|gcMillis=" + getGcMillis() + "|";
+    }
+
+    private long[] sample() {
+        long gcCount = 0;
+        long gcMillis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            gcCount += Math.max(0, gc.getCollectionCount());
+            gcMillis += Math.max(0, gc.getCollectionTime());
+        }
+        return new long[]{cpuTime(fixtureThread), cpuTime(edtThread),
+                    allocatedBytes(fixtureThread), allocatedBytes(edtThread), gcCount, gcMillis};
+    }
+
+    private static long cpuTime(Thread thread) {
+        if (thread == null || !THREADS.isThreadCpuTimeSupported()) {
+            return -1;
+        }
+        if (!THREADS.isThreadCpuTimeEnabled()) {
+            THREADS.setThreadCpuTimeEnabled(true);
+        }
+        return THREADS.getThreadCpuTime(thread.getId());
+    }
+
+    private static long allocatedBytes(Thread thread) {
+        if (thread == null || !(THREADS instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) THREADS;
+        if (!threads.isThreadAllocatedMemorySupported()) {
+            return -1;
+        }
+        if (!threads.isThreadAllocatedMemoryEnabled()) {
+            threads.setThreadAllocatedMemoryEnabled(true);
+        }
+        return threads.getThreadAllocatedBytes(thread.getId());
+    }
+
+    /**
+     * @return The EDT. The EDT is replaced if it dies (e.g. due to an uncaught exception) so the
+     * current EDT is obtained again if the previous one is no longer alive. Returns null if the
+     * EDT could not be obtained.
+     */
+    private static Thread getEdt() {
+        Thread result = edt;
+        if (result == null || !result.isAlive()) {
+            if (EventQueue.isDispatchThread()) {
+                result = Thread.currentThread();
+            } else {
+                final Thread[] holder = new Thread[1];
+                try {
+                    EventQueue.invokeAndWait(new Runnable() {
+
+                        @Override
+                        public void run() {
+                            holder[0] = Thread.currentThread();
+                        }
+                    });
+                } catch (Exception ex) {
+                    // Leave the EDT unset so the EDT values are reported as -1
+                }
+                result = holder[0];
+            }
+            edt = result;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+
+/**
+ * Keeps a local history of the latencies observed for each step signature across test runs and
+ * uses it to calculate a timeout for the step. The timeout is a high percentile of the observed
+ * latencies multiplied by a safety factor, so a failing step fails in roughly the time the step
+ * normally takes rather than waiting for the worst case timeout.
+ * <p>The history is appended to the file {@code step-latency.log} in the working directory.
+ * Only the most recent {@value #MAX_SAMPLES} latencies are kept for each signature, so the file
+ * is compacted from time to time. If the {@code sola.fixture.stepLog} system property is set,
+ * each latency is also appended to the file it names, which is never compacted. This gives
+ * {@linkplain JvmMatrixRunner} the latencies of a single run.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ * @see FixtureStep#getSignature()
+ */
+public class StepLatencyHistory {
+
+    public static final String HISTORY_FILE = "step-latency.log";
+    /** System property naming a file that receives a copy of each latency recorded. */
+    public static final String RUN_LOG_PROPERTY = "sola.fixture.stepLog";
+    /** Number of latencies retained for each step signature. */
+    public static final int MAX_SAMPLES = 50;
+    /** Minimum number of latencies required before the history is used to set a timeout. */
+    public static final int MIN_SAMPLES = 5;
+    private final Map<String, LinkedList<Long>> history = new HashMap<String, LinkedList<Long>>();
+    private final File file;
+    private boolean loaded = false;
+
+    StepLatencyHistory(File file) {
+        this.file = file;
+    }
+
+    private static class StepLatencyHistoryHolder {
+
+        public static final StepLatencyHistory INSTANCE =
+                new StepLatencyHistory(new File(HISTORY_FILE));
+    }
+
+    public static StepLatencyHistory getInstance() {
+        return StepLatencyHistoryHolder.INSTANCE;
+    }
+
+    /**
+     * Records the latency for a step and appends it to the history file.
+     * @param signature The step signature.
+     * @param latencyMillis The latency in milliseconds.
+     */
+    public synchronized void record(String signature, long latencyMillis) {
+        load();
+        add(signature, latencyMillis);
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
+            writer.write(signature + "\t" + latencyMillis);
+            writer.newLine();
+            writer.close();
+            String runLog = System.getProperty(RUN_LOG_PROPERTY);
+            if (runLog != null && runLog.trim().length() > 0) {
+                writer = new BufferedWriter(new FileWriter(runLog.trim(), true));
+                writer.write(signature + "\t" + latencyMillis);
+                writer.newLine();
+                writer.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Calculates the timeout for a step from its latency history.
+     * @param signature The step signature.
+     * @param percentile The percentile of the observed latencies to use e.g. 95.
+     * @param safetyFactor The multiplier applied to the percentile latency.
+     * @param minTimeout The minimum timeout in milliseconds.
+     * @param defaultTimeout The timeout to use if there is not enough history for the step. The
+     * calculated timeout never exceeds this value.
+     * @return The timeout in milliseconds.
+     */
+    public synchronized long getTimeout(String signature, double percentile, double safetyFactor,
+            long minTimeout, long defaultTimeout) {
+        load();
+        long result = defaultTimeout;
+        LinkedList<Long> samples = history.get(signature);
+        if (samples != null && samples.size() >= MIN_SAMPLES) {
+            long timeout = (long) (percentile(samples, percentile) * safetyFactor);
+            result = Math.min(defaultTimeout, Math.max(minTimeout, timeout));
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of latencies held for the signature.
+     */
+    public synchronized int getSampleCount(String signature) {
+        load();
+        LinkedList<Long> samples = history.get(signature);
+        return samples == null ? 0 : samples.size();
+    }
+
+    static long percentile(LinkedList<Long> samples, double percentile) {
+        Long[] sorted = samples.toArray(new Long[samples.size()]);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+
+    private void add(String signature, long latencyMillis) {
+        LinkedList<Long> samples = history.get(signature);
+        if (samples == null) {
+            samples = new LinkedList<Long>();
+            history.put(signature, samples);
+        }
+        samples.add(latencyMillis);
+        if (samples.size() > MAX_SAMPLES) {
+            samples.removeFirst();
+        }
+    }
+
+    /**
+     * Loads the history file the first time the history is accessed. If the file holds
+     * considerably more latencies than are retained, it is rewritten to remove the old entries.
+     */
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!file.exists()) {
+            return;
+        }
+        int lines = 0;
+        try {
+            BufferedReader reader = new BufferedReader(new FileReader(file));
+            try {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int pos = line.lastIndexOf('\t');
+                    if (pos > 0) {
+                        try {
+                            add(line.substring(0, pos), Long.parseLong(line.substring(pos + 1)));
+                            lines++;
+                        } catch (NumberFormatException ex) {
+                            // Ignore corrupt entries
+                        }
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            int retained = 0;
+            for (LinkedList<Long> samples : history.values()) {
+                retained += samples.size();
+            }
+            if (lines > retained * 2) {
+                compact();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void compact() throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(file, false));
+        try {
+            for (Map.Entry<String, LinkedList<Long>> entry : history.entrySet()) {
+                for (Long latency : entry.getValue()) {
+                    writer.write(entry.getKey() + "\t" + latency);
+                    writer.newLine();
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+}
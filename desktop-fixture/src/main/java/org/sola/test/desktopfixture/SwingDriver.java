@@ -0,0 +1,291 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.awt.Component;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.Callable;
+import javax.swing.AbstractButton;
+import javax.swing.JComboBox;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JTable;
+import javax.swing.JTextField;
+import javax.swing.ListCellRenderer;
+import javax.swing.ListModel;
+import javax.swing.SwingUtilities;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Drives Swing components directly on the Event Dispatch Thread (EDT) as an alternative to the
+ * UISpec4J wrappers. Each operation is performed in a single EDT task and the state of the
+ * component is checked once when the operation completes, so the step does not incur the
+ * retry and wait cycle of the UISpec4J assertions (e.g. {@code textEquals(text).isTrue()}).
+ * Controls are located with {@linkplain ControlResolver} instead of the UISpec4J finders.
+ * <p>The backend is selected per suite with the {@code Driver: Backend} test data item. The
+ * default is {@code uispec4j}. e.g. in the SuiteSetUp page
+ * <pre>
+ * |script    |Setup Test Data                 |
+ * |Lock field|Driver: Backend|value|swing|
+ * </pre>
+ * Comparing the step times for the same suite run with each backend shows how much of the step
+ * latency is due to the test tool rather than the SOLA client. The public fixture methods and
+ * FitNesse syntax are the same for both backends.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class SwingDriver {
+
+    public static final String BACKEND_SETTING = "Driver: Backend";
+    public static final String SWING = "swing";
+    public static final String UISPEC4J = "uispec4j";
+
+    SwingDriver() {
+    }
+
+    /**
+     * @param backend The value of the {@code Driver: Backend} setting.
+     * @return True if the setting selects this backend.
+     */
+    public static boolean isSelected(String backend) {
+        return backend != null && SWING.equalsIgnoreCase(backend.trim());
+    }
+
+    /**
+     * Sets the text of the text component. As for UISpec4J, an action event is fired for a text
+     * field once the text is set.
+     * @return True if the component displays the text.
+     */
+    public static boolean setText(final JTextComponent textComp, final String text)
+            throws Exception {
+        return onEdt(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() {
+                if (!textComp.isEnabled() || !textComp.isEditable()) {
+                    System.out.println("Text not entered as the text component is not editable");
+                    return false;
+                }
+                textComp.setText(text);
+                if (textComp instanceof JTextField) {
+                    ((JTextField) textComp).postActionEvent();
+                }
+                return equal(text, textComp.getText());
+            }
+        });
+    }
+
+    /**
+     * Checks or unchecks the check box. The check box is clicked so that its listeners respond
+     * as they would for a user.
+     * @return True if the check box has the requested state.
+     */
+    public static boolean setSelected(final AbstractButton checkBox, final boolean selected)
+            throws Exception {
+        return onEdt(new Callable<Boolean>() {
+
+            @Override
+            public Boolean call() {
+                if (!checkBox.isEnabled()) {
+                    System.out.println("Check box not changed as it is not enabled");
+                    return false;
+                }
+                if (checkBox.isSelected() != selected) {
+                    checkBox.doClick(0);
+                }
+                return checkBox.isSelected() == selected;
+            }
+        });
+    }
+
+    /**
+     * Selects an option from a combo box, list box or table. For a table, the rows with the
+     * matching text in the first column are selected.
+     * @param comp The combo box, list or table.
+     * @param itemToSelect The display text of the option to select.
+     * @param action The action for the option. FIRST and LAST select the first or last option
+     * regardless of the text.
+     * @return True if the option is selected.
+     */
+    public static boolean select(final Component comp, final String itemToSelect,
+            final String action) throws Exception {
+        return onEdt(new Callable<Boolean>() {
+
+            @Override
+            @SuppressWarnings("rawtypes")
+            public Boolean call() {
+                boolean result = false;
+                if (comp instanceof JComboBox) {
+                    result = selectFromComboBox((JComboBox) comp, itemToSelect, action);
+                } else if (comp instanceof JList) {
+                    result = selectFromList((JList) comp, itemToSelect, action);
+                } else if (comp instanceof JTable) {
+                    result = selectFromTable((JTable) comp, itemToSelect, action);
+                }
+                return result;
+            }
+        });
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static boolean selectFromComboBox(JComboBox comboBox, String itemToSelect,
+            String action) {
+        int index = indexOf(comboBox.getModel(), comboBox.getRenderer(), new JList(),
+                itemToSelect, action);
+        if (index < 0) {
+            System.out.println("Item " + (isFirstOrLast(action) ? action : itemToSelect)
+                    + " not found in combo box");
+            return false;
+        }
+        comboBox.setSelectedIndex(index);
+        return comboBox.getSelectedIndex() == index;
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static boolean selectFromList(JList list, String itemToSelect, String action) {
+        int index = indexOf(list.getModel(), list.getCellRenderer(), list, itemToSelect, action);
+        if (index < 0) {
+            System.out.println("Item " + (isFirstOrLast(action) ? action : itemToSelect)
+                    + " not found in list box");
+            return false;
+        }
+        list.setSelectedIndex(index);
+        list.ensureIndexIsVisible(index);
+        return list.getSelectedIndex() == index;
+    }
+
+    private static boolean selectFromTable(JTable table, String itemToSelect, String action) {
+        int rowCount = table.getRowCount();
+        if (isFirstOrLast(action)) {
+            if (rowCount > 0) {
+                int row = "FIRST".equals(action) ? 0 : rowCount - 1;
+                table.setRowSelectionInterval(row, row);
+            }
+        } else {
+            table.clearSelection();
+            for (int row = 0; row < rowCount; row++) {
+                if (equal(itemToSelect, cellText(table, row, 0))) {
+                    table.addRowSelectionInterval(row, row);
+                }
+            }
+        }
+        if (table.getSelectedRowCount() > 0) {
+            table.scrollRectToVisible(table.getCellRect(table.getSelectedRow(), 0, true));
+        } else {
+            System.out.println("Row " + (isFirstOrLast(action) ? action : itemToSelect)
+                    + " not found in table with " + rowCount + " rows");
+        }
+        return table.getSelectedRowCount() > 0;
+    }
+
+    private static boolean isFirstOrLast(String action) {
+        return "FIRST".equals(action) || "LAST".equals(action);
+    }
+
+    /**
+     * @return The index of the option with the display text or the first or last option
+     * depending on the action. -1 if there is no such option. The Swing list classes are
+     * generic from Java 7, so the raw types are used to support the element type of any list.
+     */
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private static int indexOf(ListModel model, ListCellRenderer renderer, JList list,
+            String itemToSelect, String action) {
+        int size = model.getSize();
+        if (isFirstOrLast(action)) {
+            return "FIRST".equals(action) && size > 0 ? 0 : size - 1;
+        }
+        for (int i = 0; i < size; i++) {
+            Object value = model.getElementAt(i);
+            String text = value == null ? null : value.toString();
+            if (renderer != null) {
+                Component rendered = renderer.getListCellRendererComponent(list, value, i,
+                        false, false);
+                if (rendered instanceof JLabel) {
+                    text = ((JLabel) rendered).getText();
+                }
+            }
+            if (equal(itemToSelect, text)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return The text displayed by the table for the cell.
+     */
+    private static String cellText(JTable table, int row, int column) {
+        Object value = table.getValueAt(row, column);
+        Component rendered = table.prepareRenderer(table.getCellRenderer(row, column), row,
+                column);
+        if (rendered instanceof JLabel) {
+            return ((JLabel) rendered).getText();
+        }
+        return value == null ? null : value.toString();
+    }
+
+    private static boolean equal(String expected, String actual) {
+        return expected == null || expected.length() == 0
+                ? actual == null || actual.length() == 0 : expected.equals(actual);
+    }
+
+    /**
+     * Runs the task on the EDT and waits for the result. Exceptions raised by the task are
+     * thrown to the caller.
+     */
+    private static boolean onEdt(Callable<Boolean> task) throws Exception {
+        if (SwingUtilities.isEventDispatchThread()) {
+            return task.call();
+        }
+        final Callable<Boolean> edtTask = task;
+        final Object[] result = new Object[1];
+        try {
+            SwingUtilities.invokeAndWait(new Runnable() {
+
+                @Override
+                public void run() {
+                    try {
+                        result[0] = edtTask.call();
+                    } catch (Exception ex) {
+                        result[0] = ex;
+                    }
+                }
+            });
+        } catch (InvocationTargetException ex) {
+            if (ex.getCause() instanceof Error) {
+                throw (Error) ex.getCause();
+            }
+            throw ex;
+        }
+        if (result[0] instanceof Exception) {
+            throw (Exception) result[0];
+        }
+        return Boolean.TRUE.equals(result[0]);
+    }
+}
@@ -0,0 +1,237 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.JTable;
+import javax.swing.SwingUtilities;
+import javax.swing.table.TableModel;
+
+/**
+ * Slim Query Table fixture that returns the rows of a table on the current window so they can
+ * be compared with the expected rows in a single step. The rows are read directly from the
+ * {@linkplain TableModel} behind the table rather than rendering each cell through UISpec4J.
+ * e.g. To check the fees listed on the Fees tab of the Application form
+ * <pre>
+ * |query:Table Rows|tabFeeDetails|Fee Type,Amount|Paid=true|
+ * |Fee Type              |Amount                          |
+ * |Cadastre Change       |100                             |
+ * </pre>
+ * <p>The first argument is the name of the table or the name of a test data item to obtain the
+ * table name from. The optional second argument is a comma separated list of the columns to
+ * return. If omitted, all columns are returned. The optional third argument is a semicolon
+ * separated list of filters of the form {@code Column=Value} or {@code Column!=Value} used to
+ * select the rows to return. Column names and values are compared ignoring case.</p>
+ * @author soladev
+ */
+public class TableRows {
+
+    /** The number of rows read from the table model in each call to the Swing event thread. */
+    private static final int CHUNK_SIZE = 500;
+    private final DesktopFixture fixture = new DesktopFixture();
+    private final String dataNameOrLabel;
+    private final String columns;
+    private final String filters;
+
+    public TableRows(String dataNameOrLabel) {
+        this(dataNameOrLabel, null, null);
+    }
+
+    public TableRows(String dataNameOrLabel, String columns) {
+        this(dataNameOrLabel, columns, null);
+    }
+
+    public TableRows(String dataNameOrLabel, String columns, String filters) {
+        this.dataNameOrLabel = dataNameOrLabel;
+        this.columns = columns;
+        this.filters = filters;
+    }
+
+    /**
+     * A filter applied to one column of each row.
+     */
+    private static class Filter {
+
+        int column;
+        String value;
+        boolean negate;
+
+        boolean accept(String cellValue) {
+            return cellValue.equalsIgnoreCase(value) != negate;
+        }
+    }
+
+    /**
+     * @return The rows of the table matching the filters. Each row is a list of column name /
+     * value pairs as required by the Slim Query Table.
+     * @throws Exception If the table cannot be located on the current window.
+     */
+    public List<Object> query() throws Exception {
+        final List<Object> result = new ArrayList<Object>();
+        if (fixture.isAbortTest()) {
+            return result;
+        }
+        try {
+            String label = fixture.getDataOrDefault(dataNameOrLabel);
+            ControlResolver.Resolution control = ControlResolver.resolve(
+                    fixture.getCurrentWindow(), label, ControlResolver.ControlType.TABLE);
+            if (!control.isFound()) {
+                throw new Exception(control.getMessage());
+            }
+            final TableModel model = ((JTable) control.getComponent()).getModel();
+            final String[] names = new String[model.getColumnCount()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = model.getColumnName(i);
+            }
+            final int[] projection = getProjection(names);
+            final List<Filter> rowFilters = getFilters(names);
+            int rowCount = model.getRowCount();
+            System.out.println("Reading " + rowCount + " rows from table " + label);
+
+            // Read the model in chunks so the Swing event thread is not held for the whole
+            // table when it contains a large number of rows.
+            for (int start = 0; start < rowCount; start += CHUNK_SIZE) {
+                final int first = start;
+                final int last = Math.min(start + CHUNK_SIZE, rowCount);
+                runOnEventThread(new Runnable() {
+
+                    public void run() {
+                        for (int row = first; row < last && row < model.getRowCount(); row++) {
+                            if (accept(model, row, rowFilters)) {
+                                List<Object> fields = new ArrayList<Object>();
+                                for (int col : projection) {
+                                    fields.add(Arrays.asList(names[col],
+                                            cellValue(model.getValueAt(row, col))));
+                                }
+                                result.add(fields);
+                            }
+                        }
+                    }
+                });
+            }
+        } catch (Exception ex) {
+            fixture.ProcessException(ex);
+            throw ex;
+        }
+        return result;
+    }
+
+    private void runOnEventThread(Runnable task) throws Exception {
+        if (SwingUtilities.isEventDispatchThread()) {
+            task.run();
+        } else {
+            try {
+                SwingUtilities.invokeAndWait(task);
+            } catch (InvocationTargetException ex) {
+                throw new Exception("Failed to read table rows", ex.getCause());
+            }
+        }
+    }
+
+    private boolean accept(TableModel model, int row, List<Filter> rowFilters) {
+        boolean result = true;
+        for (Filter filter : rowFilters) {
+            if (!filter.accept(cellValue(model.getValueAt(row, filter.column)))) {
+                result = false;
+                break;
+            }
+        }
+        return result;
+    }
+
+    private int[] getProjection(String[] names) throws Exception {
+        int[] result;
+        if (columns == null || columns.trim().length() == 0) {
+            result = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                result[i] = i;
+            }
+        } else {
+            String[] cols = columns.split(",");
+            result = new int[cols.length];
+            for (int i = 0; i < cols.length; i++) {
+                result[i] = columnIndex(names, cols[i]);
+            }
+        }
+        return result;
+    }
+
+    private List<Filter> getFilters(String[] names) throws Exception {
+        List<Filter> result = new ArrayList<Filter>();
+        if (filters != null && filters.trim().length() > 0) {
+            for (String expression : filters.split(";")) {
+                int pos = expression.indexOf('=');
+                if (pos < 1) {
+                    throw new Exception("Invalid table row filter " + expression);
+                }
+                Filter filter = new Filter();
+                filter.negate = expression.charAt(pos - 1) == '!';
+                filter.column = columnIndex(names,
+                        expression.substring(0, filter.negate ? pos - 1 : pos));
+                filter.value = fixture.getDataOrDefault(expression.substring(pos + 1).trim());
+                result.add(filter);
+            }
+        }
+        return result;
+    }
+
+    private int columnIndex(String[] names, String column) throws Exception {
+        int result = -1;
+        for (int i = 0; i < names.length; i++) {
+            if (names[i] != null && names[i].trim().equalsIgnoreCase(column.trim())) {
+                result = i;
+                break;
+            }
+        }
+        if (result < 0) {
+            throw new Exception("Table does not have a column named " + column.trim());
+        }
+        return result;
+    }
+
+    /**
+     * @return The text to use for a value in the table model.
+     */
+    private String cellValue(Object value) {
+        String result = "";
+        if (value instanceof String || value instanceof Number || value instanceof Boolean) {
+            result = value.toString();
+        } else if (value != null) {
+            try {
+                result = fixture.getDisplayValue(value);
+            } catch (Exception ex) {
+                result = "";
+            }
+            result = result.length() == 0 ? value.toString() : result;
+        }
+        return result;
+    }
+}
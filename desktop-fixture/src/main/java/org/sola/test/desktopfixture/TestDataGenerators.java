@@ -0,0 +1,187 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generates unique values for test data items so that repeated and concurrent test runs do not
+ * collide on unique keys in the SOLA database. A new value is generated each time the test data
+ * item is read. The Value of the item is the format for the generated value. If the format
+ * contains %, it is used with {@linkplain String#format(String, Object...)} where the arguments
+ * are the generated value, the run id and the worker id, otherwise the generated value is
+ * appended to the format. The following actions are supported.
+ * <ul><li>SEQ - the next number in a sequence. The Action Extension is the first number
+ * (default 1).</li>
+ * <li>RANDOM - a random number in a range. The Action Extension is min,max[,seed]. If a seed
+ * is given, each worker generates the same numbers on every run.</li>
+ * <li>UUID - a random UUID.</li>
+ * <li>PARTITION - the next number in the range reserved for the worker. The Action Extension
+ * is size[,start] (default 1000,0). Worker n uses the numbers start + n*size to
+ * start + (n+1)*size - 1, starting again at the beginning of the range once it is used up. A
+ * size of 1 gives each worker a fixed value such as its own login.</li>
+ * <li>SAME - the value last generated for the item named in the Value. Used where the same
+ * generated value must be entered in more than one place.</li></ul>
+ * e.g.
+ * <pre>
+ * |script|Setup Test Data                                                                |
+ * |field |Property: First Part |Value|NA%2$s%1$03d        |Action|SEQ      |Extension|1       |
+ * |field |Property: First Again|Value|Property: First Part|Action|SAME     |                   |
+ * |field |Property: Area       |Value|                    |Action|RANDOM   |Extension|100,5000|
+ * |field |Document: Reference  |Value|DOC-                |Action|UUID     |                   |
+ * |field |Login: User Name     |Value|load%03d            |Action|PARTITION|Extension|1       |
+ * </pre>
+ * <p>The run id is a short value that is different for each JVM, so sequences restarting at 1
+ * on the next run still produce new values if the run id is included in the format. The worker
+ * id is the virtual user number for {@linkplain VirtualUserLoad} or the value of the
+ * {@code sola.fixture.worker} system property, otherwise 0.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class TestDataGenerators {
+
+    public static final String SEQ = "SEQ";
+    public static final String RANDOM = "RANDOM";
+    public static final String UUID_ACTION = "UUID";
+    public static final String PARTITION = "PARTITION";
+    public static final String SAME = "SAME";
+    public static final String WORKER_PROPERTY = "sola.fixture.worker";
+    private static final String RUN_ID = Long.toString(System.currentTimeMillis() / 1000, 36);
+    private final ConcurrentMap<String, AtomicLong> counters =
+            new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, Random> randoms = new ConcurrentHashMap<String, Random>();
+    private final ConcurrentMap<String, String> last = new ConcurrentHashMap<String, String>();
+
+    TestDataGenerators() {
+    }
+
+    private static class TestDataGeneratorsHolder {
+
+        public static final TestDataGenerators INSTANCE = new TestDataGenerators();
+    }
+
+    public static TestDataGenerators getInstance() {
+        return TestDataGeneratorsHolder.INSTANCE;
+    }
+
+    /**
+     * @return True if the action generates a value.
+     */
+    public static boolean isGenerator(String action) {
+        return SEQ.equals(action) || RANDOM.equals(action) || UUID_ACTION.equals(action)
+                || PARTITION.equals(action);
+    }
+
+    public static String getRunId() {
+        return RUN_ID;
+    }
+
+    /**
+     * @return The worker id from the {@code sola.fixture.worker} system property or 0.
+     */
+    public static int getDefaultWorker() {
+        String worker = System.getProperty(WORKER_PROPERTY);
+        return worker == null ? 0 : Integer.parseInt(worker.trim());
+    }
+
+    /**
+     * Generates the next value for a test data item.
+     * @param name The normalised name of the test data item.
+     * @param action The generator action.
+     * @param format The format for the value.
+     * @param actionExt The action extension. May be null.
+     * @param worker The worker id.
+     * @return The generated value.
+     */
+    public String generate(String name, String action, String format, String actionExt,
+            int worker) {
+        String[] ext = actionExt == null || actionExt.trim().length() == 0 ? new String[0]
+                : actionExt.split(",");
+        Object value;
+        if (SEQ.equals(action)) {
+            long first = ext.length > 0 ? Long.parseLong(ext[0].trim()) : 1;
+            value = counter(name, first).getAndIncrement();
+        } else if (RANDOM.equals(action)) {
+            long min = ext.length > 0 ? Long.parseLong(ext[0].trim()) : 0;
+            long max = ext.length > 1 ? Long.parseLong(ext[1].trim()) : Integer.MAX_VALUE;
+            Random random = randoms.get(name + "#" + worker);
+            if (random == null) {
+                random = ext.length > 2 ? new Random(Long.parseLong(ext[2].trim()) + worker)
+                        : new Random();
+                Random existing = randoms.putIfAbsent(name + "#" + worker, random);
+                random = existing == null ? random : existing;
+            }
+            value = min + (long) (random.nextDouble() * (max - min + 1));
+        } else if (UUID_ACTION.equals(action)) {
+            value = UUID.randomUUID().toString();
+        } else if (PARTITION.equals(action)) {
+            long size = ext.length > 0 ? Long.parseLong(ext[0].trim()) : 1000;
+            long start = ext.length > 1 ? Long.parseLong(ext[1].trim()) : 0;
+            long next = counter(name + "#" + worker, 0).getAndIncrement();
+            value = start + worker * size + next % size;
+        } else {
+            throw new IllegalArgumentException("Unknown generator action " + action);
+        }
+        String result = format(format, value, worker);
+        last.put(name + "#" + worker, result);
+        return result;
+    }
+
+    /**
+     * @return The value last generated for the test data item by the worker or null if no value
+     * has been generated.
+     */
+    public String getLast(String name, int worker) {
+        return last.get(name.replace(" ", "").toLowerCase() + "#" + worker);
+    }
+
+    private AtomicLong counter(String key, long first) {
+        AtomicLong result = counters.get(key);
+        if (result == null) {
+            result = new AtomicLong(first);
+            AtomicLong existing = counters.putIfAbsent(key, result);
+            result = existing == null ? result : existing;
+        }
+        return result;
+    }
+
+    private static String format(String format, Object value, int worker) {
+        if (format == null || format.length() == 0) {
+            return value.toString();
+        }
+        if (format.indexOf('%') < 0) {
+            return format + value;
+        }
+        return String.format(format, value, RUN_ID, worker);
+    }
+}
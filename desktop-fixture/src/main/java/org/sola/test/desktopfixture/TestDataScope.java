@@ -0,0 +1,151 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One layer of test data. Scopes form a chain from the global scope through the suite and page
+ * scopes to the current scope (e.g. global, suite, page, step). A scope only holds the items
+ * written while it is the current scope, so its parent scopes are never modified. Entering a
+ * scope creates an empty layer and leaving a scope discards the layer, so the items written in
+ * the scope disappear without copying or clearing any maps.
+ * <p>Lookups walk the chain from the current scope to the global scope. The results are cached
+ * in the current scope until the test data changes (see {@linkplain TestManager#getDataVersion()}).</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class TestDataScope {
+
+    public static final String GLOBAL = "global";
+    public static final String SUITE = "suite";
+    public static final String PAGE = "page";
+    public static final String STEP = "step";
+    /** Cached marker for an item that is not in any scope. */
+    private static final TestDataItem MISSING = new TestDataItem();
+    private final String name;
+    private final TestDataScope parent;
+    private Map<String, TestDataItem> items = null;
+    private Map<String, TestDataItem> cache = null;
+    private int cacheVersion = -1;
+    private Map<String, TestDataItem> flattened = null;
+    private int flattenedVersion = -1;
+
+    TestDataScope(String name, TestDataScope parent) {
+        this.name = name;
+        this.parent = parent;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public TestDataScope getParent() {
+        return parent;
+    }
+
+    /**
+     * @return True if items have been written to this scope.
+     */
+    public boolean hasItems() {
+        return items != null && !items.isEmpty();
+    }
+
+    /**
+     * Writes an item to this scope.
+     * @param key The normalised name of the item.
+     */
+    void put(String key, TestDataItem item) {
+        if (items == null) {
+            items = new HashMap<String, TestDataItem>();
+        }
+        items.put(key, item);
+    }
+
+    /**
+     * @param key The normalised name of the item.
+     * @param version The current test data version.
+     * @return The item from the nearest scope that holds it or null.
+     */
+    TestDataItem get(String key, int version) {
+        if (cache == null || cacheVersion != version) {
+            cache = new HashMap<String, TestDataItem>();
+            cacheVersion = version;
+        }
+        TestDataItem result = cache.get(key);
+        if (result == null) {
+            result = MISSING;
+            for (TestDataScope scope = this; scope != null; scope = scope.parent) {
+                if (scope.items != null && scope.items.containsKey(key)) {
+                    result = scope.items.get(key);
+                    break;
+                }
+            }
+            cache.put(key, result);
+        }
+        return result == MISSING ? null : result;
+    }
+
+    /**
+     * @param version The current test data version.
+     * @return A read only map of all items visible from this scope. Items in inner scopes hide
+     * items with the same name in outer scopes.
+     */
+    Map<String, TestDataItem> flatten(int version) {
+        if (flattened == null || flattenedVersion != version) {
+            List<TestDataScope> chain = new ArrayList<TestDataScope>();
+            for (TestDataScope scope = this; scope != null; scope = scope.parent) {
+                chain.add(0, scope);
+            }
+            Map<String, TestDataItem> result = new LinkedHashMap<String, TestDataItem>();
+            for (TestDataScope scope : chain) {
+                if (scope.items != null) {
+                    result.putAll(scope.items);
+                }
+            }
+            flattened = Collections.unmodifiableMap(result);
+            flattenedVersion = version;
+        }
+        return flattened;
+    }
+
+    /**
+     * @return The names of the scopes from the global scope to this scope. e.g.
+     * global/suite/page
+     */
+    @Override
+    public String toString() {
+        return parent == null ? name : parent.toString() + "/" + name;
+    }
+}
@@ -27,8 +27,8 @@
  */
 package org.sola.test.desktopfixture;
 
-import java.util.HashMap;
 import java.util.Map;
+import org.uispec4j.Window;
 
 /**
  *
@@ -57,23 +57,69 @@ public class TestManager {
     //private static volatile TestManager INSTANCE = null;
     // Properties
     /// <summary>
-    /// Backing variable for TestData
+    /// The current test data scope. 
     /// </summary>
     /// <remarks>
-    /// If the test suite will execute a number of concurrent threads during the test
-    /// (e.g. Performance Testing), then mark the testData property as [ThreadStatic]. This
-    /// will ensure each running thread will have its own set of data rather than sharing the
-    /// data across all running threads. ThreadStatic has a minor performance impact, so avoid 
-    /// using it unless necessary. 
+    /// Test data is held in a chain of scopes (global, suite, page, step). Items are written
+    /// to the current scope and discarded when the scope is left. See TestDataScope. 
     /// </remarks>
-    //[ThreadStatic] 
-    private Map<String, TestDataItem> testData = null;
+    private TestDataScope scope = new TestDataScope(TestDataScope.GLOBAL, null);
+    /// <summary>
+    /// Incremented each time the test data changes so that structures compiled from the 
+    /// test data (e.g. the MessageRuleTable) know when to recompile. 
+    /// </summary>
+    private volatile int dataVersion = 0;
 
+    public int getDataVersion() {
+        return dataVersion;
+    }
+
+    /// <summary>
+    /// A read only view of the test data items visible from the current scope. 
+    /// </summary>
     public Map<String, TestDataItem> getTestData() {
-        if (testData == null){
-            testData = new HashMap<String, TestDataItem>(); 
+        return scope.flatten(dataVersion);
+    }
+
+    /// <summary>
+    /// The current test data scope. 
+    /// </summary>
+    public TestDataScope getScope() {
+        return scope;
+    }
+
+    /// <summary>
+    /// Enters a new test data scope. Items loaded from now on are discarded when the scope 
+    /// is left. 
+    /// </summary>
+    /// <param name="name">The name of the scope. e.g. suite, page or step.</param>
+    public void enterScope(String name) {
+        scope = new TestDataScope(name, scope);
+    }
+
+    /// <summary>
+    /// Leaves the named scope and any scopes entered within it, discarding the items loaded
+    /// in those scopes. The global scope cannot be left. 
+    /// </summary>
+    /// <param name="name">The name of the scope to leave.</param>
+    /// <returns>True if the scope was found and left.</returns>
+    public boolean exitScope(String name) {
+        TestDataScope target = scope;
+        while (target.getParent() != null && !target.getName().equals(name)) {
+            target = target.getParent();
         }
-        return testData;
+        if (target.getParent() == null) {
+            return false;
+        }
+        boolean changed = false;
+        for (TestDataScope s = scope; s != target.getParent(); s = s.getParent()) {
+            changed = changed || s.hasItems();
+        }
+        scope = target.getParent();
+        if (changed) {
+            dataVersion++;
+        }
+        return true;
     }
     /// <summary>
     /// Backing variable for TestObjects
@@ -86,21 +132,23 @@ public class TestManager {
     /// using it unless necessary. 
     /// </remarks>
     //[ThreadStatic] 
-    private Map<String, Object> testObjects = null;
+    private final TestObjectStore testObjects = new TestObjectStore();
 
     /// <summary>
-    /// The Map (list) containing the test objects for the test run. 
+    /// A snapshot of the test objects for the test run. 
     /// </summary>
     /// <remarks> A test object can be a handle to a window element or any other object 
     /// that the test must manage from a global perspective. 
     /// </remarks>
-    public Map getTestObjects() {
+    public Map<String, Object> getTestObjects() {
+        return testObjects.snapshot();
+    }
 
-        if (testObjects == null) {
-            testObjects = new HashMap<String, Object>();
-        }
+    /// <summary>
+    /// The store holding the test objects. Provides the hit, miss and eviction counts. 
+    /// </summary>
+    public TestObjectStore getTestObjectStore() {
         return testObjects;
-
     }
 
     private TestManager() {
@@ -133,13 +181,11 @@ public class TestManager {
         fieldData.Action = action == null ? ACTION_VALUE : action.toUpperCase();
         fieldData.ActionExtension = actionExt;
 
-        if (getTestData().containsKey(name)) {
-            // Make sure the field is not locked before replacing it
-            if (!getTestData().get(name).isLocked()) {
-                getTestData().put(name, fieldData);
-            }
-        } else {
-            getTestData().put(name, fieldData);
+        // Make sure the field is not locked in this or an outer scope before replacing it
+        TestDataItem existing = scope.get(name, dataVersion);
+        if (existing == null || !existing.isLocked()) {
+            scope.put(name, fieldData);
+            dataVersion++;
         }
     }
 //    / <summary>
@@ -150,12 +196,13 @@ public class TestManager {
     public TestDataItem getTestDataItem(String dataName) {
         dataName = dataName.replace(" ", "").toLowerCase();
         TestDataItem fieldData = null;
-        if (getTestData().containsKey(dataName)) {
+        TestDataItem item = scope.get(dataName, dataVersion);
+        if (item != null) {
             fieldData = new TestDataItem(); 
-            fieldData.Value = getTestData().get(dataName).getValue();
-            fieldData.Action = getTestData().get(dataName).getAction();
-            fieldData.ActionExtension = getTestData().get(dataName).getActionExtension();
-            if (!getTestData().get(dataName).isLocked()) {
+            fieldData.Value = item.getValue();
+            fieldData.Action = item.getAction();
+            fieldData.ActionExtension = item.getActionExtension();
+            if (!item.isLocked()) {
                 fieldData.Locked = true;
             } else {
                 fieldData.Locked = false;
@@ -178,22 +225,15 @@ public class TestManager {
     /// </summary>
         public void clearTestData()
         {
-            if (testData != null)
-            {
-                testData.clear();
-                testData = null; 
-            }
+            scope = new TestDataScope(TestDataScope.GLOBAL, null);
+            dataVersion++;
         }
     /// <summary>
     /// Clears the Test Objects ListDictionary.  
     /// </summary>
         public void clearTestObjects()
         {
-            if (testObjects != null)
-            {
-                testObjects.clear();
-                testObjects = null;
-            } 
+            testObjects.clear();
         }
     /// <summary>
     /// Clears all dictionaries managed by the TestManager. Should be called prior to the start of a test. 
@@ -209,20 +249,32 @@ public class TestManager {
     /// <param name="objName">The identifier to use for the T object.</param>
     /// <param name="T">The test object.</param>
       public <T> void loadTestObject(String objName, T obj) {
-        if (obj == null) {
-            if (getTestObjects().containsKey(objName)) {
-                // Remove objects that have been reset to null from the dictionary
-                getTestObjects().remove(objName);
-            }
-        } else {
-            if (getTestObjects().containsKey(objName)) {
-                getTestObjects().remove(objName);
-//                    TestObjects[objName] = obj;
-            }
-            getTestObjects().put(objName, obj);
-//                    TestObjects.Add(objName, obj);
-
+        // Objects that have been reset to null are removed from the store
+        testObjects.put(objName, obj);
+    }
+    /// <summary>
+    /// Loads a window so that it can be managed globally for the test without preventing
+    /// the window from being garbage collected once SOLA has disposed of it. 
+    /// </summary>
+    /// <param name="objName">The identifier to use for the window.</param>
+    /// <param name="win">The window.</param>
+    public void loadWeakTestObject(String objName, Window win) {
+        testObjects.putWeak(objName, win);
+    }
+    /// <summary>
+    /// Loads a test object into the least recently used cache. Use for objects such as
+    /// message payloads that can be discarded if too many accumulate during a long test run. 
+    /// The capacity of the cache can be configured using the Test Objects: Cache Capacity 
+    /// test data item. 
+    /// </summary>
+    /// <param name="objName">The identifier to use for the object.</param>
+    /// <param name="obj">The test object.</param>
+    public <T> void loadCachedTestObject(String objName, T obj) {
+        String capacity = getTestDataItemValue("Test Objects: Cache Capacity");
+        if (capacity != null) {
+            testObjects.setCacheCapacity(Integer.parseInt(capacity.trim()));
         }
+        testObjects.putCached(objName, obj);
     }
     /// <summary>
     /// Retrieves the named test object. 
@@ -234,11 +286,6 @@ public class TestManager {
     /// <returns>The object or the default value for the generic type.</returns>
         public <T> T getTestObject(String objName, Class<T> classType)
         {
-            T obj = null;
-            if (getTestObjects().containsKey(objName))
-            {
-                    obj = classType.cast(getTestObjects().get(objName));
-            }
-            return obj; 
+            return testObjects.get(objName, classType);
         }        
 }
@@ -0,0 +1,227 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.awt.Component;
+import java.awt.Frame;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import javax.swing.JDialog;
+import javax.swing.JFrame;
+import javax.swing.JInternalFrame;
+import org.uispec4j.Window;
+
+/**
+ * Typed store for the test objects managed by the {@linkplain TestManager}. Objects can be held
+ * in one of three ways.
+ * <ul><li>Strongly - the object is held until it is removed or the store is cleared.</li>
+ * <li>Weakly - for windows, only the underlying Swing window is referenced and it is referenced
+ * weakly, so windows SOLA has disposed and released disappear from the store by themselves.
+ * The UISpec4J window is recreated each time the object is retrieved.</li>
+ * <li>Cached - held strongly up to the cache capacity. Once the capacity is reached, the least
+ * recently used cached object is evicted. Used for message payloads.</li></ul>
+ * Hit, miss and eviction counts are kept for all objects.
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class TestObjectStore {
+
+    public static final int DEFAULT_CACHE_CAPACITY = 100;
+    private final Map<String, Object> strong = new HashMap<String, Object>();
+    private final Map<String, WeakReference<Component>> weak =
+            new HashMap<String, WeakReference<Component>>();
+    private final LinkedHashMap<String, Object> cached =
+            new LinkedHashMap<String, Object>(16, 0.75f, true) {
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Object> eldest) {
+                    boolean result = size() > cacheCapacity;
+                    if (result) {
+                        evictions++;
+                    }
+                    return result;
+                }
+            };
+    private int cacheCapacity = DEFAULT_CACHE_CAPACITY;
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * Holds the object strongly, replacing any existing object with the same name. If the
+     * object is null, any existing object with the name is removed.
+     */
+    public synchronized void put(String name, Object obj) {
+        remove(name);
+        if (obj != null) {
+            strong.put(name, obj);
+        }
+    }
+
+    /**
+     * Holds a weak reference to the Swing window for the UISpec4J window.
+     */
+    public synchronized void putWeak(String name, Window win) {
+        remove(name);
+        if (win != null) {
+            weak.put(name, new WeakReference<Component>(win.getAwtComponent()));
+        }
+    }
+
+    /**
+     * Holds the object in the least recently used cache.
+     */
+    public synchronized void putCached(String name, Object obj) {
+        remove(name);
+        if (obj != null) {
+            cached.put(name, obj);
+        }
+    }
+
+    /**
+     * Retrieves the named object.
+     * @param name The name of the object.
+     * @param classType The type of the object.
+     * @return The object or null if there is no object with the name.
+     */
+    public synchronized <T> T get(String name, Class<T> classType) {
+        Object obj = strong.get(name);
+        if (obj == null) {
+            obj = cached.get(name);
+        }
+        if (obj == null && weak.containsKey(name)) {
+            Component comp = weak.get(name).get();
+            if (comp == null) {
+                // The window has been released by SOLA
+                weak.remove(name);
+            } else {
+                obj = wrap(comp);
+            }
+        }
+        if (obj == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return classType.cast(obj);
+    }
+
+    private Window wrap(Component comp) {
+        Window result;
+        if (comp instanceof JFrame) {
+            result = new Window((JFrame) comp);
+        } else if (comp instanceof JDialog) {
+            result = new Window((JDialog) comp);
+        } else if (comp instanceof JInternalFrame) {
+            result = new Window((JInternalFrame) comp);
+        } else if (comp instanceof Frame) {
+            result = new Window((Frame) comp);
+        } else {
+            result = new Window((java.awt.Window) comp);
+        }
+        return result;
+    }
+
+    public synchronized void remove(String name) {
+        strong.remove(name);
+        weak.remove(name);
+        cached.remove(name);
+    }
+
+    public synchronized boolean contains(String name) {
+        return strong.containsKey(name) || cached.containsKey(name)
+                || (weak.containsKey(name) && weak.get(name).get() != null);
+    }
+
+    public synchronized void clear() {
+        strong.clear();
+        weak.clear();
+        cached.clear();
+    }
+
+    /**
+     * @return A snapshot of the objects currently held by the store.
+     */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> result = new HashMap<String, Object>(strong);
+        result.putAll(cached);
+        for (Iterator<Map.Entry<String, WeakReference<Component>>> it = weak.entrySet().iterator();
+                it.hasNext();) {
+            Map.Entry<String, WeakReference<Component>> entry = it.next();
+            Component comp = entry.getValue().get();
+            if (comp == null) {
+                it.remove();
+            } else {
+                result.put(entry.getKey(), wrap(comp));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets the maximum number of cached objects. Least recently used objects are evicted if the
+     * cache holds more objects than the new capacity.
+     */
+    public synchronized void setCacheCapacity(int capacity) {
+        cacheCapacity = Math.max(1, capacity);
+        Iterator<String> it = cached.keySet().iterator();
+        while (cached.size() > cacheCapacity && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions++;
+        }
+    }
+
+    public synchronized int getCacheCapacity() {
+        return cacheCapacity;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return The number of objects held by the store including windows that may have been
+     * released but not yet removed.
+     */
+    public synchronized int size() {
+        return strong.size() + weak.size() + cached.size();
+    }
+}
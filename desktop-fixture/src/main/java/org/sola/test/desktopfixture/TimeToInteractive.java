@@ -0,0 +1,283 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Toolkit;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import org.uispec4j.Window;
+
+/**
+ * Measures how long a window takes to become usable after the trigger that opened it. Three
+ * timings are taken from the start of the trigger.
+ * <ul><li>Shown - the window was shown and intercepted by UISpec4J.</li>
+ * <li>Layout - the window and all of its visible components have been laid out (i.e. are
+ * valid).</li>
+ * <li>Interactive - the window is laid out, the Swing event queue is empty and no SwingWorker
+ * is running a background task, and this has remained true for the quiet period. The timing is
+ * taken from the start of the quiet period.</li></ul>
+ * <p>The running SwingWorkers are found through the internal {@code sun.awt.AppContext} class.
+ * On JDK 16 and later the fixture JVM must be run with
+ * {@code --add-exports java.desktop/sun.awt=ALL-UNNAMED} for the class to be accessible.
+ * Without it the interactive timing is reported as unknown rather than ignoring the
+ * SwingWorkers.</p>
+ * <p>The most recent timings for each window title are held in memory and every measurement is
+ * appended to the file {@code window-timings.log} in the working directory.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class TimeToInteractive {
+
+    public static final String HISTORY_FILE = "window-timings.log";
+    /**
+     * The timing reported for interactive if the running SwingWorkers cannot be found.
+     */
+    public static final long UNKNOWN = -2;
+    private static final long POLL_MILLIS = 25;
+    private static Boolean backgroundTasksVisible = null;
+    private final Map<String, Timing> latest = new HashMap<String, Timing>();
+    private final File file;
+
+    /**
+     * The timings for a window in milliseconds from the start of the trigger. A timing of -1
+     * indicates the window did not reach that state before the measurement timed out and
+     * {@linkplain #UNKNOWN} indicates the interactive timing could not be measured.
+     */
+    public static class Timing {
+
+        private final String title;
+        private final long shown;
+        private final long layout;
+        private final long interactive;
+
+        public Timing(String title, long shown, long layout, long interactive) {
+            this.title = title == null ? "" : title;
+            this.shown = shown;
+            this.layout = layout;
+            this.interactive = interactive;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public long getShown() {
+            return shown;
+        }
+
+        public long getLayout() {
+            return layout;
+        }
+
+        public long getInteractive() {
+            return interactive;
+        }
+
+        /**
+         * @return The timings in the form {@code |shown=120|layout=350|interactive=2900|}. An
+         * unknown interactive timing is shown as ?.
+         */
+        @Override
+        public String toString() {
+            return "|shown=" + shown + "|layout=" + layout + "|interactive="
+                    + (interactive == UNKNOWN ? "?" : String.valueOf(interactive)) + "|";
+        }
+    }
+
+    TimeToInteractive(File file) {
+        this.file = file;
+    }
+
+    private static class TimeToInteractiveHolder {
+
+        public static final TimeToInteractive INSTANCE =
+                new TimeToInteractive(new File(HISTORY_FILE));
+    }
+
+    public static TimeToInteractive getInstance() {
+        return TimeToInteractiveHolder.INSTANCE;
+    }
+
+    /**
+     * Records the timings for a window and appends them to the history file.
+     */
+    public synchronized void record(Timing timing) {
+        latest.put(timing.getTitle().toLowerCase(), timing);
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
+            writer.write(timing.getTitle() + "\t" + timing.getShown() + "\t" + timing.getLayout()
+                    + "\t" + timing.getInteractive());
+            writer.newLine();
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return The most recent timings for the window title or null if the window has not been
+     * measured.
+     */
+    public synchronized Timing getLatest(String title) {
+        return title == null ? null : latest.get(title.toLowerCase());
+    }
+
+    /**
+     * Waits for the window to become interactive. Must not be called on the Swing event
+     * dispatch thread.
+     * @param win The window that has been shown.
+     * @param startNanos The value of {@linkplain System#nanoTime()} when the trigger started.
+     * @param shownNanos The value of {@linkplain System#nanoTime()} when the window was shown.
+     * @param quietMillis The time the window must remain idle to be considered interactive.
+     * @param timeoutMillis The maximum time to wait from when the window was shown.
+     * @return The timings for the window. If the running SwingWorkers cannot be found, the
+     * interactive timing is {@linkplain #UNKNOWN} and the measurement ends once the window is
+     * laid out.
+     */
+    public static Timing measure(Window win, long startNanos, long shownNanos, long quietMillis,
+            long timeoutMillis) throws Exception {
+        final Component root = win.getAwtComponent();
+        final boolean[] state = new boolean[2];
+        final boolean detectTasks = canDetectBackgroundTasks();
+        long deadline = shownNanos + timeoutMillis * 1000000L;
+        long layoutNanos = 0;
+        long quietSince = 0;
+        long interactiveNanos = 0;
+        while (System.nanoTime() < deadline) {
+            SwingUtilities.invokeAndWait(new Runnable() {
+
+                @Override
+                public void run() {
+                    state[0] = isLaidOut(root);
+                    state[1] = detectTasks && Toolkit.getDefaultToolkit().getSystemEventQueue()
+                            .peekEvent() == null && !isBackgroundTaskRunning();
+                }
+            });
+            long now = System.nanoTime();
+            if (state[0] && layoutNanos == 0) {
+                layoutNanos = now;
+            }
+            if (state[0] && !detectTasks) {
+                break;
+            }
+            if (state[0] && state[1]) {
+                if (quietSince == 0) {
+                    quietSince = now;
+                }
+                if (now - quietSince >= quietMillis * 1000000L) {
+                    interactiveNanos = quietSince;
+                    break;
+                }
+            } else {
+                quietSince = 0;
+            }
+            Thread.sleep(POLL_MILLIS);
+        }
+        return new Timing(win.getTitle(), toMillis(shownNanos, startNanos),
+                toMillis(layoutNanos, startNanos),
+                detectTasks ? toMillis(interactiveNanos, startNanos) : UNKNOWN);
+    }
+
+    private static long toMillis(long nanos, long startNanos) {
+        return nanos == 0 ? -1 : (nanos - startNanos) / 1000000L;
+    }
+
+    /**
+     * @return True if the component and all of its visible children are valid.
+     */
+    private static boolean isLaidOut(Component comp) {
+        if (!comp.isValid()) {
+            return false;
+        }
+        if (comp instanceof Container) {
+            for (Component child : ((Container) comp).getComponents()) {
+                if (child.isVisible() && !isLaidOut(child)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks once whether the SwingWorker executor can be obtained and logs the reason if it
+     * cannot, e.g. because {@code sun.awt} is not exported to the fixture on JDK 16 and later.
+     * @return True if running SwingWorkers can be detected.
+     */
+    static synchronized boolean canDetectBackgroundTasks() {
+        if (backgroundTasksVisible == null) {
+            try {
+                getSwingWorkerExecutor();
+                backgroundTasksVisible = Boolean.TRUE;
+            } catch (Exception ex) {
+                backgroundTasksVisible = Boolean.FALSE;
+                System.out.println("Time to interactive cannot detect running SwingWorkers so "
+                        + "the interactive timing will not be reported. Run the fixture JVM "
+                        + "with --add-exports java.desktop/sun.awt=ALL-UNNAMED. " + ex);
+            }
+        }
+        return backgroundTasksVisible;
+    }
+
+    /**
+     * @return The executor SwingWorkers are run on. The executor is held in the AppContext of
+     * the EDT and is null if no SwingWorker has been run.
+     */
+    private static Object getSwingWorkerExecutor() throws Exception {
+        Class<?> appContextClass = Class.forName("sun.awt.AppContext");
+        Object appContext = appContextClass.getMethod("getAppContext").invoke(null);
+        return appContextClass.getMethod("get", Object.class).invoke(appContext,
+                SwingWorker.class);
+    }
+
+    /**
+     * @return True if any SwingWorker is currently running its background task. Must be called
+     * on the EDT. The SwingWorker executor reports the number of worker threads running a task,
+     * so the threads do not need to be inspected. Returns true if the executor cannot be
+     * obtained, so the window is not reported as interactive.
+     */
+    private static boolean isBackgroundTaskRunning() {
+        try {
+            Object executor = getSwingWorkerExecutor();
+            return executor instanceof ThreadPoolExecutor
+                    && ((ThreadPoolExecutor) executor).getActiveCount() > 0;
+        } catch (Exception ex) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Converts the fixture trace written by {@linkplain TraceLog} into the Chrome trace event JSON
+ * format so a test run can be viewed as a timeline in a trace viewer such as chrome://tracing or
+ * Perfetto. Each fixture session is shown as a process and each thread as a track. e.g.
+ * <pre>
+ * java -cp sola-desktop-fixture.jar org.sola.test.desktopfixture.TraceExporter fixture-trace.log trace.json
+ * </pre>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class TraceExporter {
+
+    private final Map<String, Integer> sessions = new LinkedHashMap<String, Integer>();
+    private final Map<String, Integer> threads = new LinkedHashMap<String, Integer>();
+    private boolean first = true;
+
+    /**
+     * Converts the trace file to a Chrome trace event file.
+     * @param traceFile The trace written by {@linkplain TraceLog}.
+     * @param jsonFile The file to write the trace events to.
+     * @throws IOException If the files cannot be read or written.
+     */
+    public void export(String traceFile, String jsonFile) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(traceFile));
+        BufferedWriter writer = new BufferedWriter(new FileWriter(jsonFile, false));
+        try {
+            writer.write("{\"traceEvents\":[");
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length == 7) {
+                    writeEvent(writer, fields);
+                }
+            }
+            writer.newLine();
+            writer.write("]}");
+            writer.newLine();
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+    private void writeEvent(BufferedWriter writer, String[] fields) throws IOException {
+        Integer pid = sessions.get(fields[2]);
+        if (pid == null) {
+            pid = sessions.size() + 1;
+            sessions.put(fields[2], pid);
+            writeJson(writer, "{\"name\":\"process_name\",\"ph\":\"M\",\"pid\":" + pid
+                    + ",\"args\":{\"name\":\"SOLA fixture " + escape(fields[2]) + "\"}}");
+        }
+        String threadKey = fields[2] + "\t" + fields[3];
+        Integer tid = threads.get(threadKey);
+        if (tid == null) {
+            tid = threads.size() + 1;
+            threads.put(threadKey, tid);
+            writeJson(writer, "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":" + pid
+                    + ",\"tid\":" + tid + ",\"args\":{\"name\":\"" + escape(fields[3]) + "\"}}");
+        }
+        String phase = TraceLog.INSTANT.equals(fields[1]) ? "i\",\"s\":\"t" : fields[1];
+        writeJson(writer, "{\"name\":\"" + escape(fields[5]) + "\",\"cat\":\""
+                + escape(fields[4]) + "\",\"ph\":\"" + phase + "\",\"ts\":" + fields[0]
+                + ",\"pid\":" + pid + ",\"tid\":" + tid + ",\"args\":{\"detail\":\""
+                + escape(fields[6]) + "\"}}");
+    }
+
+    private void writeJson(BufferedWriter writer, String json) throws IOException {
+        if (!first) {
+            writer.write(",");
+        }
+        first = false;
+        writer.newLine();
+        writer.write(json);
+    }
+
+    private String escape(String text) {
+        StringBuilder result = new StringBuilder();
+        for (char c : text.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * @param args The trace file (default {@code fixture-trace.log}) and the JSON file to
+     * write (default {@code fixture-trace.json}).
+     */
+    public static void main(String[] args) throws IOException {
+        String traceFile = args.length > 0 ? args[0] : TraceLog.TRACE_FILE;
+        String jsonFile = args.length > 1 ? args[1] : "fixture-trace.json";
+        new TraceExporter().export(traceFile, jsonFile);
+        System.out.println("Exported " + traceFile + " to " + jsonFile);
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Structured trace of the fixture activity. Each step, page, window interception, message
+ * response, abort and exception is recorded as a timestamped event with the name of the thread
+ * and the id of the fixture session. Events are queued and written by a background thread to
+ * the file {@code fixture-trace.log} in the working directory, one event per line with tab
+ * separated fields:
+ * <pre>
+ * timestamp(microseconds)  phase  session  thread  category  name  detail
+ * </pre>
+ * The phase is B (begin), E (end) or I (instant). Use {@linkplain TraceExporter} to convert the
+ * trace to the Chrome trace event format so it can be viewed as a timeline.
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class TraceLog {
+
+    public static final String TRACE_FILE = "fixture-trace.log";
+    public static final String BEGIN = "B";
+    public static final String END = "E";
+    public static final String INSTANT = "I";
+    public static final String STEP = "step";
+    public static final String PAGE = "page";
+    public static final String WINDOW = "window";
+    public static final String MESSAGE = "message";
+    public static final String ABORT = "abort";
+    public static final String EXCEPTION = "exception";
+    private final BlockingQueue<String> queue = new LinkedBlockingQueue<String>();
+    private final String sessionId;
+    private final long baseMicros;
+    private final long baseNanos;
+    private final File file;
+    private final Thread writer;
+
+    private TraceLog(File file) {
+        this.file = file;
+        this.sessionId = Long.toHexString(System.currentTimeMillis())
+                + Integer.toHexString(new Random().nextInt(0x10000));
+        this.baseMicros = System.currentTimeMillis() * 1000;
+        this.baseNanos = System.nanoTime();
+        writer = new Thread(new Runnable() {
+
+            public void run() {
+                while (true) {
+                    try {
+                        write(queue.take());
+                    } catch (InterruptedException ex) {
+                        break;
+                    }
+                }
+            }
+        }, "TraceLog writer");
+        writer.setDaemon(true);
+        writer.start();
+        // The JVM is terminated by exitSola so make sure queued events are not lost
+        Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+
+            public void run() {
+                close();
+            }
+        }, "TraceLog close"));
+    }
+
+    private static class TraceLogHolder {
+
+        public static final TraceLog INSTANCE = new TraceLog(new File(TRACE_FILE));
+    }
+
+    public static TraceLog getInstance() {
+        return TraceLogHolder.INSTANCE;
+    }
+
+    /**
+     * @return The id of the fixture session recorded with each event.
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * @return The current time in microseconds since the epoch with microsecond precision.
+     */
+    public long now() {
+        return baseMicros + (System.nanoTime() - baseNanos) / 1000;
+    }
+
+    public void begin(String category, String name, String detail) {
+        event(BEGIN, category, name, detail);
+    }
+
+    public void end(String category, String name, String detail) {
+        event(END, category, name, detail);
+    }
+
+    public void instant(String category, String name, String detail) {
+        event(INSTANT, category, name, detail);
+    }
+
+    /**
+     * Queues an event for writing. Does not block.
+     */
+    public void event(String phase, String category, String name, String detail) {
+        queue.offer(now() + "\t" + phase + "\t" + sessionId + "\t"
+                + clean(Thread.currentThread().getName()) + "\t" + category + "\t" + clean(name)
+                + "\t" + clean(detail));
+    }
+
+    private String clean(String text) {
+        return text == null ? "" : text.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+
+    /**
+     * Stops the background writer and writes all queued events. The writer is stopped first so
+     * that an event it has already taken from the queue is written before the events that
+     * remain. Events queued after the trace is closed are not written.
+     */
+    public void close() {
+        writer.interrupt();
+        try {
+            writer.join(5000);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        List<String> events = new ArrayList<String>();
+        queue.drainTo(events);
+        write(events.toArray(new String[events.size()]));
+    }
+
+    private synchronized void write(String... events) {
+        if (events.length == 0) {
+            return;
+        }
+        try {
+            BufferedWriter writer = new BufferedWriter(new FileWriter(file, true));
+            try {
+                for (String event : events) {
+                    writer.write(event);
+                    writer.newLine();
+                }
+                // Write any other events queued while the file is open
+                String event;
+                while ((event = queue.poll()) != null) {
+                    writer.write(event);
+                    writer.newLine();
+                }
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,383 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Slim Table Table fixture that loads the SOLA services with many concurrent virtual users
+ * without starting the SOLA Desktop. Each row of the table is a service call made by the SOLA
+ * Desktop client for a scenario (e.g. login, create application, add property and documents,
+ * lodge). Every virtual user runs the calls in order for the requested number of iterations
+ * using its own server session (see {@linkplain VirtualUserSession}). e.g.
+ * <pre>
+ * |table:Virtual User Load|500        |3                  |
+ * |step       |service    |request    |soap action        |extract                    |calls|errors|mean ms|p95 ms|
+ * |Create App |Case Mgmt  |create.xml |createApplication  |appId=&lt;id&gt;(.*?)&lt;/id&gt;|     |      |       |      |
+ * |Lodge      |Case Mgmt  |lodge.xml  |applicationActionLodge|                        |     |      |       |      |
+ * </pre>
+ * <p>The service and request columns can be test data item names in the same way as for the
+ * {@linkplain DesktopFixture} methods. The Desktop Fixture is not used, so the UISpec4J toolkit
+ * is not initialised and the SOLA Desktop does not need to be running. The request is the path of a SOAP envelope template (see
+ * {@linkplain VirtualUserSession#resolve(String, Map)} for the placeholders it supports). The
+ * extract column captures values from the response into session variables for use by the later
+ * steps. Multiple extracts are separated by ;. If a call fails, the remaining steps for that
+ * iteration are skipped for the virtual user.</p>
+ * <p>Virtual users are not threads. Each user is scheduled as a sequence of short tasks on a
+ * shared pool, so thousands of users can be simulated with a pool sized for the number of calls
+ * that are expected to be in flight at once. Each call blocks a pool thread until the response
+ * is received, so at most Threads calls are in flight at once. When more users are ready to call
+ * than there are threads, the extra users wait for a free thread. The time spent waiting is not
+ * included in the call latency, but it reduces the load on the server, so set the Threads to at
+ * least the number of concurrent calls the scenario should generate. The following test data
+ * items configure the load.
+ * <ul><li>Virtual Users: Threads - the size of the pool and the maximum number of calls in
+ * flight (default 200)</li>
+ * <li>Virtual Users: Ramp Up - the time in milliseconds over which the users are started
+ * (default 0)</li>
+ * <li>Virtual Users: Think Time - the pause in milliseconds between the calls made by a user
+ * (default 0)</li>
+ * <li>Virtual Users: Call Timeout - the timeout in milliseconds for each call
+ * (default 60000)</li>
+ * <li>Virtual Users: Deadline - the maximum time in milliseconds for the whole load. Users
+ * still running at the deadline are stopped and every step fails (default 3600000)</li></ul></p>
+ * <p>The step column reports pass if all calls for the step succeeded. If present, the calls,
+ * errors, mean ms, p95 ms and p99 ms columns report the statistics for the step. The overall
+ * throughput is written to the console.</p>
+ * @author soladev
+ */
+public class VirtualUserLoad {
+
+    private static final String PASS = "pass";
+    private static final String FAIL = "fail";
+    private static final String[] STAT_COLUMNS = {"calls", "errors", "mean ms", "p95 ms", "p99 ms"};
+    private final TestManager testMan = TestManager.getInstance();
+    private final int users;
+    private final int iterations;
+
+    /**
+     * Describes one service call of the scenario and the statistics collected for it.
+     */
+    static class Step {
+
+        String name;
+        String serviceUrl;
+        String soapAction;
+        String template;
+        Map<String, Pattern> extract = new LinkedHashMap<String, Pattern>();
+        private long[] latencies = new long[64];
+        private int calls = 0;
+        private int errors = 0;
+        private String lastError;
+
+        synchronized void record(long latencyMillis, Exception error) {
+            if (calls == latencies.length) {
+                latencies = Arrays.copyOf(latencies, calls * 2);
+            }
+            latencies[calls++] = latencyMillis;
+            if (error != null) {
+                errors++;
+                lastError = error.getMessage();
+            }
+        }
+
+        synchronized int getCalls() {
+            return calls;
+        }
+
+        synchronized int getErrors() {
+            return errors;
+        }
+
+        synchronized String getLastError() {
+            return lastError;
+        }
+
+        synchronized double getMean() {
+            long total = 0;
+            for (int i = 0; i < calls; i++) {
+                total += latencies[i];
+            }
+            return calls == 0 ? 0 : (double) total / calls;
+        }
+
+        synchronized long getPercentile(double percentile) {
+            if (calls == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(latencies, calls);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * sorted.length) - 1;
+            return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+        }
+    }
+
+    /**
+     * @param users The number of virtual users to simulate.
+     * @param iterations The number of times each user runs the scenario.
+     */
+    public VirtualUserLoad(int users, int iterations) {
+        this.users = users;
+        this.iterations = iterations;
+    }
+
+    public VirtualUserLoad(int users) {
+        this(users, 1);
+    }
+
+    /**
+     * Runs the scenario described by the table with the virtual users.
+     * @param table The rows of the table excluding the fixture name. The first row must be a
+     * header row naming the columns.
+     * @return The results for each cell of the table.
+     */
+    public List<List<String>> doTable(List<List<String>> table) {
+        List<List<String>> results = new ArrayList<List<String>>();
+        for (List<String> row : table) {
+            List<String> resultRow = new ArrayList<String>();
+            for (int i = 0; i < row.size(); i++) {
+                resultRow.add("");
+            }
+            results.add(resultRow);
+        }
+        if (table.size() < 2 || users < 1 || iterations < 1) {
+            return results;
+        }
+
+        List<String> header = new ArrayList<String>();
+        for (String col : table.get(0)) {
+            header.add(col == null ? "" : col.trim().toLowerCase());
+        }
+        int stepCol = Math.max(0, header.indexOf("step"));
+        int serviceCol = header.indexOf("service");
+        int requestCol = header.indexOf("request");
+        int actionCol = header.indexOf("soap action");
+        int extractCol = header.indexOf("extract");
+
+        List<Step> steps = new ArrayList<Step>();
+        for (int i = 1; i < table.size(); i++) {
+            List<String> row = table.get(i);
+            Step step = new Step();
+            step.name = cell(row, stepCol);
+            step.serviceUrl = getDataOrDefault(cell(row, serviceCol));
+            step.soapAction = getDataOrDefault(cell(row, actionCol));
+            try {
+                step.template = readTemplate(getDataOrDefault(cell(row, requestCol)));
+                for (String extract : cell(row, extractCol).split(";")) {
+                    int pos = extract.indexOf('=');
+                    if (pos > 0) {
+                        step.extract.put(extract.substring(0, pos).trim(),
+                                Pattern.compile(extract.substring(pos + 1).trim(), Pattern.DOTALL));
+                    }
+                }
+            } catch (Exception ex) {
+                ex.printStackTrace();
+                results.get(i).set(stepCol, "error:" + ex.getMessage());
+                return results;
+            }
+            steps.add(step);
+        }
+
+        boolean completed = false;
+        try {
+            completed = run(steps);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            ex.printStackTrace();
+        }
+
+        for (int i = 1; i < table.size(); i++) {
+            Step step = steps.get(i - 1);
+            List<String> resultRow = results.get(i);
+            resultRow.set(stepCol, completed && step.getErrors() == 0 && step.getCalls() > 0
+                    ? PASS : FAIL + ":" + step.getErrors() + " errors"
+                    + (completed ? "" : " deadline exceeded")
+                    + (step.getLastError() == null ? "" : " " + step.getLastError()));
+            String[] stats = {Integer.toString(step.getCalls()),
+                Integer.toString(step.getErrors()),
+                String.format(Locale.ENGLISH, "%.1f", step.getMean()),
+                Long.toString(step.getPercentile(95)),
+                Long.toString(step.getPercentile(99))};
+            for (int s = 0; s < STAT_COLUMNS.length; s++) {
+                int col = header.indexOf(STAT_COLUMNS[s]);
+                if (col >= 0 && col < resultRow.size()) {
+                    resultRow.set(col, stats[s]);
+                }
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Schedules the virtual users on the pool and waits for all of them to complete the
+     * scenario or the deadline to pass.
+     * @return True if all of the users completed the scenario before the deadline.
+     */
+    private boolean run(final List<Step> steps) throws InterruptedException {
+        int threads = Integer.parseInt(getSetting("Virtual Users: Threads", "200"));
+        final long rampUp = Long.parseLong(getSetting("Virtual Users: Ramp Up", "0"));
+        final long thinkTime = Long.parseLong(getSetting("Virtual Users: Think Time", "0"));
+        final int timeout = Integer.parseInt(getSetting("Virtual Users: Call Timeout", "60000"));
+        long deadline = Long.parseLong(getSetting("Virtual Users: Deadline", "3600000"));
+        // The JDK keeps at most http.maxConnections idle connections per server. Raise it so
+        // the users do not need to reconnect for each call.
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", Integer.toString(threads));
+        }
+
+        // Resolve the test data once rather than for every request. Items that generate values
+        // are kept so each request gets a new value for its virtual user.
+        final Map<String, String> testData = new HashMap<String, String>();
+        final Map<String, TestDataItem> generators = new HashMap<String, TestDataItem>();
+        for (String name : testMan.getTestData().keySet()) {
+            TestDataItem item = testMan.getTestDataItem(name);
+            if (TestDataGenerators.isGenerator(item.getAction())
+                    || TestDataGenerators.SAME.equals(item.getAction())) {
+                generators.put(name, item);
+            } else {
+                testData.put(name, item.getValue());
+            }
+        }
+
+        final ScheduledExecutorService pool = Executors.newScheduledThreadPool(threads);
+        final CountDownLatch finished = new CountDownLatch(users);
+        System.out.println("Starting " + users + " virtual users for " + iterations
+                + " iterations of " + steps.size() + " steps using " + threads + " threads");
+        if (users > threads) {
+            System.out.println("At most " + threads + " of the " + users
+                    + " virtual users can be waiting for a response at once");
+        }
+        long start = System.nanoTime();
+        boolean result;
+        try {
+            for (int u = 0; u < users; u++) {
+                final VirtualUserSession session = new VirtualUserSession(u + 1);
+                long delay = users > 1 ? rampUp * u / (users - 1) : 0;
+                pool.schedule(new Runnable() {
+
+                    private int stepIndex = 0;
+
+                    @Override
+                    public void run() {
+                        Step step = steps.get(stepIndex);
+                        long callStart = System.nanoTime();
+                        Exception error = null;
+                        try {
+                            session.call(step.serviceUrl, step.soapAction,
+                                    session.resolve(step.template, testData, generators), step.extract, timeout);
+                        } catch (Exception ex) {
+                            error = ex;
+                        }
+                        step.record((System.nanoTime() - callStart) / 1000000, error);
+
+                        // Skip the rest of the iteration if the call failed as the later steps
+                        // are likely to depend on it.
+                        stepIndex = error == null ? stepIndex + 1 : steps.size();
+                        if (stepIndex >= steps.size()) {
+                            stepIndex = 0;
+                            session.setIteration(session.getIteration() + 1);
+                        }
+                        if (session.getIteration() >= iterations) {
+                            finished.countDown();
+                        } else {
+                            pool.schedule(this, thinkTime, TimeUnit.MILLISECONDS);
+                        }
+                    }
+                }, delay, TimeUnit.MILLISECONDS);
+            }
+            result = finished.await(deadline, TimeUnit.MILLISECONDS);
+            if (!result) {
+                System.out.println("Virtual user load did not complete within the deadline of "
+                        + deadline + " ms. " + finished.getCount() + " users were stopped");
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long elapsed = Math.max(1, (System.nanoTime() - start) / 1000000);
+        int calls = 0;
+        int errors = 0;
+        for (Step step : steps) {
+            calls += step.getCalls();
+            errors += step.getErrors();
+            System.out.println(String.format(Locale.ENGLISH,
+                    "Step %s: %d calls, %d errors, mean %.1f ms, p95 %d ms, p99 %d ms",
+                    step.name, step.getCalls(), step.getErrors(), step.getMean(),
+                    step.getPercentile(95), step.getPercentile(99)));
+        }
+        System.out.println(String.format(Locale.ENGLISH,
+                "Virtual user load: %d calls, %d errors in %d ms (%.1f calls/sec)",
+                calls, errors, elapsed, calls * 1000.0 / elapsed));
+        return result;
+    }
+
+    private String getDataOrDefault(String dataNameOrDefault) {
+        String result = testMan.getTestDataItemValue(dataNameOrDefault);
+        return result == null ? dataNameOrDefault : result;
+    }
+
+    private String getSetting(String dataName, String defaultValue) {
+        String result = testMan.getTestDataItemValue(dataName);
+        return result == null || result.trim().length() == 0 ? defaultValue : result.trim();
+    }
+
+    private String cell(List<String> row, int col) {
+        return col >= 0 && col < row.size() && row.get(col) != null ? row.get(col).trim() : "";
+    }
+
+    private String readTemplate(String path) throws IOException {
+        InputStream in = new FileInputStream(new File(path));
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            byte[] bytes = new byte[8192];
+            int len;
+            while ((len = in.read(bytes)) >= 0) {
+                buffer.write(bytes, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+        return buffer.toString("UTF-8");
+    }
+}
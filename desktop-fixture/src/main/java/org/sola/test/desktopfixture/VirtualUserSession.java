@@ -0,0 +1,223 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The state of one virtual user run by {@linkplain VirtualUserLoad}. Each session keeps its own
+ * cookies, so each virtual user has its own server session, and its own variables captured from
+ * the responses of earlier service calls (e.g. the id of the application created by the user).
+ * <p>Requests are SOAP envelope templates. Placeholders in the form {@code ${name}} are replaced
+ * with the session variable of that name, the built in values {@code user} (the number of the
+ * virtual user), {@code iteration} and {@code uuid}, or the value of the test data item with that
+ * name. Test data items with a generator action (see {@linkplain TestDataGenerators}) produce a
+ * new value for each placeholder, using the number of the virtual user as the worker id.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class VirtualUserSession {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\$\\{([^}]+)\\}");
+    private static final Pattern SOAP_FAULT = Pattern.compile("<(\\w+:)?Fault[\\s>]");
+    private final int user;
+    private final Map<String, String> cookies = new HashMap<String, String>();
+    private final Map<String, String> variables = new HashMap<String, String>();
+    private int iteration = 0;
+
+    public VirtualUserSession(int user) {
+        this.user = user;
+    }
+
+    public int getUser() {
+        return user;
+    }
+
+    public int getIteration() {
+        return iteration;
+    }
+
+    public void setIteration(int iteration) {
+        this.iteration = iteration;
+    }
+
+    public String getVariable(String name) {
+        return variables.get(name);
+    }
+
+    /**
+     * Replaces the placeholders in the template with the values for this session.
+     * @param template The request template.
+     * @param testData The test data values to use for placeholders that do not match a session
+     * variable or built in value. Keys are normalised test data names.
+     * @return The request with all known placeholders replaced. Unknown placeholders are left as
+     * they are.
+     */
+    public String resolve(String template, Map<String, String> testData) {
+        return resolve(template, testData, new HashMap<String, TestDataItem>());
+    }
+
+    /**
+     * Replaces the placeholders in the template with the values for this session.
+     * @param template The request template.
+     * @param testData The test data values to use for placeholders that do not match a session
+     * variable or built in value. Keys are normalised test data names.
+     * @param generators The test data items that generate a value for each request (see
+     * {@linkplain TestDataGenerators}). The number of the virtual user is used as the worker id.
+     * @return The request with all known placeholders replaced. Unknown placeholders are left as
+     * they are.
+     */
+    public String resolve(String template, Map<String, String> testData,
+            Map<String, TestDataItem> generators) {
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        StringBuffer result = new StringBuffer();
+        while (matcher.find()) {
+            String name = matcher.group(1);
+            String value = variables.get(name);
+            if (value == null) {
+                if (name.equals("user")) {
+                    value = Integer.toString(user);
+                } else if (name.equals("iteration")) {
+                    value = Integer.toString(iteration);
+                } else if (name.equals("uuid")) {
+                    value = UUID.randomUUID().toString();
+                } else {
+                    String key = name.replace(" ", "").toLowerCase();
+                    TestDataItem item = generators.get(key);
+                    if (item == null) {
+                        value = testData.get(key);
+                    } else if (TestDataGenerators.SAME.equals(item.getAction())) {
+                        value = TestDataGenerators.getInstance().getLast(item.getValue(), user);
+                    } else {
+                        value = TestDataGenerators.getInstance().generate(key, item.getAction(),
+                                item.getValue(), item.getActionExtension(), user);
+                    }
+                }
+            }
+            matcher.appendReplacement(result,
+                    Matcher.quoteReplacement(value == null ? matcher.group() : value));
+        }
+        matcher.appendTail(result);
+        return result.toString();
+    }
+
+    /**
+     * Posts the request to the service using the cookies for this session and captures the
+     * variables from the response.
+     * @param serviceUrl The URL of the web service endpoint.
+     * @param soapAction The SOAPAction for the operation. May be empty.
+     * @param request The SOAP envelope to post.
+     * @param extract The variables to capture from the response. Each entry maps the variable
+     * name to a pattern. The first group of the pattern is captured as the variable value.
+     * @param timeout The connect and read timeout in milliseconds.
+     * @return The response body.
+     * @throws IOException If the call fails, returns an HTTP error or returns a SOAP fault.
+     */
+    public String call(String serviceUrl, String soapAction, String request,
+            Map<String, Pattern> extract, int timeout) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(serviceUrl).openConnection();
+        conn.setConnectTimeout(timeout);
+        conn.setReadTimeout(timeout);
+        conn.setDoOutput(true);
+        conn.setRequestMethod("POST");
+        conn.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+        conn.setRequestProperty("SOAPAction", "\"" + (soapAction == null ? "" : soapAction) + "\"");
+        if (!cookies.isEmpty()) {
+            StringBuilder cookieHeader = new StringBuilder();
+            for (Map.Entry<String, String> cookie : cookies.entrySet()) {
+                cookieHeader.append(cookieHeader.length() > 0 ? "; " : "")
+                        .append(cookie.getKey()).append("=").append(cookie.getValue());
+            }
+            conn.setRequestProperty("Cookie", cookieHeader.toString());
+        }
+        OutputStream out = conn.getOutputStream();
+        try {
+            out.write(request.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+
+        int status = conn.getResponseCode();
+        saveCookies(conn.getHeaderFields().get("Set-Cookie"));
+        InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+        String response = in == null ? "" : read(in);
+        if (status >= 400 || SOAP_FAULT.matcher(response).find()) {
+            throw new IOException("HTTP " + status + " from " + serviceUrl + ": "
+                    + (response.length() > 500 ? response.substring(0, 500) : response));
+        }
+        if (extract != null) {
+            for (Map.Entry<String, Pattern> entry : extract.entrySet()) {
+                Matcher matcher = entry.getValue().matcher(response);
+                if (matcher.find()) {
+                    variables.put(entry.getKey(),
+                            matcher.groupCount() > 0 ? matcher.group(1) : matcher.group());
+                }
+            }
+        }
+        return response;
+    }
+
+    private void saveCookies(List<String> setCookies) {
+        if (setCookies == null) {
+            return;
+        }
+        for (String setCookie : setCookies) {
+            String pair = setCookie.split(";", 2)[0];
+            int pos = pair.indexOf('=');
+            if (pos > 0) {
+                cookies.put(pair.substring(0, pos).trim(), pair.substring(pos + 1).trim());
+            }
+        }
+    }
+
+    private String read(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try {
+            byte[] bytes = new byte[8192];
+            int len;
+            while ((len = in.read(bytes)) >= 0) {
+                buffer.write(bytes, 0, len);
+            }
+        } finally {
+            in.close();
+        }
+        return buffer.toString("UTF-8");
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.uispec4j.Trigger;
+import org.uispec4j.Window;
+import org.uispec4j.interception.handlers.InterceptionHandler;
+import org.uispec4j.interception.toolkit.UISpecDisplay;
+
+/**
+ * Intercepts the windows and dialogs shown by a trigger without blocking on the trigger. The
+ * watcher is registered with the UISpec4J display before the trigger is run on a separate
+ * thread, so modal dialogs, modeless windows and sequences of windows shown by the one trigger
+ * are all captured as they appear. UISpec4J removes a handler from the display each time it
+ * passes a window to the handler, so the watcher registers itself again for each window it
+ * receives. The caller waits for each window with its own timeout
+ * rather than the global UISpec4J window interception time limit. The CPU time and allocation
+ * of the trigger thread are added to the cost of the step in progress (see
+ * {@linkplain StepCost}).
+ * <p>Always {@linkplain #close() close} the watcher once the step is complete so that it no
+ * longer receives windows. If the trigger is still running, the watcher remains registered
+ * until the trigger completes so that windows shown late by the trigger are discarded rather
+ * than rejected by UISpec4J as unexpected.</p>
+ * <p>This class is used internally by the Fixture classes and should not be referenced from
+ * FitNesse tests.</p>
+ * @author soladev
+ */
+public class WindowWatcher implements InterceptionHandler {
+
+    private final BlockingQueue<Window> shown = new LinkedBlockingQueue<Window>();
+    private final Map<Window, Long> shownNanos =
+            Collections.synchronizedMap(new IdentityHashMap<Window, Long>());
+    private final long startNanos = System.nanoTime();
+    private volatile Throwable triggerException = null;
+    private volatile boolean triggerComplete = false;
+    private boolean closed = false;
+    private boolean registered = false;
+    private final List<String> outstanding = new ArrayList<String>();
+    private final List<Window> unexpected = new ArrayList<Window>();
+
+    private WindowWatcher() {
+    }
+
+    /**
+     * Registers a new watcher with the UISpec4J display and runs the trigger on a separate
+     * thread. Returns immediately.
+     * @param trigger The trigger that will show the window(s).
+     * @return The watcher that will capture the windows shown.
+     */
+    public static WindowWatcher watch(final Trigger trigger) {
+        final WindowWatcher watcher = new WindowWatcher();
+        final StepCost cost = StepCost.getActive();
+        watcher.register();
+        Thread triggerThread = new Thread(new Runnable() {
+
+            public void run() {
+                if (cost != null) {
+                    cost.track();
+                }
+                try {
+                    trigger.run();
+                } catch (Throwable ex) {
+                    watcher.triggerException = ex;
+                } finally {
+                    if (cost != null) {
+                        cost.untrack();
+                    }
+                    watcher.completeTrigger();
+                }
+            }
+        }, "WindowWatcher trigger");
+        triggerThread.setDaemon(true);
+        triggerThread.start();
+        return watcher;
+    }
+
+    /**
+     * Called by the UISpec4J display each time a window is shown. The display removes the
+     * watcher before calling this method.
+     */
+    public void process(Window window) {
+        long nanos = System.nanoTime();
+        boolean accept;
+        synchronized (this) {
+            registered = false;
+            accept = !closed;
+            if (!closed || !triggerComplete) {
+                register();
+            }
+        }
+        if (accept) {
+            shownNanos.put(window, nanos);
+            shown.offer(window);
+        } else {
+            System.out.println("Discarding window " + window.getTitle()
+                    + " shown after the step completed");
+        }
+    }
+
+    private synchronized void register() {
+        if (!registered) {
+            UISpecDisplay.instance().add(this);
+            registered = true;
+        }
+    }
+
+    private synchronized void unregister() {
+        if (registered) {
+            UISpecDisplay.instance().remove(this);
+            registered = false;
+        }
+    }
+
+    private synchronized void completeTrigger() {
+        triggerComplete = true;
+        if (closed) {
+            unregister();
+        }
+    }
+
+    /**
+     * Waits for the next window to be shown.
+     * @param timeoutMillis The maximum time to wait in milliseconds.
+     * @return The window or null if no window was shown before the timeout expired.
+     * @throws Exception If the trigger failed before a window was shown.
+     */
+    public Window awaitWindow(long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        Window result = null;
+        while (result == null) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            // Poll in short slices so a trigger that fails without showing a window is
+            // reported straight away rather than after the full timeout.
+            result = shown.poll(Math.min(remaining, 50), TimeUnit.MILLISECONDS);
+            if (result == null && triggerException != null) {
+                throw triggerException instanceof Exception ? (Exception) triggerException
+                        : new Exception(triggerException.toString(), triggerException);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Waits until a window has been shown for each of the titles. The windows can be shown in
+     * any order. Windows shown with other titles are not returned. Use
+     * {@linkplain #getOutstanding()} and {@linkplain #getUnexpected()} to check the outcome.
+     * @param titles The titles of the windows to wait for.
+     * @param timeoutMillis The maximum time to wait for all windows in milliseconds.
+     * @return The expected windows in the order they were shown. If the timeout expires, the
+     * expected windows shown before the timeout.
+     * @throws Exception If the trigger failed.
+     */
+    public List<Window> awaitWindows(List<String> titles, long timeoutMillis) throws Exception {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        outstanding.clear();
+        unexpected.clear();
+        for (String title : titles) {
+            outstanding.add(title);
+        }
+        List<Window> result = new ArrayList<Window>();
+        while (!outstanding.isEmpty()) {
+            Window win = awaitWindow(deadline - System.currentTimeMillis());
+            if (win == null) {
+                break;
+            }
+            String title = win.getTitle() == null ? "" : win.getTitle();
+            String match = null;
+            for (String expected : outstanding) {
+                if (expected.equalsIgnoreCase(title)) {
+                    match = expected;
+                    break;
+                }
+            }
+            if (match == null) {
+                unexpected.add(win);
+            } else {
+                outstanding.remove(match);
+                result.add(win);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The titles passed to the last call of
+     * {@linkplain #awaitWindows(List, long)} that no window was shown for.
+     */
+    public List<String> getOutstanding() {
+        return new ArrayList<String>(outstanding);
+    }
+
+    /**
+     * @return The windows shown during the last call of {@linkplain #awaitWindows(List, long)}
+     * that did not have one of the expected titles.
+     */
+    public List<Window> getUnexpected() {
+        return new ArrayList<Window>(unexpected);
+    }
+
+    /**
+     * @return The value of {@linkplain System#nanoTime()} when the watcher was created, i.e.
+     * immediately before the trigger was run.
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return The value of {@linkplain System#nanoTime()} when the window was shown or 0 if the
+     * window was not captured by this watcher.
+     */
+    public long getShownNanos(Window window) {
+        Long result = shownNanos.get(window);
+        return result == null ? 0 : result;
+    }
+
+    /**
+     * @return True if the trigger has finished running.
+     */
+    public boolean isTriggerComplete() {
+        return triggerComplete;
+    }
+
+    /**
+     * Stops the watcher accepting windows and unregisters it from the UISpec4J display. If the
+     * trigger is still running, the watcher is unregistered once the trigger completes.
+     */
+    public synchronized void close() {
+        closed = true;
+        if (triggerComplete) {
+            unregister();
+        }
+    }
+}
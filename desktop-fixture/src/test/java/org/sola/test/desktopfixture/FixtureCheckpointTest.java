@@ -0,0 +1,133 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import junit.framework.TestCase;
+
+/**
+ * Tests the escaping and torn record recovery of the {@linkplain FixtureCheckpoint}.
+ * @author soladev
+ */
+public class FixtureCheckpointTest extends TestCase {
+
+    private File file;
+
+    @Override
+    protected void setUp() throws Exception {
+        file = File.createTempFile("fixture-checkpoint", ".log");
+        file.delete();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    private static Map<String, TestDataItem> data(String name, String value) {
+        TestDataItem item = new TestDataItem();
+        item.setName(name);
+        item.setValue(value);
+        item.setLocked(true);
+        item.setAction("VALUE");
+        Map<String, TestDataItem> result = new LinkedHashMap<String, TestDataItem>();
+        result.put(name, item);
+        return result;
+    }
+
+    private void append(String text) throws Exception {
+        FileOutputStream out = new FileOutputStream(file, true);
+        try {
+            out.write(text.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    public void testEscapeRoundTrip() {
+        for (String text : new String[]{"", "plain", "tab\there", "line\nbreak\r\n",
+                    "back\\slash", "\\0", "\\t", "ends with \\"}) {
+            String escaped = FixtureCheckpoint.escape(text);
+            assertEquals(-1, escaped.indexOf('\t'));
+            assertEquals(-1, escaped.indexOf('\n'));
+            assertEquals(-1, escaped.indexOf('\r'));
+            assertEquals(text, FixtureCheckpoint.unescape(escaped));
+        }
+    }
+
+    public void testNullRoundTrip() {
+        assertEquals("\\0", FixtureCheckpoint.escape(null));
+        assertNull(FixtureCheckpoint.unescape(FixtureCheckpoint.escape(null)));
+    }
+
+    public void testRecordIsReadBack() {
+        new FixtureCheckpoint(file).record("Suite.PageOne", true, "Tab\tTitle",
+                data("login:username", "line\none"), "|CLIAPP004|");
+        FixtureCheckpoint checkpoint = new FixtureCheckpoint(file);
+        assertTrue(checkpoint.isCompleted("Suite.PageOne"));
+        FixtureCheckpoint.Record last = checkpoint.getLast();
+        assertTrue(last.isPassed());
+        assertEquals("Tab\tTitle", last.getWindowTitle());
+        assertEquals("|CLIAPP004|", last.getMessages());
+        assertEquals(1, last.getTestData().size());
+        TestDataItem item = last.getTestData().get(0);
+        assertEquals("login:username", item.getName());
+        assertEquals("line\none", item.getValue());
+        assertTrue(item.isLocked());
+    }
+
+    public void testTornRecordIsIgnored() throws Exception {
+        new FixtureCheckpoint(file).record("Suite.PageOne", true, null,
+                data("a", "1"), null);
+        // A crash part way through writing the second record
+        append("PAGE\tSuite.PageTwo\tPASS\t0\t\\0\nDATA\tb\ttrue\tVAL");
+        FixtureCheckpoint checkpoint = new FixtureCheckpoint(file);
+        assertTrue(checkpoint.isCompleted("Suite.PageOne"));
+        assertFalse(checkpoint.isCompleted("Suite.PageTwo"));
+        assertEquals("Suite.PageOne", checkpoint.getLast().getPage());
+    }
+
+    public void testRecordAfterTornRecordIsRead() throws Exception {
+        new FixtureCheckpoint(file).record("Suite.PageOne", true, null,
+                data("a", "1"), null);
+        append("PAGE\tSuite.PageTwo\tPASS\t0\t\\0\nDATA\tb\ttrue\tVAL");
+        // The resumed run writes the next record after the torn one
+        new FixtureCheckpoint(file).record("Suite.PageTwo", false, "Window",
+                data("b", "2"), null);
+        FixtureCheckpoint checkpoint = new FixtureCheckpoint(file);
+        assertTrue(checkpoint.isCompleted("Suite.PageOne"));
+        assertTrue(checkpoint.isCompleted("Suite.PageTwo"));
+        FixtureCheckpoint.Record last = checkpoint.getLast();
+        assertEquals("Suite.PageTwo", last.getPage());
+        assertFalse(last.isPassed());
+        assertEquals("2", last.getTestData().get(0).getValue());
+    }
+}
@@ -0,0 +1,64 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the signatures of a {@linkplain FixtureStep} used to name budgets.
+ * @author soladev
+ */
+public class FixtureStepTest extends TestCase {
+
+    @Override
+    protected void tearDown() throws Exception {
+        TestManager.getInstance().clearTestData();
+    }
+
+    public void testSignatures() {
+        FixtureStep step = new FixtureStep("click", "New Application", "Lodge");
+        assertEquals("click|New Application|Lodge", step.getSignature());
+        assertEquals("click>New Application>Lodge", step.getBudgetSignature());
+        step.end(true);
+    }
+
+    public void testBudgetNameWithoutPipeMatchesStep() {
+        TestManager testMan = TestManager.getInstance();
+        testMan.clearTestData();
+        // As written in a Setup Test Data table
+        testMan.loadTestDataItem("Budget: click > New Application > Lodge", "3000", false, "",
+                "");
+        FixtureStep step = new FixtureStep("click", "New Application", "Lodge");
+        step.end(true);
+        assertEquals("3000", testMan.getTestDataItemValue("Budget: "
+                + step.getBudgetSignature()));
+        FixtureStep other = new FixtureStep("click", "New Application", "Cancel");
+        other.end(true);
+        assertNull(testMan.getTestDataItemValue("Budget: " + other.getBudgetSignature()));
+    }
+}
@@ -0,0 +1,115 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+/**
+ * Tests the Mann-Whitney comparison used by the {@linkplain PerformanceSuite}.
+ * @author soladev
+ */
+public class PerformanceSuiteTest extends TestCase {
+
+    private static List<Long> durations(long first, int count) {
+        List<Long> result = new ArrayList<Long>();
+        for (int i = 0; i < count; i++) {
+            result.add(first + i);
+        }
+        return result;
+    }
+
+    public void testSlowerCurrentIsRegression() {
+        PerformanceSuite.Comparison result = PerformanceSuite.compare(durations(100, 10),
+                durations(200, 10), 0.05, 5);
+        // U = 100, mean 50, variance 175 so z = 3.74
+        assertEquals(9.1e-5, result.getPValue(), 1e-5);
+        assertTrue(result.isRegression());
+        assertEquals(104, result.getBaselineMedian());
+        assertEquals(204, result.getCurrentMedian());
+    }
+
+    public void testFasterCurrentIsNotRegression() {
+        PerformanceSuite.Comparison result = PerformanceSuite.compare(durations(200, 10),
+                durations(100, 10), 0.05, 5);
+        assertTrue(result.getPValue() > 0.99);
+        assertFalse(result.isRegression());
+    }
+
+    public void testSignificantChangeBelowMinimumIsNotRegression() {
+        PerformanceSuite.Comparison result = PerformanceSuite.compare(durations(1000, 10),
+                durations(1010, 10), 0.05, 5);
+        assertTrue(result.getPValue() < 0.05);
+        assertFalse(result.isRegression());
+    }
+
+    public void testAllTiedHasNoEvidence() {
+        List<Long> same = Arrays.asList(500L, 500L, 500L, 500L);
+        PerformanceSuite.Comparison result = PerformanceSuite.compare(same, same, 0.05, 0);
+        assertEquals(1.0, result.getPValue(), 0);
+        assertFalse(result.isRegression());
+    }
+
+    public void testTiesUseAverageRanks() {
+        // Ranks: 100 -> 1.5 (x2), 200 -> 4 (x3), 300 -> 6. Current ranks 1.5 + 4 + 6 = 11.5,
+        // U = 5.5, mean 4.5, variance 9 / 12 * (7 - 30 / 30) = 4.5
+        PerformanceSuite.Comparison result = PerformanceSuite.compare(
+                Arrays.asList(100L, 200L, 200L), Arrays.asList(100L, 200L, 300L), 0.05, 0);
+        double z = (5.5 - 4.5 - 0.5) / Math.sqrt(4.5);
+        assertEquals(1 - PerformanceSuite.normalCdf(z), result.getPValue(), 1e-9);
+    }
+
+    public void testEmptySamples() {
+        List<Long> empty = new ArrayList<Long>();
+        PerformanceSuite.Comparison result = PerformanceSuite.compare(empty, durations(100, 5),
+                0.05, 0);
+        assertEquals(1.0, result.getPValue(), 0);
+        assertFalse(result.isRegression());
+        assertEquals(0, result.getBaselineMedian());
+        result = PerformanceSuite.compare(durations(100, 5), empty, 0.05, 0);
+        assertEquals(1.0, result.getPValue(), 0);
+        assertEquals(0, result.getCurrentMedian());
+    }
+
+    public void testMedian() {
+        assertEquals(0, PerformanceSuite.median(new ArrayList<Long>()));
+        assertEquals(7, PerformanceSuite.median(Arrays.asList(7L)));
+        assertEquals(20, PerformanceSuite.median(Arrays.asList(30L, 10L, 20L)));
+        assertEquals(25, PerformanceSuite.median(Arrays.asList(40L, 10L, 30L, 20L)));
+    }
+
+    public void testNormalCdf() {
+        assertEquals(0.5, PerformanceSuite.normalCdf(0), 1e-7);
+        assertEquals(0.975, PerformanceSuite.normalCdf(1.959964), 1e-6);
+        assertEquals(0.025, PerformanceSuite.normalCdf(-1.959964), 1e-6);
+        assertEquals(0.8413447, PerformanceSuite.normalCdf(1), 1e-6);
+        assertEquals(1.0, PerformanceSuite.normalCdf(10), 1e-7);
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.util.HashSet;
+import java.util.Set;
+import junit.framework.TestCase;
+
+/**
+ * Tests the PARTITION generator of {@linkplain TestDataGenerators}.
+ * @author soladev
+ */
+public class TestDataGeneratorsTest extends TestCase {
+
+    private TestDataGenerators generators;
+
+    @Override
+    protected void setUp() throws Exception {
+        generators = new TestDataGenerators();
+    }
+
+    private String partition(String ext, int worker) {
+        return generators.generate("item", TestDataGenerators.PARTITION, null, ext, worker);
+    }
+
+    public void testWorkerUsesItsOwnRange() {
+        for (int i = 0; i < 10; i++) {
+            assertEquals(Integer.toString(100 + i), partition("10,100", 0));
+            assertEquals(Integer.toString(120 + i), partition("10,100", 2));
+        }
+    }
+
+    public void testRangeWrapsWhenUsedUp() {
+        for (int i = 0; i < 3; i++) {
+            partition("3,0", 1);
+        }
+        assertEquals("3", partition("3,0", 1));
+        assertEquals("4", partition("3,0", 1));
+    }
+
+    public void testWorkerRangesDoNotOverlap() {
+        Set<String> values = new HashSet<String>();
+        for (int worker = 0; worker < 5; worker++) {
+            for (int i = 0; i < 20; i++) {
+                assertTrue(values.add(partition("20", worker)));
+            }
+        }
+    }
+
+    public void testDefaultRange() {
+        assertEquals("0", partition(null, 0));
+        assertEquals("3000", partition(null, 3));
+        assertEquals("3001", partition("", 3));
+    }
+
+    public void testSizeOfOneGivesFixedValue() {
+        for (int i = 0; i < 3; i++) {
+            assertEquals("load005", generators.generate("login", TestDataGenerators.PARTITION,
+                    "load%03d", "1", 5));
+        }
+        assertEquals("load005", generators.getLast("Login", 5));
+    }
+}
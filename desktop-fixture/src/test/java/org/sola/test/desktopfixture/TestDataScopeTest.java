@@ -0,0 +1,116 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests the {@linkplain TestDataScope} chain managed by the {@linkplain TestManager}.
+ * @author soladev
+ */
+public class TestDataScopeTest extends TestCase {
+
+    private TestManager testMan;
+
+    @Override
+    protected void setUp() throws Exception {
+        testMan = TestManager.getInstance();
+        testMan.clearTestData();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        testMan.clearTestData();
+    }
+
+    private void load(String name, String value, boolean locked) {
+        testMan.loadTestDataItem(name, value, locked, null, null);
+    }
+
+    public void testInnerScopeShadowsOuterScope() {
+        load("Login: User Name", "global", false);
+        testMan.enterScope(TestDataScope.SUITE);
+        load("Login: User Name", "suite", false);
+        assertEquals("suite", testMan.getTestDataItemValue("Login: User Name"));
+        assertEquals("suite", testMan.getTestData().get("login:username").getValue());
+        assertTrue(testMan.exitScope(TestDataScope.SUITE));
+        assertEquals("global", testMan.getTestDataItemValue("Login: User Name"));
+        assertEquals("global", testMan.getTestData().get("login:username").getValue());
+    }
+
+    public void testLockedItemInOuterScopeIsNotReplaced() {
+        testMan.enterScope(TestDataScope.SUITE);
+        load("Login: User Name", "locked", true);
+        testMan.enterScope(TestDataScope.PAGE);
+        load("Login: User Name", "page", false);
+        assertEquals("locked", testMan.getTestDataItemValue("Login: User Name"));
+        assertFalse(testMan.getScope().hasItems());
+        testMan.exitScope(TestDataScope.PAGE);
+        assertEquals("locked", testMan.getTestDataItemValue("Login: User Name"));
+    }
+
+    public void testExitDiscardsItemsAndInvalidatesCache() {
+        testMan.enterScope(TestDataScope.SUITE);
+        // Cache the missing item in the suite scope
+        assertNull(testMan.getTestDataItemValue("Application: Number"));
+        testMan.enterScope(TestDataScope.PAGE);
+        load("Application: Number", "A001", false);
+        assertEquals("A001", testMan.getTestDataItemValue("Application: Number"));
+        int version = testMan.getDataVersion();
+        testMan.exitScope(TestDataScope.PAGE);
+        assertTrue(testMan.getDataVersion() > version);
+        assertNull(testMan.getTestDataItemValue("Application: Number"));
+        assertFalse(testMan.getTestData().containsKey("application:number"));
+    }
+
+    public void testExitWithoutItemsKeepsVersion() {
+        testMan.enterScope(TestDataScope.PAGE);
+        int version = testMan.getDataVersion();
+        testMan.exitScope(TestDataScope.PAGE);
+        assertEquals(version, testMan.getDataVersion());
+    }
+
+    public void testExitLeavesNestedScopes() {
+        testMan.enterScope(TestDataScope.SUITE);
+        testMan.enterScope(TestDataScope.PAGE);
+        testMan.enterScope(TestDataScope.STEP);
+        load("Step: Value", "1", false);
+        assertEquals("global/suite/page/step", testMan.getScope().toString());
+        assertTrue(testMan.exitScope(TestDataScope.PAGE));
+        assertEquals("global/suite", testMan.getScope().toString());
+        assertNull(testMan.getTestDataItemValue("Step: Value"));
+    }
+
+    public void testGlobalScopeCannotBeLeft() {
+        load("Login: User Name", "global", false);
+        assertFalse(testMan.exitScope(TestDataScope.GLOBAL));
+        assertFalse(testMan.exitScope(TestDataScope.PAGE));
+        assertEquals("global", testMan.getScope().toString());
+        assertEquals("global", testMan.getTestDataItemValue("Login: User Name"));
+    }
+}
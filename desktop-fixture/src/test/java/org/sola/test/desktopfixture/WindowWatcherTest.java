@@ -0,0 +1,139 @@
+/**
+ * ******************************************************************************************
+ * Copyright (C) 2014 - Food and Agriculture Organization of the United Nations (FAO).
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification,
+ * are permitted provided that the following conditions are met:
+ *
+ *    1. Redistributions of source code must retain the above copyright notice,this list
+ *       of conditions and the following disclaimer.
+ *    2. Redistributions in binary form must reproduce the above copyright notice,this list
+ *       of conditions and the following disclaimer in the documentation and/or other
+ *       materials provided with the distribution.
+ *    3. Neither the name of FAO nor the names of its contributors may be used to endorse or
+ *       promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY
+ * EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES
+ * OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT
+ * SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+ * SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO,PROCUREMENT
+ * OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT,STRICT LIABILITY,OR TORT
+ * (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE,
+ * EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * *********************************************************************************************
+ */
+package org.sola.test.desktopfixture;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.swing.JInternalFrame;
+import junit.framework.TestCase;
+import org.uispec4j.Trigger;
+import org.uispec4j.Window;
+import org.uispec4j.interception.toolkit.UISpecDisplay;
+
+/**
+ * Tests the capture of windows by the {@linkplain WindowWatcher}. The windows are passed to the
+ * UISpec4J display in the same way as the UISpec4J toolkit does when a window is shown.
+ * @author soladev
+ */
+public class WindowWatcherTest extends TestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        UISpecDisplay.instance().reset();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        UISpecDisplay.instance().reset();
+    }
+
+    /**
+     * Shows a window through the UISpec4J display.
+     */
+    private static void show(String title) throws Exception {
+        Method processWindow = UISpecDisplay.class.getDeclaredMethod("processWindow",
+                Window.class);
+        processWindow.setAccessible(true);
+        processWindow.invoke(UISpecDisplay.instance(), new Window(new JInternalFrame(title)));
+    }
+
+    public void testOneTriggerShowsTwoWindows() throws Exception {
+        WindowWatcher watcher = WindowWatcher.watch(new Trigger() {
+
+            public void run() throws Exception {
+                show("Application");
+                show("Document");
+            }
+        });
+        try {
+            List<Window> windows = watcher.awaitWindows(Arrays.asList("Document", "Application"),
+                    5000);
+            assertEquals(2, windows.size());
+            assertEquals("Application", windows.get(0).getTitle());
+            assertEquals("Document", windows.get(1).getTitle());
+            assertTrue(watcher.getOutstanding().isEmpty());
+            assertTrue(watcher.getUnexpected().isEmpty());
+            assertTrue(watcher.getShownNanos(windows.get(1)) >= watcher.getStartNanos());
+        } finally {
+            watcher.close();
+        }
+        UISpecDisplay.instance().rethrowIfNeeded();
+    }
+
+    public void testTriggerErrorIsReported() throws Exception {
+        WindowWatcher watcher = WindowWatcher.watch(new Trigger() {
+
+            public void run() throws Exception {
+                throw new Error("Trigger failed");
+            }
+        });
+        long start = System.currentTimeMillis();
+        try {
+            watcher.awaitWindow(5000);
+            fail("The trigger error was not reported");
+        } catch (Exception ex) {
+            assertTrue(ex.getMessage().contains("Trigger failed"));
+            assertTrue(System.currentTimeMillis() - start < 5000);
+        } finally {
+            watcher.close();
+        }
+    }
+
+    public void testWindowShownAfterCloseIsDiscarded() throws Exception {
+        final CountDownLatch closed = new CountDownLatch(1);
+        WindowWatcher watcher = WindowWatcher.watch(new Trigger() {
+
+            public void run() throws Exception {
+                show("Application");
+                closed.await(5, TimeUnit.SECONDS);
+                show("Late");
+            }
+        });
+        assertEquals("Application", watcher.awaitWindow(5000).getTitle());
+        watcher.close();
+        closed.countDown();
+        for (int i = 0; i < 100 && !watcher.isTriggerComplete(); i++) {
+            Thread.sleep(50);
+        }
+        assertTrue(watcher.isTriggerComplete());
+        assertNull(watcher.awaitWindow(100));
+        UISpecDisplay.instance().rethrowIfNeeded();
+
+        // The watcher is no longer registered once the trigger has completed
+        show("Unexpected");
+        try {
+            UISpecDisplay.instance().rethrowIfNeeded();
+            fail("The watcher is still registered");
+        } catch (Throwable ex) {
+            assertTrue(ex.getMessage().contains("Unexpected"));
+        }
+    }
+}